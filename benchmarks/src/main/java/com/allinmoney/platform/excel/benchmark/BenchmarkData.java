@@ -0,0 +1,95 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Data of benchmarks. Values are generated from the row number, so every run
+ * exports the same contents.
+ *
+ * @author Chris
+ */
+final class BenchmarkData {
+
+    private static final String[] SEVERITIES = {"High", "Medium", "Low"};
+    private static final String[] STATUSES = {"Open", "Working", "Verify", "Closed"};
+    private static final long BIRTH_DAY = 631_152_000_000L;
+
+    private BenchmarkData() {
+    }
+
+    static List<Person> persons(int rows) {
+        List<Person> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            list.add(fill(new Person(), i));
+        }
+        return list;
+    }
+
+    static List<Employee> employees(int rows) {
+        List<Employee> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Employee employee = fill(new Employee(), i);
+            employee.level = i % 10;
+            list.add(employee);
+        }
+        return list;
+    }
+
+    static List<Defect> defects(int rows) {
+        List<Defect> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Defect defect = new Defect();
+            defect.no = "BPS-" + i;
+            defect.position = "ExcelUtil.java:" + (i % 1000);
+            defect.desc = "问题描述 " + i;
+            defect.reviewer = "reviewer" + (i % 20);
+            defect.defectType = "Logic";
+            defect.severity = SEVERITIES[i % SEVERITIES.length];
+            defect.methods = "修改代码";
+            defect.responsibility = "owner" + (i % 50);
+            defect.schEndDate = "2018-01-10";
+            defect.reportDate = "2018-01-01";
+            defect.actualEndDate = "2018-01-09";
+            defect.effort = i % 8;
+            defect.status = STATUSES[i % STATUSES.length];
+            defect.remark = "";
+            list.add(defect);
+        }
+        return list;
+    }
+
+    private static <P extends Person> P fill(P person, int i) {
+        person.id = i;
+        person.name = "西门吹雪" + (i % 100);
+        person.age = BigDecimal.valueOf(20 + i % 50).add(BigDecimal.valueOf(i % 100, 2));
+        person.gender = i % 2;
+        person.remark = "醒醒,该上班了.";
+        person.birthDay = new Date(BIRTH_DAY + i * 86_400_000L);
+        return person;
+    }
+
+    /**
+     * Output stream which only counts bytes, so disk is not measured.
+     */
+    static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
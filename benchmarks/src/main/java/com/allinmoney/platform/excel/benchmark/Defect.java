@@ -0,0 +1,39 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+
+/**
+ * Defect model of benchmarks, it is a text heavy report with multi line titles.
+ *
+ * @author Chris
+ */
+public class Defect {
+    @ExcelAttribute(title = "NO.")
+    String no;
+    @ExcelAttribute(title = "问题位置\nPosition")
+    String position;
+    @ExcelAttribute(title = "问题描述\nDescription")
+    String desc;
+    @ExcelAttribute(title = "提出者\nReviewer")
+    String reviewer;
+    @ExcelAttribute(title = "问题类型\nType")
+    String defectType;
+    @ExcelAttribute(title = "问题级别\nSeverity")
+    String severity;
+    @ExcelAttribute(title = "解决措施\nMethods")
+    String methods;
+    @ExcelAttribute(title = "责任人\nResponsibility")
+    String responsibility;
+    @ExcelAttribute(title = "预计完成时间\nScheduled End\nDate")
+    String schEndDate;
+    @ExcelAttribute(title = "发现时间\nReport Date")
+    String reportDate;
+    @ExcelAttribute(title = "实际完成时间\nActual End Date")
+    String actualEndDate;
+    @ExcelAttribute(title = "修改工作量\nModifying\nEffort")
+    int effort;
+    @ExcelAttribute(title = "状态\nStatus")
+    String status;
+    @ExcelAttribute(title = "备注\nRemark")
+    String remark;
+}
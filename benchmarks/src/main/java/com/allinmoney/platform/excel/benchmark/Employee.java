@@ -0,0 +1,14 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+
+/**
+ * Employee model of benchmarks, it exports the columns of super class too.
+ *
+ * @author Chris
+ */
+public class Employee extends Person {
+
+    @ExcelAttribute(title = "级别", isMark = true, column = "a")
+    Integer level;
+}
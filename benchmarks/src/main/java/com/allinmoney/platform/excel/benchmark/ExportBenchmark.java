@@ -0,0 +1,86 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import com.allinmoney.platform.excel.ExcelType;
+import com.allinmoney.platform.excel.ExcelUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of exportation. Workbooks are written to a counting stream, the
+ * score is the time of building and serializing the workbook.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ExportBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"XLS", "XLSX", "XLSX_DIRECT", "CSV"})
+    private ExcelType type;
+
+    private List<Person> persons;
+    private List<Employee> employees;
+    private List<Defect> defects;
+
+    private ExcelUtil<Person> personUtil;
+    private ExcelUtil<Employee> employeeUtil;
+    private ExcelUtil<Defect> defectUtil;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persons = BenchmarkData.persons(rows);
+        employees = BenchmarkData.employees(rows);
+        defects = BenchmarkData.defects(rows);
+
+        personUtil = new ExcelUtil<>(Person.class);
+        employeeUtil = new ExcelUtil<>(Employee.class);
+        defectUtil = new ExcelUtil<>(Defect.class);
+        personUtil.setExcelType(type);
+        employeeUtil.setExcelType(type);
+        defectUtil.setExcelType(type);
+    }
+
+    @Benchmark
+    public long exportPersons() {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        personUtil.exportDataList(persons, "person", os, null, false);
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long exportEmployees() {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        employeeUtil.exportDataList(employees, "employee", os, null, true);
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long exportDefects() {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        defectUtil.exportDataList(defects, "defect", os, null, false);
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long exportMultipleDataList() {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        personUtil.exportMultipleDataList("multiple", true, os, persons, employees, defects);
+        return os.getCount();
+    }
+
+    @Benchmark
+    public long exportStacked() {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        personUtil.exportDataList("stacked", os, persons, employees, defects);
+        return os.getCount();
+    }
+}
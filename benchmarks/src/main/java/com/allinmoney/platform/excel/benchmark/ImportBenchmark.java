@@ -0,0 +1,83 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import com.allinmoney.platform.excel.ExcelType;
+import com.allinmoney.platform.excel.ExcelUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of importation. The file is exported once per trial into a
+ * temporary file, and read back by every invocation. Rows beyond one sheet
+ * are exported into sheets defect0, defect1... and all of them are imported.
+ *
+ * @author Chris
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ImportBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"XLS", "XLSX"})
+    private ExcelType type;
+
+    private ExcelUtil<Defect> util;
+    private File file;
+    private String[] sheets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(type);
+        file = File.createTempFile("import-benchmark", "." + type.name().toLowerCase());
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            util.exportDataList(BenchmarkData.defects(rows), "defect", os, null, false);
+        }
+        // header and summary rows besides data rows
+        int sheetRows = type.getMaxRows() - 2;
+        sheets = new String[(rows + sheetRows - 1) / sheetRows];
+        for (int i = 0; i < sheets.length; i++) {
+            sheets[i] = "defect" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public List<Defect> importData() {
+        List<Defect> list = new ArrayList<>(rows);
+        for (String sheet : sheets) {
+            list.addAll(util.importData(file.getPath(), sheet, null));
+        }
+        return list;
+    }
+
+    @Benchmark
+    public void importDataWithConsumer(Blackhole blackhole) {
+        for (String sheet : sheets) {
+            util.importData(file.getPath(), sheet, null, blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public Object getAnnotatedCellsMap() {
+        return util.getAnnotatedCellsMap(file.getPath(), sheets[0]);
+    }
+}
@@ -0,0 +1,34 @@
+package com.allinmoney.platform.excel.benchmark;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.Translate;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Person model of benchmarks, it has the columns of the Person of tests.
+ *
+ * @author Chris
+ */
+public class Person {
+
+    @ExcelAttribute(title = "ID", isMark = true, column = "a")
+    Integer id;
+
+    @ExcelAttribute(title = "姓名", column = "c")
+    String name;
+
+    @ExcelAttribute(title = "年龄", isSum = true, column = "c")
+    BigDecimal age;
+
+    @ExcelAttribute(title = "性别", translate = {@Translate(key = "0", value = "女"),
+            @Translate(key = "1", value = "男")})
+    Integer gender;
+
+    @ExcelAttribute(title = "备注", prompt = "辅助信息")
+    String remark;
+
+    @ExcelAttribute(title = "生日", format = "yyyy-MM-dd HH:mm:ss")
+    Date birthDay;
+}
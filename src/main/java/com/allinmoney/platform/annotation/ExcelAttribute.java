@@ -43,4 +43,10 @@ public @interface ExcelAttribute {
     // summarize current column?
     boolean isSum() default false;
 
+    // summary function of current column, isSum is same as SUM
+    Summary summary() default Summary.NONE;
+
+    // fixed column width in characters, -1 to estimate by contents
+    int width() default -1;
+
 }
@@ -0,0 +1,49 @@
+package com.allinmoney.platform.annotation;
+
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Style of the content cells of an {@link ExcelAttribute} column. Attributes
+ * left to default keep the default content style, red font of mark column
+ * included. Columns of the same style share one cell style of the workbook.
+ *
+ * @author Chris
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface ExcelStyle {
+
+    // font name, empty for default font
+    String fontName() default "";
+
+    // font height in points, -1 for default height
+    short fontHeight() default -1;
+
+    // font color, AUTOMATIC for default color
+    IndexedColors fontColor() default IndexedColors.AUTOMATIC;
+
+    // bold font, the default font is bold
+    boolean bold() default true;
+
+    // italic font
+    boolean italic() default false;
+
+    // solid background color, AUTOMATIC for no fill
+    IndexedColors fillColor() default IndexedColors.AUTOMATIC;
+
+    // horizontal alignment
+    HorizontalAlignment align() default HorizontalAlignment.GENERAL;
+
+    // wrap long text in cell
+    boolean wrapText() default false;
+
+    // excel number format of numeric cells like "#,##0.00", empty for default
+    String dataFormat() default "";
+
+}
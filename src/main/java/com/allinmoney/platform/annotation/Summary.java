@@ -0,0 +1,41 @@
+package com.allinmoney.platform.annotation;
+
+/**
+ * Summary function of column, it is written to the row after contents.
+ *
+ * @author Chris
+ */
+public enum Summary {
+    NONE(null, null),
+    SUM("合计", "SUM"),
+    COUNT("计数", "COUNT"),
+    MIN("最小", "MIN"),
+    MAX("最大", "MAX"),
+    AVERAGE("平均", "AVERAGE");
+
+    private final String label;
+    private final String function;
+
+    Summary(String label, String function) {
+        this.label = label;
+        this.function = function;
+    }
+
+    /**
+     * Gets label written before computed value.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets name of the excel function.
+     *
+     * @return the function
+     */
+    public String getFunction() {
+        return function;
+    }
+}
@@ -0,0 +1,193 @@
+package com.allinmoney.platform.excel;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs exportations of an {@link ExcelUtil} on a bounded executor, so the
+ * calling thread is released at once. The output stream stays owned by the
+ * caller, it is flushed but never closed. The settings of the util should
+ * not be changed while exportations are running.
+ *
+ * <pre>
+ *     AsyncExporter&lt;Person&gt; exporter = new AsyncExporter&lt;&gt;(util, 4, 16);
+ *     exporter.exportDataList(persons, "person", os, null)
+ *             .whenComplete((result, e) -&gt; close(os));
+ * </pre>
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+public class AsyncExporter<T> {
+
+    private final ExcelUtil<T> util;
+    private final Executor executor;
+
+    /**
+     * The executor created by the exporter, null if it is given by caller.
+     */
+    private final ExecutorService ownExecutor;
+
+    /**
+     * Instantiates a new exporter running on given executor.
+     *
+     * @param util     the excel util
+     * @param executor the executor, see {@link #newBoundedExecutor(int, int, RejectedExecutionHandler)}
+     */
+    public AsyncExporter(ExcelUtil<T> util, Executor executor) {
+        this.util = util;
+        this.executor = executor;
+        this.ownExecutor = null;
+    }
+
+    /**
+     * Instantiates a new exporter running on an executor of its own, the
+     * exportations beyond the queue are rejected with
+     * {@link RejectedExecutionException}.
+     *
+     * @param util      the excel util
+     * @param threads   the threads of executor
+     * @param queueSize the max exportations waiting for threads
+     */
+    public AsyncExporter(ExcelUtil<T> util, int threads, int queueSize) {
+        this.util = util;
+        this.ownExecutor = newBoundedExecutor(threads, queueSize, new ThreadPoolExecutor.AbortPolicy());
+        this.executor = ownExecutor;
+    }
+
+    /**
+     * Create an executor of fixed threads and bounded queue. The threads are
+     * daemon threads named excel-export-N.
+     *
+     * @param threads   the threads
+     * @param queueSize the max tasks waiting for threads
+     * @param handler   the policy of tasks beyond the queue, like
+     *                  {@link ThreadPoolExecutor.CallerRunsPolicy} to throttle callers
+     * @return the executor
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(int threads, int queueSize, RejectedExecutionHandler handler) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "excel-export-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), factory, handler);
+    }
+
+    /**
+     * Export data list in background, see {@link ExcelUtil#exportDataList(List, String, OutputStream, String)}.
+     *
+     * @param dataList  the data list to export
+     * @param sheetName the sheet name to export
+     * @param os        the output stream, it is not closed
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the future of result, it completes exceptionally if exportation fails or is rejected
+     */
+    public CompletableFuture<ExportResult> exportDataList(List<T> dataList, String sheetName, OutputStream os, String dateFmt) {
+        return submit(os, out -> {
+            util.exportDataList(dataList, sheetName, out, dateFmt);
+            return dataList.size();
+        });
+    }
+
+    /**
+     * Export data of iterator in background, the iterator is consumed on the
+     * thread of executor.
+     *
+     * @param iterator  the iterator of data to export
+     * @param sheetName the sheet name to export
+     * @param os        the output stream, it is not closed
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the future of result, it completes exceptionally if exportation fails or is rejected
+     */
+    public CompletableFuture<ExportResult> exportDataList(Iterator<? extends T> iterator, String sheetName, OutputStream os, String dateFmt) {
+        return submit(os, out -> {
+            CountingIterator<T> counting = new CountingIterator<>(iterator);
+            util.exportDataList(counting, sheetName, out, dateFmt, true);
+            return counting.count;
+        });
+    }
+
+    /**
+     * Export data of stream in background, the stream is consumed on the
+     * thread of executor and is not closed.
+     *
+     * @param stream    the stream of data to export
+     * @param sheetName the sheet name to export
+     * @param os        the output stream, it is not closed
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the future of result, it completes exceptionally if exportation fails or is rejected
+     */
+    public CompletableFuture<ExportResult> exportDataList(Stream<? extends T> stream, String sheetName, OutputStream os, String dateFmt) {
+        return exportDataList(stream.iterator(), sheetName, os, dateFmt);
+    }
+
+    /**
+     * Shut down the executor created by the exporter, the submitted
+     * exportations still complete. Executor given by caller is left to caller.
+     */
+    public void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private CompletableFuture<ExportResult> submit(OutputStream os, Export export) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                CountingOutputStream out = new CountingOutputStream(os, true);
+                long rows = export.run(out);
+                return new ExportResult(rows, out.getCount(), Duration.ofNanos(System.nanoTime() - start));
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<ExportResult> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * One exportation into the output stream, returns the exported rows.
+     */
+    @FunctionalInterface
+    private interface Export {
+        long run(OutputStream os);
+    }
+
+    private static final class CountingIterator<T> implements Iterator<T> {
+        private final Iterator<? extends T> iterator;
+        private long count;
+
+        private CountingIterator(Iterator<? extends T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            T next = iterator.next();
+            count++;
+            return next;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.allinmoney.platform.excel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Binds streamed rows in batches. The reading thread detects the header and
+ * copies rows into batches, the batches are bound to data objects by the
+ * executor while reading continues. Bound batches are delivered to the
+ * consumer on the reading thread, so the consumer is never called
+ * concurrently. At most maxPending batches are in flight, the reading
+ * thread waits for the oldest one when the limit is reached, so memory does
+ * not grow with sheet size.
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+class BatchRowBinder<T> implements RowHandler {
+
+    private final RowBinder<T> binder;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxPending;
+    private final boolean ordered;
+    private final Consumer<? super List<T>> consumer;
+
+    private final Deque<CompletableFuture<List<T>>> pending = new ArrayDeque<>();
+    private List<RawRow> batch;
+    private int rows;
+    private ExcelMetrics metrics = ExcelMetrics.NOOP;
+
+    /**
+     * Instantiates a new batch row binder.
+     *
+     * @param binder     the binder which detects header and binds rows
+     * @param executor   the executor which binds batches, null to bind on reading thread
+     * @param batchSize  the rows of one batch
+     * @param maxPending the max batches in flight
+     * @param ordered    identifies if batches are delivered in row order, otherwise
+     *                   they are delivered as soon as they are bound
+     * @param consumer   the consumer of bound batches
+     */
+    BatchRowBinder(RowBinder<T> binder, Executor executor, int batchSize, int maxPending,
+                   boolean ordered, Consumer<? super List<T>> consumer) {
+        if (batchSize <= 0) {
+            throw new ExcelException("Batch size should be positive: " + batchSize);
+        }
+        this.binder = binder;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxPending = Math.max(maxPending, 1);
+        this.ordered = ordered;
+        this.consumer = consumer;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Sets the metrics which time binding of each batch.
+     *
+     * @param metrics the metrics
+     */
+    void setMetrics(ExcelMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean handle(RawRow row) {
+        if (!binder.isContent(row)) {
+            return binder.handle(row);
+        }
+
+        batch.add(row.copy());
+        if (batch.size() == batchSize) {
+            submit();
+        }
+        return true;
+    }
+
+    /**
+     * Bind the last batch and deliver all pending batches. It should be called
+     * after the sheet is read.
+     */
+    void finish() {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            deliverNext();
+        }
+    }
+
+    /**
+     * Gets count of bound rows.
+     *
+     * @return the rows
+     */
+    int getRows() {
+        return rows;
+    }
+
+    private void submit() {
+        List<RawRow> rawRows = batch;
+        batch = new ArrayList<>(batchSize);
+        if (executor == null) {
+            deliver(bind(rawRows));
+            return;
+        }
+
+        pending.add(CompletableFuture.supplyAsync(() -> bind(rawRows), executor));
+        metrics.rowsInMemory(pending.size() * batchSize);
+        deliverDone();
+        while (pending.size() >= maxPending) {
+            deliverNext();
+        }
+    }
+
+    private List<T> bind(List<RawRow> rawRows) {
+        long start = System.nanoTime();
+        List<T> dataList = new ArrayList<>(rawRows.size());
+        for (RawRow row : rawRows) {
+            dataList.add(binder.bind(row));
+        }
+        metrics.phase(ExcelMetrics.Phase.BIND, System.nanoTime() - start);
+        return dataList;
+    }
+
+    /**
+     * Deliver batches which are already bound without waiting.
+     */
+    private void deliverDone() {
+        if (ordered) {
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                deliver(join(pending.poll()));
+            }
+            return;
+        }
+        for (Iterator<CompletableFuture<List<T>>> it = pending.iterator(); it.hasNext(); ) {
+            CompletableFuture<List<T>> future = it.next();
+            if (future.isDone()) {
+                it.remove();
+                deliver(join(future));
+            }
+        }
+    }
+
+    /**
+     * Wait for the oldest batch, or any batch if order is not kept, and deliver it.
+     */
+    private void deliverNext() {
+        if (!ordered) {
+            join(CompletableFuture.anyOf(pending.toArray(new CompletableFuture<?>[0])));
+            deliverDone();
+            return;
+        }
+        deliver(join(pending.poll()));
+    }
+
+    private void deliver(List<T> dataList) {
+        rows += dataList.size();
+        consumer.accept(dataList);
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ExcelException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * Writes value of one type into a cell, see {@link CellCodecs} for the registered
+ * codecs.
+ *
+ * @author Chris
+ * @param <T> the value type
+ */
+@FunctionalInterface
+public interface CellCodec<T> {
+
+    /**
+     * Write value to sink.
+     *
+     * @param value the value, never null
+     * @param sink  the cell sink
+     */
+    void encode(T value, CellSink sink);
+}
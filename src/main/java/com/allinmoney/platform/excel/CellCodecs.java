@@ -0,0 +1,211 @@
+package com.allinmoney.platform.excel;
+
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of cell codecs keyed by value type. The codec of a type is the one
+ * registered for the type itself, or else for the nearest super class, or else
+ * for its interfaces. Numbers are written as numeric cells, dates as date cells,
+ * booleans as boolean cells and the others as text.
+ *
+ * @author Chris
+ */
+public final class CellCodecs {
+
+    private static final CellCodec<Object> TEXT = (value, sink) -> sink.writeText(value.toString());
+    private static final CellCodec<Number> LONG = (value, sink) -> sink.writeLong(value.longValue());
+    private static final CellCodec<Number> DOUBLE = (value, sink) -> sink.writeNumber(value.doubleValue());
+    private static final CellCodec<Object> DATE = (value, sink) -> {
+        double serial = DateFormats.toExcelDate(value);
+        if (serial >= 0) {
+            sink.writeDate(serial);
+        } else {
+            // excel can not hold dates before 1900
+            sink.writeText(DateFormats.format(value, sink.getDatePattern()));
+        }
+    };
+
+    private final Map<Class<?>, CellCodec<?>> registered = new ConcurrentHashMap<>();
+
+    /**
+     * Types which codecs are registered by user, the codecs may write any kind of cell.
+     */
+    private final Set<Class<?>> custom = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Codecs resolved for value classes, cleared when a codec is registered.
+     */
+    private final Map<Class<?>, CellCodec<Object>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new registry with the default codecs.
+     */
+    public CellCodecs() {
+        register(Object.class, TEXT);
+        register(Number.class, DOUBLE);
+        register(Integer.class, LONG);
+        register(Long.class, LONG);
+        register(Short.class, LONG);
+        register(Byte.class, LONG);
+        register(Double.class, DOUBLE);
+        register(Float.class, DOUBLE);
+        register(BigDecimal.class, (value, sink) -> sink.writeDecimal(value));
+        register(BigInteger.class, (value, sink) -> sink.writeDecimal(new BigDecimal(value)));
+        register(Boolean.class, (value, sink) -> sink.writeBoolean(value));
+        register(Date.class, DATE);
+        register(LocalDate.class, DATE);
+        register(LocalDateTime.class, DATE);
+        register(Instant.class, DATE);
+        register(ZonedDateTime.class, DATE);
+        register(OffsetDateTime.class, DATE);
+        custom.clear();
+    }
+
+    /**
+     * Register codec of type, it replaces the codec registered for the same type.
+     *
+     * @param <T>   the type parameter
+     * @param type  the value type
+     * @param codec the codec
+     * @return the cell codecs
+     */
+    public <T> CellCodecs register(Class<T> type, CellCodec<? super T> codec) {
+        registered.put(type, codec);
+        custom.add(type);
+        resolved.clear();
+        return this;
+    }
+
+    /**
+     * Gets codec of value class.
+     *
+     * @param type the value class
+     * @return the codec, never null
+     */
+    @SuppressWarnings("unchecked")
+    public CellCodec<Object> get(Class<?> type) {
+        CellCodec<Object> codec = resolved.get(type);
+        if (codec == null) {
+            codec = (CellCodec<Object>) resolve(type);
+            resolved.put(type, codec);
+        }
+        return codec;
+    }
+
+    /**
+     * Identifies if values of class are written as the text of toString.
+     *
+     * @param type the value class
+     * @return the boolean
+     */
+    boolean isText(Class<?> type) {
+        return get(type) == TEXT;
+    }
+
+    /**
+     * Identifies if values of class are written by a codec registered by user,
+     * primitive classes are looked up by their wrappers.
+     *
+     * @param type the value class
+     * @return the boolean
+     */
+    boolean isCustom(Class<?> type) {
+        CellCodec<Object> codec = get(type);
+        for (Class<?> c : custom) {
+            if (registered.get(c) == codec) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identifies if values of declared type may be written by a codec registered
+     * by user, the codec of a sub class or an interface of sub class counts.
+     *
+     * @param declared the declared type of field
+     * @return the boolean
+     */
+    boolean mayUseCustom(Class<?> declared) {
+        Class<?> type = declared.isPrimitive() ? wrap(declared) : declared;
+        for (Class<?> c : custom) {
+            if (c.isAssignableFrom(type) || type.isAssignableFrom(c)
+                    || c.isInterface() && !Modifier.isFinal(type.getModifiers())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets codec of value class if it is registered for the class itself or its
+     * super classes, interfaces are not looked up.
+     *
+     * @param type the value class
+     * @return the codec, null if not registered
+     */
+    private CellCodec<?> lookupClass(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            CellCodec<?> codec = registered.get(c);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private CellCodec<?> resolve(Class<?> type) {
+        if (type.isPrimitive()) {
+            type = wrap(type);
+        }
+        CellCodec<?> codec = lookupClass(type);
+        if (codec != null) {
+            return codec;
+        }
+
+        // interfaces in breadth first order
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        Set<Class<?>> seen = new HashSet<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            queue.add(c);
+        }
+        while (!queue.isEmpty()) {
+            for (Class<?> i : queue.poll().getInterfaces()) {
+                if (seen.add(i)) {
+                    codec = registered.get(i);
+                    if (codec != null) {
+                        return codec;
+                    }
+                    queue.add(i);
+                }
+            }
+        }
+        return registered.get(Object.class);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == char.class) return Character.class;
+        return Void.class;
+    }
+}
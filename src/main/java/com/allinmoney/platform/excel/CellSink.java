@@ -0,0 +1,67 @@
+package com.allinmoney.platform.excel;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives typed value of one cell from a {@link CellCodec}. Each writer of
+ * exportation provides its own sink, values are never turned into strings
+ * unless the target format is text.
+ *
+ * @author Chris
+ */
+public interface CellSink {
+
+    /**
+     * Write blank cell.
+     */
+    void writeBlank();
+
+    /**
+     * Write text cell.
+     *
+     * @param value the value
+     */
+    void writeText(String value);
+
+    /**
+     * Write numeric cell.
+     *
+     * @param value the value
+     */
+    void writeNumber(double value);
+
+    /**
+     * Write integral numeric cell.
+     *
+     * @param value the value
+     */
+    void writeLong(long value);
+
+    /**
+     * Write decimal numeric cell, it is displayed with two decimal places.
+     *
+     * @param value the value
+     */
+    void writeDecimal(BigDecimal value);
+
+    /**
+     * Write boolean cell.
+     *
+     * @param value the value
+     */
+    void writeBoolean(boolean value);
+
+    /**
+     * Write date cell formatted with {@link #getDatePattern()}.
+     *
+     * @param serial the excel serial of date, see {@link DateFormats#toExcelDate(Object)}
+     */
+    void writeDate(double serial);
+
+    /**
+     * Gets java date pattern of current column.
+     *
+     * @return the date pattern
+     */
+    String getDatePattern();
+}
@@ -0,0 +1,375 @@
+package com.allinmoney.platform.excel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads one column of raw rows into fields of data objects. The conversion is
+ * compiled once from the field type: numeric cells are set into primitives
+ * and decimals without text, date cells are converted from the excel serial,
+ * enums are looked up by name, text and translated text. Text cells are
+ * parsed only when the field is not text.
+ *
+ * @author Chris
+ */
+final class ColumnDecoder {
+
+    private enum Kind {
+        STRING, INT, LONG, DOUBLE, BOOLEAN, SHORT, BYTE, FLOAT, BIG_DECIMAL, BIG_INTEGER,
+        DATE, LOCAL_DATE, LOCAL_DATE_TIME, INSTANT, ENUM, OBJECT
+    }
+
+    private final FieldAccessor accessor;
+    private final Kind kind;
+    private final boolean primitive;
+
+    /**
+     * Formats date cells of text field.
+     */
+    private final DateTimeFormatter dateFormat;
+
+    /**
+     * Parses text cells of date field.
+     */
+    private final DateTimeFormatter parseFormat;
+
+    /**
+     * Keys of translated texts, null if column is not translated.
+     */
+    private final Map<String, String> untranslate;
+
+    /**
+     * Enum constants by name, text and translated text, null if field is not enum.
+     */
+    private final Map<String, Object> enumConstants;
+    private final Object[] enumValues;
+
+    /**
+     * Instantiates a new decoder.
+     *
+     * @param column     the column
+     * @param dateFormat the format of date cells read into text fields
+     */
+    ColumnDecoder(ColumnSchema.Column column, DateTimeFormatter dateFormat) {
+        this.accessor = column.getAccessor();
+        Class<?> type = accessor.getType();
+        this.kind = kind(type);
+        this.primitive = type.isPrimitive();
+        this.dateFormat = dateFormat;
+        this.parseFormat = column.getFormat() == null || column.getFormat().isEmpty()
+                ? dateFormat : DateFormats.formatter(column.getFormat());
+
+        Map<String, String> translate = column.getTranslate();
+        if (translate.isEmpty() || kind == Kind.ENUM) {
+            this.untranslate = null;
+        } else {
+            this.untranslate = new HashMap<>();
+            translate.forEach((key, text) -> untranslate.put(text, key));
+        }
+
+        if (kind == Kind.ENUM) {
+            this.enumValues = type.getEnumConstants();
+            this.enumConstants = enumConstants(column);
+        } else {
+            this.enumValues = null;
+            this.enumConstants = null;
+        }
+    }
+
+    /**
+     * Read cell of row into field of data object, blank cell is skipped.
+     *
+     * @param row    the row
+     * @param col    the column of cell
+     * @param target the data object
+     */
+    void decode(RawRow row, int col, Object target) {
+        switch (row.getType(col)) {
+            case NUMERIC:
+                if (row.isDate(col)) {
+                    decodeDate(row.getNumber(col), target);
+                } else {
+                    decodeNumber(row.getNumber(col), target);
+                }
+                break;
+            case STRING:
+                decodeText(row.getString(col), target);
+                break;
+            case BOOLEAN:
+                decodeBoolean(row.getBoolean(col), target);
+                break;
+            case ERROR:
+                if (kind == Kind.STRING || kind == Kind.OBJECT) {
+                    accessor.set(target, "!ERROR!");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gets constants of enum field by name, text and translated text.
+     *
+     * @param column the column of enum field
+     * @return the constants
+     */
+    static Map<String, Object> enumConstants(ColumnSchema.Column column) {
+        Map<String, String> translate = column.getTranslate();
+        Map<String, Object> constants = new HashMap<>();
+        for (Object constant : column.getAccessor().getType().getEnumConstants()) {
+            String text = constant.toString();
+            constants.put(((Enum<?>) constant).name(), constant);
+            constants.put(text, constant);
+            constants.put(translate.getOrDefault(text, text), constant);
+        }
+        return constants;
+    }
+
+    /**
+     * Gets text of cell for messages.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the text
+     */
+    static String text(RawRow row, int col) {
+        switch (row.getType(col)) {
+            case STRING:
+                return row.getString(col);
+            case NUMERIC:
+                return Double.toString(row.getNumber(col));
+            case BOOLEAN:
+                return Boolean.toString(row.getBoolean(col));
+            default:
+                return row.getType(col).name();
+        }
+    }
+
+    private void decodeNumber(double value, Object target) {
+        switch (kind) {
+            case INT:
+                if (primitive) {
+                    accessor.setInt(target, toInt(value));
+                } else {
+                    accessor.set(target, toInt(value));
+                }
+                break;
+            case LONG:
+                if (primitive) {
+                    accessor.setLong(target, toLong(value));
+                } else {
+                    accessor.set(target, toLong(value));
+                }
+                break;
+            case DOUBLE:
+                if (primitive) {
+                    accessor.setDouble(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+                break;
+            case BOOLEAN:
+                decodeBoolean(value != 0, target);
+                break;
+            case SHORT:
+                accessor.set(target, (short) toInt(value));
+                break;
+            case BYTE:
+                accessor.set(target, (byte) toInt(value));
+                break;
+            case FLOAT:
+                accessor.set(target, (float) value);
+                break;
+            case BIG_DECIMAL:
+                accessor.set(target, BigDecimal.valueOf(value));
+                break;
+            case BIG_INTEGER:
+                accessor.set(target, BigInteger.valueOf(toLong(value)));
+                break;
+            case ENUM:
+                accessor.set(target, enumValues[toInt(value)]);
+                break;
+            case DATE:
+            case LOCAL_DATE:
+            case LOCAL_DATE_TIME:
+            case INSTANT:
+                decodeDate(value, target);
+                break;
+            default:
+                accessor.set(target, value == (long) value ? Long.toString((long) value) : Double.toString(value));
+                break;
+        }
+    }
+
+    private void decodeDate(double serial, Object target) {
+        LocalDateTime value = DateFormats.toLocalDateTime(serial);
+        switch (kind) {
+            case DATE:
+                accessor.set(target, Date.from(value.atZone(ZoneId.systemDefault()).toInstant()));
+                break;
+            case LOCAL_DATE:
+                accessor.set(target, value.toLocalDate());
+                break;
+            case LOCAL_DATE_TIME:
+                accessor.set(target, value);
+                break;
+            case INSTANT:
+                accessor.set(target, value.atZone(ZoneId.systemDefault()).toInstant());
+                break;
+            case STRING:
+            case OBJECT:
+                accessor.set(target, dateFormat.format(value));
+                break;
+            default:
+                decodeNumber(serial, target);
+                break;
+        }
+    }
+
+    private void decodeBoolean(boolean value, Object target) {
+        switch (kind) {
+            case BOOLEAN:
+                if (primitive) {
+                    accessor.setBoolean(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+                break;
+            case STRING:
+            case OBJECT:
+                accessor.set(target, Boolean.toString(value));
+                break;
+            default:
+                decodeNumber(value ? 1 : 0, target);
+                break;
+        }
+    }
+
+    private void decodeText(String value, Object target) {
+        if (kind == Kind.STRING || kind == Kind.OBJECT) {
+            accessor.set(target, value);
+            return;
+        }
+        if (kind == Kind.ENUM) {
+            Object constant = enumConstants.get(value.trim());
+            if (constant == null) {
+                throw new IllegalArgumentException("No constant of " + value);
+            }
+            accessor.set(target, constant);
+            return;
+        }
+
+        String text = value.trim();
+        if (untranslate != null) {
+            text = untranslate.getOrDefault(text, text);
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+        switch (kind) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+            case BIG_INTEGER:
+                try {
+                    decodeNumber(Long.parseLong(text), target);
+                } catch (NumberFormatException e) {
+                    decodeNumber(Double.parseDouble(text), target);
+                }
+                break;
+            case DOUBLE:
+            case FLOAT:
+                decodeNumber(Double.parseDouble(text), target);
+                break;
+            case BIG_DECIMAL:
+                accessor.set(target, new BigDecimal(text));
+                break;
+            case BOOLEAN:
+                decodeBoolean(Boolean.parseBoolean(text) || "1".equals(text), target);
+                break;
+            case DATE:
+                accessor.set(target, Date.from(toLocalDateTime(parseFormat.parse(text)).atZone(ZoneId.systemDefault()).toInstant()));
+                break;
+            case LOCAL_DATE:
+                accessor.set(target, LocalDate.from(parseFormat.parse(text)));
+                break;
+            case LOCAL_DATE_TIME:
+                accessor.set(target, toLocalDateTime(parseFormat.parse(text)));
+                break;
+            case INSTANT:
+                accessor.set(target, toLocalDateTime(parseFormat.parse(text)).atZone(ZoneId.systemDefault()).toInstant());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(TemporalAccessor parsed) {
+        try {
+            return LocalDateTime.from(parsed);
+        } catch (RuntimeException e) {
+            // pattern without time
+            return LocalDate.from(parsed).atStartOfDay();
+        }
+    }
+
+    private static int toInt(double value) {
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Not an int: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long toLong(double value) {
+        if (value != (long) value) {
+            throw new IllegalArgumentException("Not a long: " + value);
+        }
+        return (long) value;
+    }
+
+    private static Kind kind(Class<?> type) {
+        if (type == String.class) {
+            return Kind.STRING;
+        } else if (type == int.class || type == Integer.class) {
+            return Kind.INT;
+        } else if (type == long.class || type == Long.class) {
+            return Kind.LONG;
+        } else if (type == double.class || type == Double.class) {
+            return Kind.DOUBLE;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == short.class || type == Short.class) {
+            return Kind.SHORT;
+        } else if (type == byte.class || type == Byte.class) {
+            return Kind.BYTE;
+        } else if (type == float.class || type == Float.class) {
+            return Kind.FLOAT;
+        } else if (type == BigDecimal.class) {
+            return Kind.BIG_DECIMAL;
+        } else if (type == BigInteger.class) {
+            return Kind.BIG_INTEGER;
+        } else if (type == Date.class) {
+            return Kind.DATE;
+        } else if (type == LocalDate.class) {
+            return Kind.LOCAL_DATE;
+        } else if (type == LocalDateTime.class) {
+            return Kind.LOCAL_DATE_TIME;
+        } else if (type == Instant.class) {
+            return Kind.INSTANT;
+        } else if (type.isEnum()) {
+            return Kind.ENUM;
+        }
+        return Kind.OBJECT;
+    }
+}
@@ -0,0 +1,341 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.ExcelStyle;
+import com.allinmoney.platform.annotation.Summary;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The attributes of one annotated field written out at compile time, see
+ * {@link RowWriter}. Each attribute has the default of {@link ExcelAttribute},
+ * the field is read and written by the accessor instead of reflection.
+ *
+ * @author Chris
+ */
+public final class ColumnDefinition {
+
+    private static final Class<?>[] NO_GROUPS = new Class<?>[0];
+    private static final String[] NO_COMBO = new String[0];
+
+    private final Class<?> declaringClass;
+    private final String name;
+    private final FieldAccessor accessor;
+    private final String title;
+    private final Class<?>[] groups;
+    private final Map<String, String> translate;
+    private final String column;
+    private final String prompt;
+    private final String format;
+    private final String[] combo;
+    private final boolean export;
+    private final boolean mark;
+    private final Summary summary;
+    private final int width;
+    private final StyleSpec style;
+
+    private ColumnDefinition(Builder builder) {
+        this.declaringClass = builder.declaringClass;
+        this.name = builder.name;
+        this.accessor = builder.accessor;
+        this.title = builder.title;
+        this.groups = builder.groups;
+        this.translate = Collections.unmodifiableMap(builder.translate);
+        this.column = builder.column;
+        this.prompt = builder.prompt;
+        this.format = builder.format;
+        this.combo = builder.combo;
+        this.export = builder.export;
+        this.mark = builder.mark;
+        this.summary = builder.summary;
+        this.width = builder.width;
+        this.style = builder.style;
+    }
+
+    /**
+     * Start definition of a field.
+     *
+     * @param declaringClass the class which declares the field
+     * @param name           the field name
+     * @param accessor       the accessor of field
+     * @return the builder
+     */
+    public static Builder builder(Class<?> declaringClass, String name, FieldAccessor accessor) {
+        return new Builder(declaringClass, name, accessor);
+    }
+
+    /**
+     * Gets the class which declares the field.
+     *
+     * @return the declaring class
+     */
+    public Class<?> getDeclaringClass() {
+        return declaringClass;
+    }
+
+    /**
+     * Gets field name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets title.
+     *
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets column mark like A, B, C.
+     *
+     * @return the column, empty if it is not set
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    boolean inGroup(Class<?> view) {
+        for (Class<?> group : groups) {
+            if (group.equals(view)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Map<String, String> getTranslate() {
+        return translate;
+    }
+
+    String getPrompt() {
+        return prompt;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    String[] getCombo() {
+        return combo;
+    }
+
+    boolean isExport() {
+        return export;
+    }
+
+    boolean isMark() {
+        return mark;
+    }
+
+    Summary getSummary() {
+        return summary;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    StyleSpec getStyle() {
+        return style;
+    }
+
+    /**
+     * Builder of definition, the attributes are named as the attributes of
+     * {@link ExcelAttribute} and {@link ExcelStyle}.
+     */
+    public static final class Builder {
+        private final Class<?> declaringClass;
+        private final String name;
+        private final FieldAccessor accessor;
+        private String title;
+        private Class<?>[] groups = NO_GROUPS;
+        private final Map<String, String> translate = new HashMap<>();
+        private String column = "";
+        private String prompt = "";
+        private String format = "yyyy-MM-dd HH:mm:ss";
+        private String[] combo = NO_COMBO;
+        private boolean export = true;
+        private boolean mark;
+        private Summary summary = Summary.NONE;
+        private int width = -1;
+        private StyleSpec style;
+
+        private Builder(Class<?> declaringClass, String name, FieldAccessor accessor) {
+            this.declaringClass = declaringClass;
+            this.name = name;
+            this.accessor = accessor;
+        }
+
+        /**
+         * Sets title.
+         *
+         * @param title the title
+         * @return the builder
+         */
+        public Builder title(String title) {
+            this.title = title;
+            return this;
+        }
+
+        /**
+         * Sets groups.
+         *
+         * @param groups the groups
+         * @return the builder
+         */
+        public Builder groups(Class<?>... groups) {
+            this.groups = groups.clone();
+            return this;
+        }
+
+        /**
+         * Add an entry of translate table.
+         *
+         * @param key   the key
+         * @param value the text
+         * @return the builder
+         */
+        public Builder translate(String key, String value) {
+            this.translate.put(key, value);
+            return this;
+        }
+
+        /**
+         * Sets column.
+         *
+         * @param column the column
+         * @return the builder
+         */
+        public Builder column(String column) {
+            this.column = column;
+            return this;
+        }
+
+        /**
+         * Sets prompt.
+         *
+         * @param prompt the prompt
+         * @return the builder
+         */
+        public Builder prompt(String prompt) {
+            this.prompt = prompt;
+            return this;
+        }
+
+        /**
+         * Sets format.
+         *
+         * @param format the format
+         * @return the builder
+         */
+        public Builder format(String format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Sets combo.
+         *
+         * @param combo the combo
+         * @return the builder
+         */
+        public Builder combo(String... combo) {
+            this.combo = combo.clone();
+            return this;
+        }
+
+        /**
+         * Sets export.
+         *
+         * @param export the export
+         * @return the builder
+         */
+        public Builder export(boolean export) {
+            this.export = export;
+            return this;
+        }
+
+        /**
+         * Sets mark.
+         *
+         * @param mark the mark
+         * @return the builder
+         */
+        public Builder mark(boolean mark) {
+            this.mark = mark;
+            return this;
+        }
+
+        /**
+         * Sets summary function, {@link ExcelAttribute#isSum()} is {@link Summary#SUM}.
+         *
+         * @param summary the summary
+         * @return the builder
+         */
+        public Builder summary(Summary summary) {
+            this.summary = summary;
+            return this;
+        }
+
+        /**
+         * Sets width.
+         *
+         * @param width the width
+         * @return the builder
+         */
+        public Builder width(int width) {
+            this.width = width;
+            return this;
+        }
+
+        /**
+         * Sets content style of {@link ExcelStyle}, it should be set after {@link #mark(boolean)}.
+         *
+         * @param fontName   the font name
+         * @param fontHeight the font height
+         * @param fontColor  the font color
+         * @param bold       the bold
+         * @param italic     the italic
+         * @param fillColor  the fill color
+         * @param align      the align
+         * @param wrapText   the wrap text
+         * @param dataFormat the data format
+         * @return the builder
+         */
+        public Builder style(String fontName, short fontHeight, IndexedColors fontColor, boolean bold, boolean italic,
+                             IndexedColors fillColor, HorizontalAlignment align, boolean wrapText, String dataFormat) {
+            this.style = StyleSpec.of(fontName, fontHeight, fontColor, bold, italic, fillColor, align, wrapText,
+                    dataFormat, mark);
+            return this;
+        }
+
+        /**
+         * Build the definition.
+         *
+         * @return the column definition
+         */
+        public ColumnDefinition build() {
+            if (title == null) {
+                throw new ExcelException("Title of field " + name + " is required");
+            }
+            if (style == null) {
+                style = StyleSpec.of(null, mark);
+            }
+            return new ColumnDefinition(this);
+        }
+    }
+}
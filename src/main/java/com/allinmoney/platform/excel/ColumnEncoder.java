@@ -0,0 +1,171 @@
+package com.allinmoney.platform.excel;
+
+import java.util.Map;
+
+/**
+ * Writes one column of data objects into cell sinks. The translate table and
+ * the codec of the column are resolved once, primitive fields are read without
+ * boxing unless a codec is registered for their wrappers, and enums are written with the texts cached by ordinal. Rows
+ * converted by {@link RowPipeline} are replayed as they are.
+ *
+ * @author Chris
+ */
+final class ColumnEncoder {
+
+    /**
+     * Integral keys of translate below it are looked up in an array.
+     */
+    private static final int DENSE_KEYS = 1024;
+
+    private final int index;
+    private final FieldAccessor accessor;
+    private final Class<?> type;
+    private final CellCodecs codecs;
+
+    /**
+     * Identifies if field is read without boxing, primitives with a codec
+     * registered by user are written by the codec.
+     */
+    private final boolean unboxed;
+
+    /**
+     * The translate table, null if column is not translated.
+     */
+    private final Map<String, String> translate;
+
+    /**
+     * Translated texts of small integral keys, null if some key is not such a key.
+     */
+    private final String[] denseTranslate;
+
+    /**
+     * Texts of enum constants by ordinal, null if field is not enum or the enum
+     * has a codec registered.
+     */
+    private final String[] enumTexts;
+
+    /**
+     * Codec of the last value class, field values are mostly of one class.
+     */
+    private Class<?> lastClass;
+    private CellCodec<Object> lastCodec;
+
+    ColumnEncoder(ColumnSchema.Column column, CellCodecs codecs) {
+        this.index = column.getIndex();
+        this.accessor = column.getAccessor();
+        this.type = accessor.getType();
+        this.codecs = codecs;
+        this.unboxed = type.isPrimitive() && !codecs.isCustom(type);
+        this.translate = column.getTranslate().isEmpty() ? null : column.getTranslate();
+        this.denseTranslate = translate == null ? null : dense(translate);
+        this.enumTexts = type.isEnum() && codecs.isText(type) ? enumTexts(type, translate) : null;
+    }
+
+    /**
+     * Write the column value of data object.
+     *
+     * @param data the data object
+     * @param sink the cell sink
+     */
+    void encode(Object data, CellSink sink) {
+        if (data instanceof EncodedRows) {
+            ((EncodedRows) data).replay(index, sink);
+            return;
+        }
+        if (unboxed) {
+            if (type == int.class || type == long.class) {
+                long value = accessor.getLong(data);
+                String text = translate == null ? null : translate(value);
+                if (text != null) {
+                    sink.writeText(text);
+                } else {
+                    sink.writeLong(value);
+                }
+                return;
+            } else if (type == double.class) {
+                double value = accessor.getDouble(data);
+                String text = translate == null ? null : translate.get(Double.toString(value));
+                if (text != null) {
+                    sink.writeText(text);
+                } else {
+                    sink.writeNumber(value);
+                }
+                return;
+            } else if (type == boolean.class) {
+                boolean value = accessor.getBoolean(data);
+                String text = translate == null ? null : translate.get(Boolean.toString(value));
+                if (text != null) {
+                    sink.writeText(text);
+                } else {
+                    sink.writeBoolean(value);
+                }
+                return;
+            }
+        }
+
+        Object value = accessor.get(data);
+        if (value == null) {
+            sink.writeBlank();
+            return;
+        }
+        if (enumTexts != null) {
+            sink.writeText(enumTexts[((Enum<?>) value).ordinal()]);
+            return;
+        }
+        if (translate != null) {
+            String text = value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte ? translate(((Number) value).longValue()) : translate.get(value.toString());
+            if (text != null) {
+                sink.writeText(text);
+                return;
+            }
+        }
+        codec(value.getClass()).encode(value, sink);
+    }
+
+    private CellCodec<Object> codec(Class<?> cls) {
+        if (cls != lastClass) {
+            lastCodec = codecs.get(cls);
+            lastClass = cls;
+        }
+        return lastCodec;
+    }
+
+    private String translate(long value) {
+        if (denseTranslate != null) {
+            return value >= 0 && value < denseTranslate.length ? denseTranslate[(int) value] : null;
+        }
+        return translate.get(Long.toString(value));
+    }
+
+    private static String[] dense(Map<String, String> translate) {
+        int max = -1;
+        for (String key : translate.keySet()) {
+            int value;
+            try {
+                value = Integer.parseInt(key);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (value < 0 || value >= DENSE_KEYS || !Integer.toString(value).equals(key)) {
+                return null;
+            }
+            max = Math.max(max, value);
+        }
+        String[] table = new String[max + 1];
+        for (Map.Entry<String, String> entry : translate.entrySet()) {
+            table[Integer.parseInt(entry.getKey())] = entry.getValue();
+        }
+        return table;
+    }
+
+    private static String[] enumTexts(Class<?> type, Map<String, String> translate) {
+        Object[] constants = type.getEnumConstants();
+        String[] texts = new String[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            String text = constants[i].toString();
+            texts[i] = translate == null ? text : translate.getOrDefault(text, text);
+        }
+        return texts;
+    }
+}
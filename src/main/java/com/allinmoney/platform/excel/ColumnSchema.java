@@ -0,0 +1,624 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.ExcelStyle;
+import com.allinmoney.platform.annotation.Summary;
+import com.allinmoney.platform.annotation.Translate;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * The compiled columns of one data class. All annotation lookups, column sorting
+ * and translate tables are resolved once, the schema is immutable and cached per
+ * (class, data view, withSuperFields), so it can be shared by all exportations
+ * and importations of the class. If {@link ExcelAttributeProcessor} generated
+ * the columns of the class, they are compiled from the generated
+ * {@link RowWriter} without scanning fields.
+ *
+ * @author Chris
+ */
+public final class ColumnSchema {
+
+    /**
+     * Schemas are attached to the data class itself, so they are released together
+     * with the class when its class loader is unloaded.
+     */
+    private static final ClassValue<ConcurrentMap<Key, ColumnSchema>> CACHE =
+            new ClassValue<ConcurrentMap<Key, ColumnSchema>>() {
+                @Override
+                protected ConcurrentMap<Key, ColumnSchema> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    /**
+     * The suffix of the classes generated for data classes.
+     */
+    static final String GENERATED_SUFFIX = "_ExcelRow";
+
+    /**
+     * The generated row writer and reader of data class, or the class itself if none is generated.
+     */
+    private static final ClassValue<Object> GENERATED = new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+            return findGenerated(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final List<Column> columns;
+    private final Map<String, Column> titles;
+    private final boolean hasSum;
+    private final MethodHandle constructor;
+    private final RowReader<?> reader;
+
+    private ColumnSchema(Class<?> type, List<Field> fields) {
+        this.type = type;
+        this.constructor = findConstructor(type);
+        this.reader = null;
+        List<Column> list = new ArrayList<>(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            list.add(new Column(fields.get(i), i));
+        }
+        this.columns = Collections.unmodifiableList(list);
+        this.titles = titles(list);
+        this.hasSum = list.stream().anyMatch(Column::hasSummary);
+    }
+
+    private ColumnSchema(Class<?> type, RowReader<?> reader, List<ColumnDefinition> definitions) {
+        this.type = type;
+        this.constructor = null;
+        this.reader = reader;
+        List<Column> list = new ArrayList<>(definitions.size());
+        for (int i = 0; i < definitions.size(); i++) {
+            list.add(new Column(definitions.get(i), i));
+        }
+        this.columns = Collections.unmodifiableList(list);
+        this.titles = titles(list);
+        this.hasSum = list.stream().anyMatch(Column::hasSummary);
+    }
+
+    private static Map<String, Column> titles(List<Column> columns) {
+        Map<String, Column> map = new HashMap<>();
+        for (Column column : columns) {
+            map.putIfAbsent(column.getTitle(), column);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Gets the cached schema of given class.
+     *
+     * @param cls             the data class
+     * @param view            the data view, null for all annotated fields
+     * @param withSuperFields identifies if to include the annotated fields of super class
+     * @return the column schema
+     */
+    public static ColumnSchema of(Class<?> cls, Class<?> view, boolean withSuperFields) {
+        return CACHE.get(cls).computeIfAbsent(new Key(view, withSuperFields), key -> {
+            Object generated = GENERATED.get(cls);
+            if (generated instanceof RowWriter) {
+                return new ColumnSchema(cls, (RowReader<?>) generated,
+                        getDefinitions((RowWriter<?>) generated, view, withSuperFields));
+            }
+            return new ColumnSchema(cls, getAnnotatedFields(cls, view, withSuperFields));
+        });
+    }
+
+    /**
+     * Compile a schema by scanning annotated fields of given class, the class
+     * generated by {@link ExcelAttributeProcessor} is not used. The schema is
+     * not cached.
+     *
+     * @param cls             the data class
+     * @param view            the data view, null for all annotated fields
+     * @param withSuperFields identifies if to include the annotated fields of super class
+     * @return the column schema
+     */
+    public static ColumnSchema ofFields(Class<?> cls, Class<?> view, boolean withSuperFields) {
+        return new ColumnSchema(cls, getAnnotatedFields(cls, view, withSuperFields));
+    }
+
+    /**
+     * Compile a schema of given fields, the fields keep their order as columns.
+     * The schema is not cached.
+     *
+     * @param fields the annotated fields
+     * @return the column schema
+     */
+    public static ColumnSchema of(List<Field> fields) {
+        return new ColumnSchema(fields.isEmpty() ? Object.class : fields.get(0).getDeclaringClass(), fields);
+    }
+
+    /**
+     * Gets type of data.
+     *
+     * @return the type
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Gets columns ordered by column index.
+     *
+     * @return the columns
+     */
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets column by title.
+     *
+     * @param title the title
+     * @return the column, null if no column has given title
+     */
+    public Column getColumn(String title) {
+        return titles.get(title);
+    }
+
+    /**
+     * Gets column count.
+     *
+     * @return the count
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * Identifies if any column is summarized.
+     *
+     * @return the boolean
+     */
+    public boolean hasSum() {
+        return hasSum;
+    }
+
+    /**
+     * Identifies if the schema is compiled from the generated {@link RowWriter}.
+     *
+     * @return the boolean
+     */
+    public boolean isGenerated() {
+        return reader != null;
+    }
+
+    /**
+     * Create a new instance of data type with its no-arg constructor.
+     *
+     * @return the new instance
+     */
+    public Object newInstance() {
+        if (reader != null) {
+            return reader.newInstance();
+        }
+        if (constructor == null) {
+            throw new ExcelException(type.getName() + " has no constructor without arguments");
+        }
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ExcelException(e.toString(), e);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> type) {
+        try {
+            Constructor<?> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(ctor)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static List<Field> getAnnotatedFields(Class<?> clz, Class<?> view, boolean superFlag) {
+        List<Field> fields = new ArrayList<>();
+        List<Field> annotatedFields = new ArrayList<>();
+        if (superFlag && clz.getSuperclass() != null) {
+            fields.addAll(Arrays.asList(clz.getSuperclass().getDeclaredFields()));
+        }
+        fields.addAll(Arrays.asList(clz.getDeclaredFields()));
+
+        fields.stream()
+                .filter(f->f.isAnnotationPresent(ExcelAttribute.class))
+                .forEach(f->{
+                    boolean match = false;
+                    ExcelAttribute attr = f.getAnnotation(ExcelAttribute.class);
+                    if (view == null) {
+                        match = true;
+                    } else {
+                        for (Class<?> v : attr.groups()) {
+                            if (v.equals(view)) {
+                                match = true;
+                                break;
+                            }
+                        }
+                    }
+                    if (match) {
+                        annotatedFields.add(f);
+                    }
+                });
+
+        sortFields(annotatedFields);
+        return annotatedFields;
+    }
+
+    /**
+     * Load the class generated for data class, it should be a {@link RowWriter}
+     * and {@link RowReader} of the data class.
+     */
+    private static Object findGenerated(Class<?> type) {
+        try {
+            Class<?> generated = Class.forName(type.getName().replace('$', '_') + GENERATED_SUFFIX, true,
+                    type.getClassLoader());
+            Object instance = generated.getDeclaredConstructor().newInstance();
+            if (instance instanceof RowWriter && instance instanceof RowReader
+                    && ((RowWriter<?>) instance).getType() == type) {
+                return instance;
+            }
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            // not generated, fields are scanned
+        }
+        return type;
+    }
+
+    private static List<ColumnDefinition> getDefinitions(RowWriter<?> writer, Class<?> view, boolean superFlag) {
+        List<ColumnDefinition> all = writer.getColumns();
+        List<ColumnDefinition> definitions = new ArrayList<>();
+        if (view == null) {
+            for (int i : writer.getColumnOrder(superFlag)) {
+                definitions.add(all.get(i));
+            }
+            return definitions;
+        }
+
+        for (ColumnDefinition definition : all) {
+            if ((superFlag || definition.getDeclaringClass() == writer.getType()) && definition.inGroup(view)) {
+                definitions.add(definition);
+            }
+        }
+        sortColumns(definitions, ColumnDefinition::getColumn);
+        return definitions;
+    }
+
+    private static void sortFields(List<Field> fields) {
+        sortColumns(fields, field -> field.getAnnotation(ExcelAttribute.class).column());
+    }
+
+    /**
+     * Some of the fields may be annotated with column attribute, to eliminate
+     * the messy of columns of exportation, fields should be sorted correctly
+     * before exportation. It is shared by {@link ExcelAttributeProcessor}, so
+     * the generated order is the same as the order of scanned fields.
+     *
+     * @param <E>    the type of field
+     * @param fields the annotated fields to sort
+     * @param column gets the column attribute of field
+     */
+    static <E> void sortColumns(List<E> fields, Function<? super E, String> column) {
+        List<E> fieldsNoColumn = new ArrayList<>();
+        List<E> fieldsWithColumn = new ArrayList<>();
+        // store fields into dedicated lists, then free slots
+        for (int i = 0; i < fields.size(); i++) {
+            E field = fields.get(i);
+            if (column.apply(field).isEmpty()) {
+                fieldsNoColumn.add(field);
+            } else {
+                fieldsWithColumn.add(field);
+            }
+            fields.set(i, null);
+        }
+
+        // sort fields with column
+        fieldsWithColumn.sort((o1, o2) -> column.apply(o1).compareToIgnoreCase(column.apply(o2)));
+
+        // write back sorted column fields
+        List<E> remains = new ArrayList<>();
+        for (E field : fieldsWithColumn) {
+            int col = getExcelCol(column.apply(field));
+            if (col < fields.size() && fields.get(col) == null) {
+                fields.set(col, field);
+            } else {
+                remains.add(field);
+            }
+        }
+
+        // write back non-columned fields
+        int j = 0;
+        for (int i = 0; j < fieldsNoColumn.size() && i < fields.size(); i++) {
+            if (fields.get(i) == null) {
+                fields.set(i, fieldsNoColumn.get(j));
+                j++;
+            }
+        }
+
+        // append remains in columned fields list to fields
+        // the remains are the columns that have duplicate
+        // columns in fields or column is too large to store
+        int k = 0;
+        for (int i = 0; k < remains.size() && i < fields.size(); i++) {
+            if (fields.get(i) == null) {
+                fields.set(i, remains.get(k));
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Gets the 0-based index of column mark, see {@link ExcelUtil#getExcelCol(String)}.
+     */
+    static int getExcelCol(String col) {
+        col = col.toUpperCase();
+        int count = -1;
+        char[] cs = col.toCharArray();
+        for (int i = 0; i < cs.length; i++) {
+            count += (cs[i] - 64) * Math.pow(26, cs.length - 1 - i);
+        }
+
+        return count;
+    }
+
+    /**
+     * One compiled column.
+     */
+    public static final class Column {
+        private final Class<?> declaringClass;
+        private final String name;
+        private volatile Field field;
+        private final FieldAccessor accessor;
+        private final int index;
+        private final String title;
+        private final String format;
+        private final String prompt;
+        private final String[] combo;
+        private final Map<String, String> translate;
+        private final boolean export;
+        private final boolean mark;
+        private final Summary summary;
+        private final int width;
+        private final StyleSpec style;
+
+        private Column(Field field, int index) {
+            ExcelAttribute attribute = field.getAnnotation(ExcelAttribute.class);
+            this.declaringClass = field.getDeclaringClass();
+            this.name = field.getName();
+            this.field = field;
+            this.accessor = FieldAccessor.of(field);
+            this.index = index;
+            this.title = attribute.title();
+            this.format = attribute.format();
+            this.prompt = attribute.prompt();
+            this.combo = attribute.combo().clone();
+            this.export = attribute.isExport();
+            this.mark = attribute.isMark();
+            this.summary = attribute.summary() == Summary.NONE && attribute.isSum() ? Summary.SUM : attribute.summary();
+            this.width = attribute.width();
+            this.style = StyleSpec.of(field.getAnnotation(ExcelStyle.class), mark);
+
+            Map<String, String> map = new HashMap<>();
+            for (Translate t : attribute.translate()) {
+                map.put(t.key(), t.value());
+            }
+            this.translate = Collections.unmodifiableMap(map);
+        }
+
+        private Column(ColumnDefinition definition, int index) {
+            this.declaringClass = definition.getDeclaringClass();
+            this.name = definition.getName();
+            this.accessor = definition.getAccessor();
+            this.index = index;
+            this.title = definition.getTitle();
+            this.format = definition.getFormat();
+            this.prompt = definition.getPrompt();
+            this.combo = definition.getCombo().clone();
+            this.export = definition.isExport();
+            this.mark = definition.isMark();
+            this.summary = definition.getSummary();
+            this.width = definition.getWidth();
+            this.style = definition.getStyle();
+            this.translate = definition.getTranslate();
+        }
+
+        /**
+         * Gets field, it has been made accessible. Columns of generated schema
+         * look up the field on first call.
+         *
+         * @return the field
+         */
+        public Field getField() {
+            Field f = field;
+            if (f == null) {
+                try {
+                    f = declaringClass.getDeclaredField(name);
+                    f.setAccessible(true);
+                } catch (NoSuchFieldException e) {
+                    throw new ExcelException("No field " + name + " in " + declaringClass.getName(), e);
+                }
+                field = f;
+            }
+            return f;
+        }
+
+        /**
+         * Gets field name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets accessor of field.
+         *
+         * @return the accessor
+         */
+        public FieldAccessor getAccessor() {
+            return accessor;
+        }
+
+        /**
+         * Gets column index in sheet.
+         *
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets title.
+         *
+         * @return the title
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Gets date format.
+         *
+         * @return the format
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        /**
+         * Gets prompt.
+         *
+         * @return the prompt
+         */
+        public String getPrompt() {
+            return prompt;
+        }
+
+        /**
+         * Gets combo.
+         *
+         * @return the combo
+         */
+        public String[] getCombo() {
+            return combo.clone();
+        }
+
+        /**
+         * Identifies if column has combo.
+         *
+         * @return the boolean
+         */
+        public boolean hasCombo() {
+            return combo.length > 0;
+        }
+
+        /**
+         * Gets fixed width in characters.
+         *
+         * @return the width, -1 if width is estimated by contents
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets style of content cells.
+         *
+         * @return the style
+         */
+        StyleSpec getStyle() {
+            return style;
+        }
+
+        /**
+         * Gets translate table.
+         *
+         * @return the translate
+         */
+        public Map<String, String> getTranslate() {
+            return translate;
+        }
+
+        /**
+         * Is export.
+         *
+         * @return the boolean
+         */
+        public boolean isExport() {
+            return export;
+        }
+
+        /**
+         * Is mark.
+         *
+         * @return the boolean
+         */
+        public boolean isMark() {
+            return mark;
+        }
+
+        /**
+         * Is sum.
+         *
+         * @return the boolean
+         */
+        public boolean isSum() {
+            return summary == Summary.SUM;
+        }
+
+        /**
+         * Gets summary function.
+         *
+         * @return the summary, {@link Summary#NONE} if column is not summarized
+         */
+        public Summary getSummary() {
+            return summary;
+        }
+
+        /**
+         * Identifies if column is summarized.
+         *
+         * @return the boolean
+         */
+        public boolean hasSummary() {
+            return summary != Summary.NONE;
+        }
+    }
+
+    private static final class Key {
+        private final Class<?> view;
+        private final boolean withSuperFields;
+
+        private Key(Class<?> view, boolean withSuperFields) {
+            this.view = view;
+            this.withSuperFields = withSuperFields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return withSuperFields == key.withSuperFields && view == key.view;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (view == null ? 0 : view.hashCode()) + (withSuperFields ? 1 : 0);
+        }
+    }
+}
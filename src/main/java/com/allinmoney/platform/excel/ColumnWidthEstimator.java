@@ -0,0 +1,203 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.Arrays;
+
+/**
+ * Estimates column widths while rows are written. It keeps the running max of
+ * display width of each column, so the widths can be applied once per sheet
+ * instead of measuring the whole column with font metrics for every cell.
+ *
+ * @author Chris
+ */
+public class ColumnWidthEstimator {
+
+    /**
+     * The max column width of excel in characters.
+     */
+    public static final int MAX_WIDTH = 255;
+
+    private static final int PADDING = 2;
+    private static final double HEADER_SCALE = 14.0 / 12.0;
+
+    private final int sampleRows;
+    private int[] widths;
+    private int[] fixed;
+    private int rows;
+
+    /**
+     * Instantiates a new estimator.
+     *
+     * @param sampleRows the rows to measure, 0 or negative to measure all rows
+     */
+    public ColumnWidthEstimator(int sampleRows) {
+        this.sampleRows = sampleRows;
+        this.widths = new int[0];
+        this.fixed = new int[0];
+    }
+
+    /**
+     * Sets fixed width of column, the column is not measured any more.
+     *
+     * @param col   the column
+     * @param chars the width in characters
+     */
+    public void fix(int col, int chars) {
+        ensure(col);
+        fixed[col] = Math.min(chars, MAX_WIDTH);
+    }
+
+    /**
+     * Measure header text, header font is larger than content font.
+     *
+     * @param col  the column
+     * @param text the header text
+     */
+    public void measureHeader(int col, String text) {
+        ensure(col);
+        update(col, (int) Math.ceil(displayWidth(text) * HEADER_SCALE));
+    }
+
+    /**
+     * Identifies if rows are still sampled, callers can skip building text
+     * only for measuring when it returns false.
+     *
+     * @return the boolean
+     */
+    public boolean isSampling() {
+        return sampleRows <= 0 || rows < sampleRows;
+    }
+
+    /**
+     * Mark one content row is measured.
+     */
+    public void nextRow() {
+        rows++;
+    }
+
+    /**
+     * Measure content text of column.
+     *
+     * @param col  the column
+     * @param text the text
+     */
+    public void measure(int col, String text) {
+        if (!isSampling()) {
+            return;
+        }
+        ensure(col);
+        update(col, displayWidth(text));
+    }
+
+    /**
+     * Measure content of column with known width.
+     *
+     * @param col   the column
+     * @param chars the width in characters
+     */
+    public void measure(int col, int chars) {
+        if (!isSampling()) {
+            return;
+        }
+        ensure(col);
+        update(col, chars);
+    }
+
+    /**
+     * Gets estimated width of column in characters.
+     *
+     * @param col the column
+     * @return the width, 0 if column is never measured
+     */
+    public int getWidth(int col) {
+        if (col >= widths.length) {
+            return 0;
+        }
+        if (fixed[col] >= 0) {
+            return fixed[col];
+        }
+        return widths[col] == 0 ? 0 : Math.min(widths[col] + PADDING, MAX_WIDTH);
+    }
+
+    /**
+     * Apply estimated widths to sheet.
+     *
+     * @param sheet the sheet
+     */
+    public void apply(Sheet sheet) {
+        for (int col = 0; col < widths.length; col++) {
+            int width = getWidth(col);
+            if (width > 0) {
+                sheet.setColumnWidth(col, width * 256);
+            }
+        }
+    }
+
+    /**
+     * Gets display width of text in characters. East asian characters take two
+     * characters, the widest line is taken for multi line text.
+     *
+     * @param text the text
+     * @return the width
+     */
+    public static int displayWidth(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int max = 0;
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                max = Math.max(max, width);
+                width = 0;
+            } else if (c >= 0x1100 && isWide(c)) {
+                width += 2;
+            } else {
+                width++;
+            }
+        }
+        return Math.max(max, width);
+    }
+
+    /**
+     * Gets display width of integral number.
+     *
+     * @param value the value
+     * @return the width
+     */
+    static int digits(long value) {
+        int digits = value < 0 ? 2 : 1;
+        for (long v = Math.abs(value / 10); v > 0; v /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static boolean isWide(char c) {
+        return c <= 0x115F
+                || c >= 0x2E80 && c <= 0xA4CF
+                || c >= 0xAC00 && c <= 0xD7A3
+                || c >= 0xF900 && c <= 0xFAFF
+                || c >= 0xFE30 && c <= 0xFE4F
+                || c >= 0xFF00 && c <= 0xFF60
+                || c >= 0xFFE0 && c <= 0xFFE6;
+    }
+
+    private void update(int col, int chars) {
+        if (chars > widths[col]) {
+            widths[col] = chars;
+        }
+    }
+
+    private void ensure(int col) {
+        if (col >= widths.length) {
+            int size = Math.max(col + 1, widths.length * 2);
+            widths = Arrays.copyOf(widths, size);
+            int old = fixed.length;
+            fixed = Arrays.copyOf(fixed, size);
+            Arrays.fill(fixed, old, size, -1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.allinmoney.platform.excel;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts bytes written to the wrapped stream. If it keeps the stream open,
+ * closing it only flushes the wrapped stream, the writers close their output
+ * when a workbook is written.
+ *
+ * @author Chris
+ */
+final class CountingOutputStream extends FilterOutputStream {
+
+    private final boolean keepOpen;
+    private long count;
+
+    /**
+     * Instantiates a new counting output stream.
+     *
+     * @param out      the wrapped stream
+     * @param keepOpen identifies if the wrapped stream is left open
+     */
+    CountingOutputStream(OutputStream out, boolean keepOpen) {
+        super(out);
+        this.keepOpen = keepOpen;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (keepOpen) {
+            flush();
+        } else {
+            super.close();
+        }
+    }
+
+    /**
+     * Gets written bytes.
+     *
+     * @return the count
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,215 @@
+package com.allinmoney.platform.excel;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Date helpers shared by exportation and importation. Dates are written as excel
+ * serial numbers with a date format, so they can be sorted and filtered as dates.
+ * Text formatting goes through cached {@link DateTimeFormatter}s which are
+ * thread safe.
+ *
+ * @author Chris
+ */
+public final class DateFormats {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final LocalDateTime EXCEL_EPOCH = LocalDateTime.of(1899, 12, 30, 0, 0);
+
+    /**
+     * Serial of 1970-01-01.
+     */
+    private static final long UNIX_EPOCH_SERIAL = 25_569;
+
+    /**
+     * Serial of 1900-03-01, serials before it are shifted by the fake 1900-02-29 of excel.
+     */
+    private static final double FIRST_REAL_LEAP_SERIAL = 61;
+
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> EXCEL_FORMATS = new ConcurrentHashMap<>();
+
+    private DateFormats() {
+    }
+
+    /**
+     * Identifies if value is a date supported as date cell.
+     *
+     * @param value the value
+     * @return the boolean
+     */
+    public static boolean isDate(Object value) {
+        return value instanceof Date || value instanceof LocalDateTime || value instanceof LocalDate
+                || value instanceof Instant || value instanceof ZonedDateTime || value instanceof OffsetDateTime;
+    }
+
+    /**
+     * Gets excel serial of date value in the default time zone.
+     *
+     * @param value the date value, see {@link #isDate(Object)}
+     * @return the serial, -1 if date is before 1900-01-01
+     */
+    public static double toExcelDate(Object value) {
+        if (value instanceof Date) {
+            long millis = ((Date) value).getTime();
+            return fromEpochMillis(millis + TimeZone.getDefault().getOffset(millis));
+        } else if (value instanceof LocalDateTime) {
+            return toExcelDate((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return adjust(ChronoUnit.DAYS.between(EXCEL_EPOCH.toLocalDate(), (LocalDate) value));
+        } else if (value instanceof Instant) {
+            return toExcelDate(LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault()));
+        } else if (value instanceof ZonedDateTime) {
+            return toExcelDate(((ZonedDateTime) value).toLocalDateTime());
+        } else if (value instanceof OffsetDateTime) {
+            return toExcelDate(((OffsetDateTime) value).toLocalDateTime());
+        }
+        throw new ExcelException("Not a date: " + value);
+    }
+
+    /**
+     * Gets excel serial of local date time.
+     *
+     * @param value the value
+     * @return the serial, -1 if date is before 1900-01-01
+     */
+    public static double toExcelDate(LocalDateTime value) {
+        long days = ChronoUnit.DAYS.between(EXCEL_EPOCH.toLocalDate(), value.toLocalDate());
+        return adjust(days + value.toLocalTime().toNanoOfDay() / (MILLIS_PER_DAY * 1_000_000.0));
+    }
+
+    /**
+     * Gets local date time of excel serial.
+     *
+     * @param serial the serial
+     * @return the local date time
+     */
+    public static LocalDateTime toLocalDateTime(double serial) {
+        double days = serial < FIRST_REAL_LEAP_SERIAL ? serial + 1 : serial;
+        long millis = Math.round(days * MILLIS_PER_DAY);
+        return EXCEL_EPOCH.plus(millis, ChronoUnit.MILLIS);
+    }
+
+    /**
+     * Gets cached formatter of pattern.
+     *
+     * @param pattern the pattern
+     * @return the formatter
+     */
+    public static DateTimeFormatter formatter(String pattern) {
+        return FORMATTERS.computeIfAbsent(pattern, DateTimeFormatter::ofPattern);
+    }
+
+    /**
+     * Format date value as text.
+     *
+     * @param value   the date value, see {@link #isDate(Object)}
+     * @param pattern the pattern
+     * @return the text
+     */
+    public static String format(Object value, String pattern) {
+        DateTimeFormatter formatter = formatter(pattern);
+        if (value instanceof Date) {
+            return formatter.format(LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()));
+        } else if (value instanceof Instant) {
+            return formatter.format(LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault()));
+        } else if (value instanceof LocalDate) {
+            return formatter.format(((LocalDate) value).atStartOfDay());
+        }
+        return formatter.format((TemporalAccessor) value);
+    }
+
+    /**
+     * Convert java date pattern like "yyyy-MM-dd HH:mm:ss" to excel number
+     * format like "yyyy-mm-dd hh:mm:ss". Text other than pattern letters is
+     * quoted.
+     *
+     * @param pattern the java pattern
+     * @return the excel format
+     */
+    public static String toExcelFormat(String pattern) {
+        return EXCEL_FORMATS.computeIfAbsent(pattern, DateFormats::convert);
+    }
+
+    private static String convert(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 8);
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                int end = pattern.indexOf('\'', i + 1);
+                end = end < 0 ? pattern.length() : end;
+                if (end == i + 1) {
+                    sb.append("\"'\"");
+                } else {
+                    sb.append('"').append(pattern, i + 1, end).append('"');
+                }
+                i = end;
+                continue;
+            }
+            switch (c) {
+                case 'y':
+                case 'd':
+                case 's':
+                    sb.append(c);
+                    break;
+                case 'M':
+                case 'm':
+                    sb.append('m');
+                    break;
+                case 'H':
+                case 'k':
+                case 'h':
+                case 'K':
+                    sb.append('h');
+                    break;
+                case 'S':
+                    sb.append('0');
+                    break;
+                case 'E':
+                    sb.append('d');
+                    break;
+                case 'a':
+                    sb.append("AM/PM");
+                    break;
+                case '-':
+                case '/':
+                case ':':
+                case '.':
+                case ',':
+                case ' ':
+                    sb.append(c);
+                    break;
+                default:
+                    sb.append('"').append(c).append('"');
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double fromEpochMillis(long localMillis) {
+        return adjust(UNIX_EPOCH_SERIAL + (double) localMillis / MILLIS_PER_DAY);
+    }
+
+    /**
+     * Shift serial before 1900-03-01 for the fake 1900-02-29 of excel.
+     */
+    private static double adjust(double serial) {
+        if (serial >= FIRST_REAL_LEAP_SERIAL) {
+            return serial;
+        }
+        serial -= 1;
+        return serial < 1 ? -1 : serial;
+    }
+}
@@ -0,0 +1,313 @@
+package com.allinmoney.platform.excel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes rows of {@link ExcelType#CSV} and {@link ExcelType#TSV} as delimited
+ * text. Fields are appended to one reusable char buffer which is encoded to
+ * the output when it is full, fields containing delimiter, quote or line
+ * breaks are quoted as RFC 4180. There are no sheets, blocks of different
+ * sheets are separated by a blank line and summary rows are not written.
+ *
+ * @author Chris
+ */
+final class DelimitedTextWriter extends SheetWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char QUOTE = '"';
+    private static final char[] LINE_SEPARATOR = {'\r', '\n'};
+    private static final char BOM = '\uFEFF';
+
+    private final Writer writer;
+    private final char delimiter;
+    private final CellCodecs codecs;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int size;
+    private boolean firstSheet = true;
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param os        the output stream
+     * @param delimiter the field delimiter
+     * @param charset   the charset of text
+     * @param bom       identifies if byte order mark is written first, it is
+     *                  ignored if charset is not unicode
+     * @param gzip      identifies if text is compressed with gzip
+     * @param codecs    the codecs of cell values
+     */
+    DelimitedTextWriter(OutputStream os, char delimiter, Charset charset, boolean bom, boolean gzip, CellCodecs codecs) {
+        try {
+            this.writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(os, BUFFER_SIZE) : os, charset);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+        this.delimiter = delimiter;
+        this.codecs = codecs;
+        if (bom && hasByteOrderMark(charset)) {
+            buf[size++] = BOM;
+        }
+    }
+
+    /**
+     * Only unicode charsets have byte order mark, the encoder of UTF-16 writes
+     * it by itself.
+     */
+    private static boolean hasByteOrderMark(Charset charset) {
+        String name = charset.name();
+        return name.startsWith("UTF-") && !name.equals("UTF-16");
+    }
+
+    @Override
+    void newSheet(String name) {
+        if (!firstSheet) {
+            newLine();
+        }
+        firstSheet = false;
+        metrics.sheetCreated();
+    }
+
+    @Override
+    void addHeaders(ColumnSchema schema, String dateFmt) {
+        long start = System.nanoTime();
+        boolean first = true;
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.isExport())
+                continue;
+
+            if (!first) {
+                append(delimiter);
+            }
+            appendField(column.getTitle());
+            first = false;
+        }
+        newLine();
+        metrics.phase(ExcelMetrics.Phase.HEADER, System.nanoTime() - start);
+    }
+
+    @Override
+    int addContent(ColumnSchema schema, Iterator<?> iterator, int maxRows, String dateFmt) {
+        long start = System.nanoTime();
+        List<ColumnSchema.Column> columns = schema.getColumns();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns.size()];
+        for (int j = 0; j < encoders.length; j++) {
+            if (columns.get(j).isExport()) {
+                encoders[j] = new ColumnEncoder(columns.get(j), codecs);
+            }
+        }
+
+        TextCellSink sink = new TextCellSink(columns, dateFmt);
+        int rows = 0;
+        for (; rows < maxRows && iterator.hasNext(); rows++) {
+            Object data = iterator.next();
+            boolean first = true;
+            for (int j = 0; j < encoders.length; j++) {
+                if (encoders[j] == null)
+                    continue;
+
+                if (!first) {
+                    append(delimiter);
+                }
+                sink.moveTo(j);
+                encoders[j].encode(data, sink);
+                first = false;
+            }
+            newLine();
+        }
+        metrics.phase(ExcelMetrics.Phase.CONTENT, System.nanoTime() - start);
+        metrics.rowsWritten(rows);
+        return rows;
+    }
+
+    @Override
+    void addSummary(ColumnSchema schema) {
+        // summary row would be taken as data by consumers of delimited text
+    }
+
+    @Override
+    void skipRows(int rows) {
+        for (int i = 0; i < rows; i++) {
+            newLine();
+        }
+    }
+
+    @Override
+    int getRemainingRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    int getMaxDataRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    void finish() {
+        long start = System.nanoTime();
+        try {
+            flush();
+            writer.close();
+            metrics.phase(ExcelMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    private void newLine() {
+        append(LINE_SEPARATOR[0]);
+        append(LINE_SEPARATOR[1]);
+    }
+
+    private void append(char c) {
+        if (size == buf.length) {
+            flush();
+        }
+        buf[size++] = c;
+    }
+
+    private void append(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Append text field, it is quoted if it contains delimiter, quote or line
+     * breaks, the quotes inside are doubled.
+     */
+    private void appendField(String text) {
+        if (!needsQuote(text)) {
+            append(text);
+            return;
+        }
+        append(QUOTE);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == QUOTE) {
+                append(QUOTE);
+            }
+            append(c);
+        }
+        append(QUOTE);
+    }
+
+    private boolean needsQuote(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == delimiter || c == QUOTE || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush() {
+        if (size == 0) {
+            return;
+        }
+        try {
+            writer.write(buf, 0, size);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+        size = 0;
+    }
+
+    /**
+     * Writes typed values as text fields of current row. Numbers are written
+     * in plain notation, dates with the date pattern of column.
+     */
+    private final class TextCellSink implements CellSink {
+        private final List<ColumnSchema.Column> columns;
+        private final String dateFmt;
+        private final DateTimeFormatter[] formatters;
+        private int col;
+
+        private TextCellSink(List<ColumnSchema.Column> columns, String dateFmt) {
+            this.columns = columns;
+            this.dateFmt = dateFmt;
+            this.formatters = new DateTimeFormatter[columns.size()];
+        }
+
+        private void moveTo(int col) {
+            this.col = col;
+        }
+
+        @Override
+        public void writeBlank() {
+        }
+
+        @Override
+        public void writeText(String value) {
+            appendField(value);
+        }
+
+        @Override
+        public void writeNumber(double value) {
+            if (value == (long) value && Math.abs(value) < 1e15) {
+                appendLong((long) value);
+                return;
+            }
+            String text = Double.toString(value);
+            if (text.indexOf('E') >= 0 && !Double.isInfinite(value)) {
+                text = BigDecimal.valueOf(value).toPlainString();
+            }
+            append(text);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            appendLong(value);
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            append(value.toPlainString());
+        }
+
+        @Override
+        public void writeBoolean(boolean value) {
+            append(value ? "true" : "false");
+        }
+
+        @Override
+        public void writeDate(double serial) {
+            if (formatters[col] == null) {
+                formatters[col] = DateFormats.formatter(getDatePattern());
+            }
+            appendField(formatters[col].format(DateFormats.toLocalDateTime(serial)));
+        }
+
+        @Override
+        public String getDatePattern() {
+            return dateFmt != null ? dateFmt : columns.get(col).getFormat();
+        }
+    }
+}
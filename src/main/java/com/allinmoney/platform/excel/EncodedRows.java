@@ -0,0 +1,166 @@
+package com.allinmoney.platform.excel;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * A chunk of rows converted into typed cells by {@link RowPipeline}. Cells
+ * are recorded from a {@link ColumnEncoder} as a kind, primitive bits and a
+ * reference, and replayed into the cell sink of writer. The chunk is also the
+ * cursor of its rows, {@link ColumnEncoder} replays the cells of current row
+ * instead of reading fields when it is given one.
+ *
+ * @author Chris
+ */
+final class EncodedRows implements CellSink {
+
+    private static final byte BLANK = 0;
+    private static final byte TEXT = 1;
+    private static final byte NUMBER = 2;
+    private static final byte LONG = 3;
+    private static final byte DECIMAL = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE = 6;
+
+    private final List<ColumnSchema.Column> columns;
+    private final String dateFmt;
+    private final int width;
+    private final byte[] kinds;
+    private final long[] bits;
+    private final Object[] refs;
+    private int size;
+
+    /**
+     * The cell of recording, or the row of replaying.
+     */
+    private int cell;
+    private int row;
+
+    /**
+     * Instantiates a new chunk.
+     *
+     * @param columns  the columns of schema
+     * @param dateFmt  the date fmt, null to use the format of annotation
+     * @param capacity the max rows
+     */
+    EncodedRows(List<ColumnSchema.Column> columns, String dateFmt, int capacity) {
+        this.columns = columns;
+        this.dateFmt = dateFmt;
+        this.width = columns.size();
+        this.kinds = new byte[capacity * width];
+        this.bits = new long[capacity * width];
+        this.refs = new Object[capacity * width];
+        this.row = -1;
+    }
+
+    /**
+     * Record the cells of next row.
+     *
+     * @param data     the data object
+     * @param encoders the encoders, null for columns not exported
+     */
+    void add(Object data, ColumnEncoder[] encoders) {
+        int offset = size * width;
+        for (int j = 0; j < encoders.length; j++) {
+            if (encoders[j] != null) {
+                cell = offset + j;
+                encoders[j].encode(data, this);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Identifies if there is a next row to replay.
+     *
+     * @return the boolean
+     */
+    boolean hasNext() {
+        return row + 1 < size;
+    }
+
+    /**
+     * Move to next row for replaying.
+     */
+    void next() {
+        row++;
+    }
+
+    /**
+     * Replay the cell of current row.
+     *
+     * @param col  the column
+     * @param sink the cell sink of writer
+     */
+    void replay(int col, CellSink sink) {
+        int i = row * width + col;
+        switch (kinds[i]) {
+            case TEXT:
+                sink.writeText((String) refs[i]);
+                break;
+            case NUMBER:
+                sink.writeNumber(Double.longBitsToDouble(bits[i]));
+                break;
+            case LONG:
+                sink.writeLong(bits[i]);
+                break;
+            case DECIMAL:
+                sink.writeDecimal((BigDecimal) refs[i]);
+                break;
+            case BOOLEAN:
+                sink.writeBoolean(bits[i] != 0);
+                break;
+            case DATE:
+                sink.writeDate(Double.longBitsToDouble(bits[i]));
+                break;
+            default:
+                sink.writeBlank();
+        }
+    }
+
+    @Override
+    public void writeBlank() {
+        kinds[cell] = BLANK;
+    }
+
+    @Override
+    public void writeText(String value) {
+        kinds[cell] = TEXT;
+        refs[cell] = value;
+    }
+
+    @Override
+    public void writeNumber(double value) {
+        kinds[cell] = NUMBER;
+        bits[cell] = Double.doubleToRawLongBits(value);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        kinds[cell] = LONG;
+        bits[cell] = value;
+    }
+
+    @Override
+    public void writeDecimal(BigDecimal value) {
+        kinds[cell] = DECIMAL;
+        refs[cell] = value;
+    }
+
+    @Override
+    public void writeBoolean(boolean value) {
+        kinds[cell] = BOOLEAN;
+        bits[cell] = value ? 1 : 0;
+    }
+
+    @Override
+    public void writeDate(double serial) {
+        kinds[cell] = DATE;
+        bits[cell] = Double.doubleToRawLongBits(serial);
+    }
+
+    @Override
+    public String getDatePattern() {
+        return dateFmt != null ? dateFmt : columns.get(cell % width).getFormat();
+    }
+}
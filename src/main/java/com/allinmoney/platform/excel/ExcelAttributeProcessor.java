@@ -0,0 +1,430 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.ExcelStyle;
+import com.allinmoney.platform.annotation.Summary;
+import com.allinmoney.platform.annotation.Translate;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the columns of classes with {@link ExcelAttribute} fields at
+ * compile time. For each class a {@code <Class>_ExcelRow} is generated in
+ * its package, it is the {@link RowWriter} and {@link RowReader} of the class
+ * with the column order, titles, formats and translate tables written out and
+ * accessors calling the getters and setters, or the fields if they are not
+ * private. {@link ColumnSchema} uses it when it is present, so exportations
+ * and importations of the class do not scan fields by reflection.
+ * <p>
+ * The processor is optional and not registered by the jar, pass it to javac
+ * with {@code -processor com.allinmoney.platform.excel.ExcelAttributeProcessor}
+ * or the annotation processors of build tool. A class whose annotated fields
+ * can not be read without reflection, like private fields without getters, is
+ * skipped with a note and keeps using reflection.
+ *
+ * @author Chris
+ */
+@SupportedAnnotationTypes("com.allinmoney.platform.annotation.ExcelAttribute")
+public final class ExcelAttributeProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE = "com.allinmoney.platform.excel.";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(ExcelAttribute.class)) {
+            if (element.getKind() == ElementKind.FIELD) {
+                types.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement type : types) {
+            try {
+                generate(type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Can not generate columns: " + e.getMessage(), type);
+            }
+        }
+        // other processors may handle the annotation too
+        return false;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String skipped = checkType(type);
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        List<Property> properties = new ArrayList<>();
+        if (skipped == null) {
+            TypeMirror superclass = type.getSuperclass();
+            if (superclass.getKind() == TypeKind.DECLARED) {
+                addProperties(type, (TypeElement) ((DeclaredType) superclass).asElement(), packageName, properties, true);
+            }
+            addProperties(type, type, packageName, properties, false);
+            skipped = properties.stream().map(p -> p.skipped).filter(s -> s != null).findFirst().orElse(null);
+        }
+        if (skipped != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "Columns of " + type.getQualifiedName() + " are not generated, " + skipped, type);
+            return;
+        }
+
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + ColumnSchema.GENERATED_SUFFIX;
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n * Columns of {@link ").append(typeName).append("} generated by ")
+                .append(ExcelAttributeProcessor.class.getSimpleName()).append(", do not edit.\n */\n")
+                .append("public final class ").append(simpleName).append(" implements ")
+                .append(PACKAGE).append("RowWriter<").append(typeName).append(">, ")
+                .append(PACKAGE).append("RowReader<").append(typeName).append("> {\n\n")
+                .append("    private static final java.util.List<").append(PACKAGE).append("ColumnDefinition> COLUMNS =")
+                .append(" java.util.Collections.unmodifiableList(java.util.Arrays.asList(");
+        for (int i = 0; i < properties.size(); i++) {
+            out.append(i == 0 ? "\n" : ",\n");
+            properties.get(i).define(out, typeName);
+        }
+        out.append("));\n\n");
+
+        out.append("    private static final int[] ORDER = ").append(order(properties, false)).append(";\n")
+                .append("    private static final int[] SUPER_ORDER = ").append(order(properties, true)).append(";\n\n")
+                .append("    @Override\n    public Class<").append(typeName).append("> getType() {\n")
+                .append("        return ").append(typeName).append(".class;\n    }\n\n")
+                .append("    @Override\n    public java.util.List<").append(PACKAGE).append("ColumnDefinition> getColumns() {\n")
+                .append("        return COLUMNS;\n    }\n\n")
+                .append("    @Override\n    public int[] getColumnOrder(boolean withSuperFields) {\n")
+                .append("        return (withSuperFields ? SUPER_ORDER : ORDER).clone();\n    }\n\n")
+                .append("    @Override\n    public ").append(typeName).append(" newInstance() {\n");
+        if (hasConstructor(type, packageName)) {
+            out.append("        return new ").append(typeName).append("();\n");
+        } else {
+            out.append("        throw new ").append(PACKAGE).append("ExcelException(").append(literal(typeName))
+                    .append(" + \" has no constructor without arguments\");\n");
+        }
+        out.append("    }\n}\n");
+
+        String sourceName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(sourceName, type).openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    /**
+     * Gets the reason why the type is skipped, null if columns can be generated.
+     */
+    private static String checkType(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS) {
+            return "it is not a class";
+        }
+        for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                return "it is private";
+            }
+            Element enclosing = e.getEnclosingElement();
+            boolean nested = enclosing.getKind().isClass() || enclosing.getKind().isInterface();
+            if (nested && !e.getModifiers().contains(Modifier.STATIC)) {
+                return "it is an inner class";
+            }
+        }
+        return null;
+    }
+
+    private void addProperties(TypeElement type, TypeElement owner, String packageName, List<Property> properties,
+                               boolean inherited) {
+        for (VariableElement field : ElementFilter.fieldsIn(owner.getEnclosedElements())) {
+            if (field.getAnnotation(ExcelAttribute.class) != null) {
+                properties.add(new Property(type, field, packageName, inherited));
+            }
+        }
+    }
+
+    private boolean hasConstructor(TypeElement type, String packageName) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && isAccessible(constructor, packageName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAccessible(Element element, String packageName) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(element);
+        return !modifiers.contains(Modifier.PRIVATE) && pkg.getQualifiedName().contentEquals(packageName);
+    }
+
+    /**
+     * Sort columns the same way as scanned fields, see {@link ColumnSchema#sortColumns}.
+     */
+    private static String order(List<Property> properties, boolean withSuperFields) {
+        List<Integer> indexes = IntStream.range(0, properties.size())
+                .filter(i -> withSuperFields || !properties.get(i).inherited)
+                .boxed()
+                .collect(Collectors.toList());
+        ColumnSchema.sortColumns(indexes, i -> properties.get(i).attribute.column());
+        return indexes.stream().map(String::valueOf).collect(Collectors.joining(", ", "{", "}"));
+    }
+
+    private static String literal(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * One annotated field and the expressions which read and write it.
+     */
+    private final class Property {
+        private final VariableElement field;
+        private final ExcelAttribute attribute;
+        private final boolean inherited;
+        private final String valueType;
+        private final String ownerType;
+        private String getter;
+        private String setter;
+        private String skipped;
+
+        private Property(TypeElement type, VariableElement field, String packageName, boolean inherited) {
+            this.field = field;
+            this.attribute = field.getAnnotation(ExcelAttribute.class);
+            this.inherited = inherited;
+            TypeMirror fieldType = field.asType();
+            this.valueType = processingEnv.getTypeUtils().erasure(fieldType).toString();
+            this.ownerType = ((TypeElement) field.getEnclosingElement()).getQualifiedName().toString();
+
+            String name = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            boolean accessible = !field.getModifiers().contains(Modifier.STATIC) && isAccessible(field, packageName);
+            for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+                if (method.getModifiers().contains(Modifier.STATIC) || !isAccessible(method, packageName)) {
+                    continue;
+                }
+                String methodName = method.getSimpleName().toString();
+                if (getter == null && method.getParameters().isEmpty()
+                        && processingEnv.getTypeUtils().isSameType(method.getReturnType(), fieldType)
+                        && (methodName.equals("get" + capitalized)
+                        || fieldType.getKind() == TypeKind.BOOLEAN && methodName.equals("is" + capitalized))) {
+                    getter = methodName + "()";
+                } else if (setter == null && methodName.equals("set" + capitalized)
+                        && method.getParameters().size() == 1
+                        && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), fieldType)) {
+                    setter = methodName + "(%s)";
+                }
+            }
+            if (getter == null && accessible) {
+                getter = name;
+            }
+            if (setter == null && accessible && !field.getModifiers().contains(Modifier.FINAL)) {
+                setter = name + " = %s";
+            }
+            if (getter == null) {
+                skipped = "field " + name + " has neither getter nor accessible field";
+            }
+        }
+
+        private void define(StringBuilder out, String typeName) {
+            String name = field.getSimpleName().toString();
+            out.append("            ").append(PACKAGE).append("ColumnDefinition.builder(").append(ownerType)
+                    .append(".class, ").append(literal(name)).append(", ");
+            accessor(out, typeName);
+            out.append(")\n                    .title(").append(literal(attribute.title())).append(")");
+
+            List<String> groups = groups();
+            if (!groups.isEmpty()) {
+                out.append("\n                    .groups(").append(String.join(", ", groups)).append(")");
+            }
+            for (Translate translate : attribute.translate()) {
+                out.append("\n                    .translate(").append(literal(translate.key())).append(", ")
+                        .append(literal(translate.value())).append(")");
+            }
+            if (!attribute.column().isEmpty()) {
+                out.append("\n                    .column(").append(literal(attribute.column())).append(")");
+            }
+            if (!attribute.prompt().isEmpty()) {
+                out.append("\n                    .prompt(").append(literal(attribute.prompt())).append(")");
+            }
+            out.append("\n                    .format(").append(literal(attribute.format())).append(")");
+            if (attribute.combo().length > 0) {
+                out.append("\n                    .combo(").append(
+                        Arrays.stream(attribute.combo()).map(ExcelAttributeProcessor::literal)
+                                .collect(Collectors.joining(", "))).append(")");
+            }
+            if (!attribute.isExport()) {
+                out.append("\n                    .export(false)");
+            }
+            if (attribute.isMark()) {
+                out.append("\n                    .mark(true)");
+            }
+            Summary summary = attribute.summary() == Summary.NONE && attribute.isSum() ? Summary.SUM : attribute.summary();
+            if (summary != Summary.NONE) {
+                out.append("\n                    .summary(com.allinmoney.platform.annotation.Summary.")
+                        .append(summary.name()).append(")");
+            }
+            if (attribute.width() != -1) {
+                out.append("\n                    .width(").append(attribute.width()).append(")");
+            }
+            ExcelStyle style = field.getAnnotation(ExcelStyle.class);
+            if (style != null) {
+                out.append("\n                    .style(").append(literal(style.fontName())).append(", (short) ")
+                        .append(style.fontHeight()).append(", org.apache.poi.ss.usermodel.IndexedColors.")
+                        .append(style.fontColor().name()).append(", ").append(style.bold()).append(", ")
+                        .append(style.italic()).append(", org.apache.poi.ss.usermodel.IndexedColors.")
+                        .append(style.fillColor().name()).append(", org.apache.poi.ss.usermodel.HorizontalAlignment.")
+                        .append(style.align().name()).append(", ").append(style.wrapText()).append(", ")
+                        .append(literal(style.dataFormat())).append(")");
+            }
+            out.append("\n                    .build()");
+        }
+
+        /**
+         * Class literals of groups, they are read from the mirror because the
+         * classes may not be compiled yet.
+         */
+        private List<String> groups() {
+            List<String> groups = new ArrayList<>();
+            for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+                if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                        .contentEquals(ExcelAttribute.class.getName())) {
+                    continue;
+                }
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("groups")) {
+                        for (Object value : (List<?>) entry.getValue().getValue()) {
+                            TypeMirror group = (TypeMirror) ((AnnotationValue) value).getValue();
+                            groups.add(processingEnv.getTypeUtils().erasure(group) + ".class");
+                        }
+                    }
+                }
+            }
+            return groups;
+        }
+
+        private void accessor(StringBuilder out, String typeName) {
+            String target = "((" + typeName + ") target).";
+            String read = target + getter;
+            String primitive;
+            switch (field.asType().getKind()) {
+                case INT:
+                    primitive = "Int";
+                    break;
+                case LONG:
+                    primitive = "Long";
+                    break;
+                case DOUBLE:
+                    primitive = "Double";
+                    break;
+                case BOOLEAN:
+                    primitive = "Boolean";
+                    break;
+                default:
+                    primitive = null;
+            }
+
+            String indent = "                    ";
+            if (primitive != null) {
+                out.append("new ").append(PACKAGE).append("FieldAccessor.Of").append(primitive).append("() {\n")
+                        .append(indent).append("@Override\n")
+                        .append(indent).append("public ").append(valueType).append(" get").append(primitive)
+                        .append("(Object target) {\n")
+                        .append(indent).append("    return ").append(read).append(";\n")
+                        .append(indent).append("}\n\n")
+                        .append(indent).append("@Override\n")
+                        .append(indent).append("public void set").append(primitive).append("(Object target, ")
+                        .append(valueType).append(" value) {\n");
+                write(out, indent, target, "value");
+            } else {
+                String boxed = field.asType().getKind().isPrimitive()
+                        ? processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils()
+                        .getPrimitiveType(field.asType().getKind())).getQualifiedName().toString()
+                        : valueType;
+                out.append("new ").append(PACKAGE).append("FieldAccessor(").append(valueType).append(".class) {\n")
+                        .append(indent).append("@Override\n")
+                        .append(indent).append("public Object get(Object target) {\n")
+                        .append(indent).append("    return ").append(read).append(";\n")
+                        .append(indent).append("}\n\n")
+                        .append(indent).append("@Override\n")
+                        .append(indent).append("public void set(Object target, Object value) {\n");
+                write(out, indent, target, "(" + boxed + ") value");
+            }
+            out.append(indent).append("}\n")
+                    .append("                }");
+        }
+
+        private void write(StringBuilder out, String indent, String target, String value) {
+            if (setter == null) {
+                out.append(indent).append("    throw new ").append(PACKAGE).append("ExcelException(")
+                        .append(literal("Field " + field.getSimpleName() + " of " + ownerType + " is read only"))
+                        .append(");\n");
+            } else {
+                out.append(indent).append("    ").append(target).append(String.format(setter, value)).append(";\n");
+            }
+        }
+    }
+}
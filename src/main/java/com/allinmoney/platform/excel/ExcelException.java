@@ -18,6 +18,11 @@ public class ExcelException extends RuntimeException{
         this.message = message;
     }
 
+    public ExcelException(String message, Throwable cause) {
+        super(message, cause);
+        this.message = message;
+    }
+
     public ExcelException(Integer code, String message) {
         super(message);
         this.code = code;
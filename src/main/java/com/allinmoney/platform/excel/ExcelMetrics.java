@@ -0,0 +1,109 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * Receives timings and counters of exportations and importations, see
+ * {@link ExcelUtil#setMetrics(ExcelMetrics)} and {@link ExcelSheet#setMetrics(ExcelMetrics)}.
+ * Methods are called once per phase of a sheet or block, not per cell, the
+ * import phases are summed per file or per batch. Sheets filled in parallel
+ * and batches bound by the executor report concurrently, so implementations
+ * should be thread safe. All methods do nothing by default, {@link #NOOP}
+ * is the default metrics, {@link HistogramMetrics} keeps them in memory.
+ *
+ * @author Chris
+ */
+public interface ExcelMetrics {
+
+    /**
+     * The metrics which ignore everything.
+     */
+    ExcelMetrics NOOP = new ExcelMetrics() {
+    };
+
+    /**
+     * The timed phases.
+     */
+    enum Phase {
+        /**
+         * Resolving column schema of data class.
+         */
+        SCHEMA,
+        /**
+         * Writing header row with its validations.
+         */
+        HEADER,
+        /**
+         * Converting data to cell values and writing the cells, they are done
+         * in one pass per cell so they are timed together.
+         */
+        CONTENT,
+        /**
+         * Applying column widths to sheet.
+         */
+        SIZING,
+        /**
+         * Writing summary row.
+         */
+        SUMMARY,
+        /**
+         * Writing workbook or the rest of it to output stream.
+         */
+        SERIALIZE,
+        /**
+         * Reading rows of file, the time of reading thread outside of row handling.
+         */
+        PARSE,
+        /**
+         * Binding rows to data objects, summed over threads.
+         */
+        BIND
+    }
+
+    /**
+     * Time of one phase.
+     *
+     * @param phase the phase
+     * @param nanos the nanoseconds
+     */
+    default void phase(Phase phase, long nanos) {
+    }
+
+    /**
+     * Content rows written of one block.
+     *
+     * @param rows the rows
+     */
+    default void rowsWritten(int rows) {
+    }
+
+    /**
+     * A sheet is created.
+     */
+    default void sheetCreated() {
+    }
+
+    /**
+     * Rows held in memory by a sheet being written or by batches being bound.
+     *
+     * @param rows the rows
+     */
+    default void rowsInMemory(int rows) {
+    }
+
+    /**
+     * An exportation is completed.
+     *
+     * @param bytes the bytes written to output stream
+     * @param nanos the nanoseconds of exportation
+     */
+    default void exportCompleted(long bytes, long nanos) {
+    }
+
+    /**
+     * An importation is completed.
+     *
+     * @param rows  the bound rows
+     * @param nanos the nanoseconds of importation
+     */
+    default void importCompleted(long rows, long nanos) {
+    }
+}
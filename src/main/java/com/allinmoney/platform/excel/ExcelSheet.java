@@ -1,45 +1,71 @@
 package com.allinmoney.platform.excel;
 
 import com.allinmoney.platform.annotation.ExcelAttribute;
-import com.allinmoney.platform.annotation.Translate;
+import com.allinmoney.platform.annotation.Summary;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.apache.poi.hssf.usermodel.*;
-import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
 
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by chris on 2017/1/17.
  */
 public class ExcelSheet {
-    private HSSFSheet sheet;
-    private HSSFFont headerFont;
-    private HSSFFont contentFont;
-    private HSSFFont markHeaderFont;
-    private HSSFFont markContentFont;
-    private HSSFCellStyle headerCellStyle;
-    private HSSFCellStyle markHeaderCellStyle;
-    private HSSFCellStyle cellStyle;
-    private HSSFCellStyle markCellStyle;
-    private HSSFWorkbook workbook;
+    private Sheet sheet;
+    private Font headerFont;
+    private Font contentFont;
+    private Font markHeaderFont;
+    private Font markContentFont;
+    private CellStyle headerCellStyle;
+    private CellStyle markHeaderCellStyle;
+    private CellStyle cellStyle;
+    private CellStyle markCellStyle;
+    private Workbook workbook;
 
     /**
-     * The constant MAX_ROW.
+     * The next row to write.
+     */
+    private int rowNum;
+
+    /**
+     * Accumulators of the summarized columns of current block, rows flushed
+     * by a streaming sheet can not be read back for summary.
+     */
+    private SummaryAccumulator[] summaries;
+
+    /**
+     * The first content row of current block.
+     */
+    private int firstContentRow;
+
+    private boolean summaryFormula;
+
+    /**
+     * Styles shared by sheets of the workbook.
+     */
+    private StylePool styles;
+
+    private CellCodecs codecs = new CellCodecs();
+
+    private ColumnWidthEstimator widths = new ColumnWidthEstimator(0);
+
+    private ExcelMetrics metrics = ExcelMetrics.NOOP;
+
+    /**
+     * The constant MAX_ROW. It is the row limit of xlsx format, the limit of
+     * current sheet is given by {@link #getMaxRows()}.
      */
     public static final int MAX_ROW = 1_048_576;
-    private static final short HEADER_FONT_HEIGHT = 14;
-    private static final short CONTENT_FONT_HEIGHT = 12;
-    private static final String FONT_NAME = "Arail narrow";
+    private static final String DECIMAL_FORMAT = "0.00";
     private static final Logger logger = Logger.getLogger(ExcelSheet.class);
 
     /**
@@ -47,8 +73,8 @@ public class ExcelSheet {
      *
      * @param sheet the sheet
      */
-    public ExcelSheet(HSSFSheet sheet) {
-        this.sheet = sheet;
+    public ExcelSheet(Sheet sheet) {
+        setSheet(sheet);
     }
 
     /**
@@ -56,17 +82,64 @@ public class ExcelSheet {
      *
      * @param sheet the sheet
      */
-    public void setSheet(HSSFSheet sheet) {
+    public void setSheet(Sheet sheet) {
         this.sheet = sheet;
+        this.rowNum = sheet.getPhysicalNumberOfRows() == 0 ? 0 : sheet.getLastRowNum() + 1;
+    }
+
+    /**
+     * Sets the rows measured to estimate column widths, 0 to measure all rows.
+     *
+     * @param sampleRows the sample rows
+     * @return the excel sheet
+     */
+    public ExcelSheet setWidthSampleRows(int sampleRows) {
+        this.widths = new ColumnWidthEstimator(sampleRows);
+        return this;
     }
 
 
+    /**
+     * Sets if summary row is written as excel formulas like SUM(C2:C101)
+     * instead of the values computed while rows are written.
+     *
+     * @param summaryFormula the summary formula
+     * @return the excel sheet
+     */
+    public ExcelSheet setSummaryFormula(boolean summaryFormula) {
+        this.summaryFormula = summaryFormula;
+        return this;
+    }
+
+    /**
+     * Sets the codecs which write values of fields into cells.
+     *
+     * @param codecs the codecs
+     * @return the excel sheet
+     */
+    public ExcelSheet setCodecs(CellCodecs codecs) {
+        this.codecs = codecs;
+        return this;
+    }
+
+    /**
+     * Sets the metrics which time headers, contents, summaries and sizing of
+     * the sheet.
+     *
+     * @param metrics the metrics, null for {@link ExcelMetrics#NOOP}
+     * @return the excel sheet
+     */
+    public ExcelSheet setMetrics(ExcelMetrics metrics) {
+        this.metrics = metrics == null ? ExcelMetrics.NOOP : metrics;
+        return this;
+    }
+
     /**
      * Gets sheet.
      *
      * @return the sheet
      */
-    public HSSFSheet getSheet() {
+    public Sheet getSheet() {
         return sheet;
     }
 
@@ -75,7 +148,7 @@ public class ExcelSheet {
      *
      * @return the workbook
      */
-    public HSSFWorkbook getWorkbook() {
+    public Workbook getWorkbook() {
         return workbook;
     }
 
@@ -85,39 +158,84 @@ public class ExcelSheet {
      * @param workbook the workbook
      * @return the workbook
      */
-    public ExcelSheet setWorkbook(HSSFWorkbook workbook) {
+    public ExcelSheet setWorkbook(Workbook workbook) {
         if (this.workbook == null)
             this.workbook = workbook;
         return this;
     }
 
+    /**
+     * Sets the style pool of workbook, sheets of one pool share their fonts
+     * and styles. A pool of its own is created if it is not set.
+     *
+     * @param styles the style pool
+     * @return the excel sheet
+     */
+    ExcelSheet setStylePool(StylePool styles) {
+        if (this.styles == null)
+            this.styles = styles;
+        return this;
+    }
+
+    /**
+     * Gets max rows of one sheet of the workbook format, 65,536 for xls and
+     * 1,048,576 for xlsx.
+     *
+     * @return the max rows
+     */
+    public int getMaxRows() {
+        return sheet.getWorkbook().getSpreadsheetVersion().getMaxRows();
+    }
+
+    /**
+     * Gets the max data rows that one sheet can hold besides header row and
+     * summary row.
+     *
+     * @param workbook the workbook
+     * @return the max data rows
+     */
+    public static int getMaxDataRows(Workbook workbook) {
+        return workbook.getSpreadsheetVersion().getMaxRows() - 2;
+    }
+
+    /**
+     * Gets the rows that are still available in current sheet.
+     *
+     * @return the remaining rows
+     */
+    public int getRemainingRows() {
+        return getMaxRows() - rowNum;
+    }
+
+    /**
+     * Skip rows to leave blank lines between data blocks.
+     *
+     * @param rows the rows to skip
+     * @return the excel sheet
+     */
+    public ExcelSheet skipRows(int rows) {
+        rowNum += rows;
+        return this;
+    }
+
     /**
      * Init styles and fonts excel sheet.
      *
      * @return the excel sheet
      */
     public ExcelSheet initStylesAndFonts() {
-        headerFont = workbook.createFont();
-        contentFont = workbook.createFont();
-        markHeaderFont = workbook.createFont();
-        markContentFont = workbook.createFont();
+        if (styles == null) {
+            styles = new StylePool(workbook);
+        }
         setHeaderFont();
         setContentFont();
         setMarkHeaderFont();
         setMarkContentFont();
 
-        cellStyle = workbook.createCellStyle();
-        markCellStyle = workbook.createCellStyle();
-        headerCellStyle = workbook.createCellStyle();
-        markHeaderCellStyle = workbook.createCellStyle();
-        cellStyle.setFont(contentFont);
-        markCellStyle.setFont(markContentFont);
-        headerCellStyle.setFont(headerFont);
-        markHeaderCellStyle.setFont(markHeaderFont);
-
-        // header alignment
-        headerCellStyle.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        markHeaderCellStyle.setAlignment(HSSFCellStyle.ALIGN_CENTER);
+        cellStyle = styles.getStyle(StyleSpec.CONTENT);
+        markCellStyle = styles.getStyle(StyleSpec.MARK_CONTENT);
+        headerCellStyle = styles.getStyle(StyleSpec.HEADER);
+        markHeaderCellStyle = styles.getStyle(StyleSpec.MARK_HEADER);
         return this;
     }
 
@@ -126,7 +244,7 @@ public class ExcelSheet {
      *
      * @return the cell style
      */
-    public HSSFCellStyle getCellStyle() {
+    public CellStyle getCellStyle() {
         return cellStyle;
     }
 
@@ -135,7 +253,7 @@ public class ExcelSheet {
      *
      * @return the mark cell style
      */
-    public HSSFCellStyle getMarkCellStyle() {
+    public CellStyle getMarkCellStyle() {
         return markCellStyle;
     }
 
@@ -143,40 +261,28 @@ public class ExcelSheet {
      * Sets header font.
      */
     public void setHeaderFont() {
-        headerFont.setFontName(FONT_NAME);
-        headerFont.setColor(HSSFColor.BLACK.index);
-        headerFont.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        headerFont.setFontHeightInPoints(HEADER_FONT_HEIGHT);
+        headerFont = styles.getFont(StyleSpec.HEADER);
     }
 
     /**
      * Sets content font.
      */
     public void setContentFont() {
-        contentFont.setFontName(FONT_NAME);
-        contentFont.setColor(HSSFFont.COLOR_NORMAL);
-        contentFont.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        contentFont.setFontHeightInPoints(CONTENT_FONT_HEIGHT);
+        contentFont = styles.getFont(StyleSpec.CONTENT);
     }
 
     /**
      * Sets mark header font.
      */
     public void setMarkHeaderFont() {
-        markHeaderFont.setFontName(FONT_NAME);
-        markHeaderFont.setColor(HSSFColor.RED.index);
-        markHeaderFont.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        markHeaderFont.setFontHeightInPoints(HEADER_FONT_HEIGHT);
+        markHeaderFont = styles.getFont(StyleSpec.MARK_HEADER);
     }
 
     /**
      * Sets mark content font.
      */
     public void setMarkContentFont() {
-        markContentFont.setFontName(FONT_NAME);
-        markContentFont.setColor(HSSFFont.COLOR_RED);
-        markContentFont.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
-        markContentFont.setFontHeightInPoints(CONTENT_FONT_HEIGHT);
+        markContentFont = styles.getFont(StyleSpec.MARK_CONTENT);
     }
 
     /**
@@ -210,35 +316,56 @@ public class ExcelSheet {
      *
      * @param fields the fields
      * @return the excel sheet
+     * @deprecated use {@link #addHeaders(ColumnSchema)}
      */
+    @Deprecated
     public ExcelSheet addHeaders(List<Field> fields) {
-        HSSFRow row = sheet.createRow(0); // init row
-        for (int i = 0; i < fields.size(); i++) {
-            Field field = fields.get(i);
-            ExcelAttribute attribute = field.getAnnotation(ExcelAttribute.class);
-            if (!attribute.isExport())
+        return addHeaders(ColumnSchema.of(fields));
+    }
+
+    /**
+     * Create headers excel sheet.
+     *
+     * @param schema the column schema
+     * @return the excel sheet
+     */
+    public ExcelSheet addHeaders(ColumnSchema schema) {
+        long start = System.nanoTime();
+        int headerRow = rowNum++;
+        Row row = sheet.createRow(headerRow); // init row
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.isExport())
                 continue;
 
             // create columns
-            HSSFCell headerCell = row.createCell(i);
-            if (attribute.isMark()) {
+            int i = column.getIndex();
+            Cell headerCell = row.createCell(i);
+            if (column.isMark()) {
                 headerCell.setCellStyle(markHeaderCellStyle);
             } else {
                 headerCell.setCellStyle(headerCellStyle);
             }
 
-            headerCell.setCellType(HSSFCell.CELL_TYPE_STRING);
-            headerCell.setCellValue(attribute.title());
+            headerCell.setCellType(CellType.STRING);
+            headerCell.setCellValue(column.getTitle());
+
+            if (StringUtils.isNotBlank(column.getPrompt())) {
+                ExcelUtil.setPrompt(sheet, "提示", column.getPrompt(), headerRow + 1, headerRow + 100, i, i);
+            }
 
-            if (StringUtils.isNotBlank(attribute.prompt())) {
-                ExcelUtil.setHSSFPrompt(sheet, "提示", attribute.prompt(), 1, 100, i, i);
+            if (column.hasCombo()) {
+                ExcelUtil.setValidation(sheet, column.getCombo(), headerRow + 1, headerRow + 100, i, i);
             }
 
-            if (attribute.combo().length > 0) {
-                ExcelUtil.setHSSFValidation(sheet, attribute.combo(), 1, 100, i, i);
+            if (column.getWidth() >= 0) {
+                widths.fix(i, column.getWidth());
+            } else {
+                widths.measureHeader(i, column.getTitle());
             }
-            sheet.autoSizeColumn(i);
         }
+        firstContentRow = rowNum;
+        summaries = null;
+        metrics.phase(ExcelMetrics.Phase.HEADER, System.nanoTime() - start);
         return this;
     }
 
@@ -251,110 +378,339 @@ public class ExcelSheet {
      * @param sheetNo      the sheet no
      * @param dateFmt      the date fmt
      * @return the excel sheet
+     * @deprecated use {@link #addContent(ColumnSchema, List, int, int, String)}
      */
+    @Deprecated
     public ExcelSheet addContent(List<Field> fields, List<?> dataList, boolean multipleFlag, int sheetNo, String dateFmt) {
-        int startNo = multipleFlag?0:sheetNo * MAX_ROW;
-        int endNo = multipleFlag?dataList.size():Math.min(startNo + MAX_ROW, dataList.size());
+        int capacity = getMaxDataRows(sheet.getWorkbook());
+        int startNo = multipleFlag?0:sheetNo * capacity;
+        int endNo = multipleFlag?dataList.size():Math.min(startNo + capacity, dataList.size());
+        return addContent(ColumnSchema.of(fields), dataList, startNo, endNo, dateFmt);
+    }
+
+    /**
+     * Fill in content excel sheet with the elements of data list between
+     * startNo(inclusive) and endNo(exclusive). Rows are appended after the
+     * last written row of the sheet.
+     *
+     * @param schema   the column schema
+     * @param dataList the data list
+     * @param startNo  the start index of data list
+     * @param endNo    the end index of data list
+     * @param dateFmt  the date fmt, null to use the format of annotation
+     * @return the excel sheet
+     */
+    public ExcelSheet addContent(ColumnSchema schema, List<?> dataList, int startNo, int endNo, String dateFmt) {
         if (dataList.size() < startNo)
             return this;
 
-        HSSFCell contentCell;
-        for (int i = startNo; i < endNo; i++) {
-            HSSFRow row = sheet.createRow(i + 1 - startNo);
-            Object data = dataList.get(i);
+        return addContent(schema, dataList.subList(startNo, endNo).iterator(), endNo - startNo, dateFmt);
+    }
 
-            for (int j = 0; j < fields.size(); j++) {
-                Field field = fields.get(j);
-                field.setAccessible(true);
+    /**
+     * Fill in content excel sheet with the next elements of iterator, at most
+     * maxRows elements are consumed. Rows are appended after the last written
+     * row of the sheet. The iterator is consumed in a single forward pass, the
+     * caller can continue with a new sheet if iterator still has elements.
+     *
+     * @param schema   the column schema
+     * @param iterator the iterator of data
+     * @param maxRows  the max rows to write
+     * @param dateFmt  the date fmt, null to use the format of annotation
+     * @return the excel sheet
+     */
+    public ExcelSheet addContent(ColumnSchema schema, Iterator<?> iterator, int maxRows, String dateFmt) {
+        long start = System.nanoTime();
+        if (summaries == null) {
+            summaries = new SummaryAccumulator[schema.size()];
+            for (ColumnSchema.Column column : schema.getColumns()) {
+                if (column.hasSummary()) {
+                    summaries[column.getIndex()] = new SummaryAccumulator();
+                }
+            }
+        }
+
+        List<ColumnSchema.Column> columns = schema.getColumns();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns.size()];
+        for (int j = 0; j < encoders.length; j++) {
+            if (columns.get(j).isExport()) {
+                encoders[j] = new ColumnEncoder(columns.get(j), codecs);
+            }
+        }
 
-                ExcelAttribute attribute = field.getAnnotation(ExcelAttribute.class);
-                if (!attribute.isExport())
+        SheetCellSink sink = new SheetCellSink(columns, dateFmt);
+        int rows = 0;
+        for (; rows < maxRows && iterator.hasNext(); rows++) {
+            Row row = sheet.createRow(rowNum++);
+            Object data = iterator.next();
+
+            for (int j = 0; j < encoders.length; j++) {
+                if (encoders[j] == null)
                     continue;
 
-                contentCell = row.createCell(j);
-                if (attribute.isMark()) {
-                    contentCell.setCellStyle(getMarkCellStyle());
-                } else {
-                    contentCell.setCellStyle(getCellStyle());
-                }
+                sink.moveTo(row.createCell(j), j);
+                encoders[j].encode(data, sink);
+            }
+            widths.nextRow();
+        }
+        metrics.phase(ExcelMetrics.Phase.CONTENT, System.nanoTime() - start);
+        metrics.rowsWritten(rows);
+        metrics.rowsInMemory(getRowsInMemory());
+        return this;
+    }
 
-                try {
-                    String txtValue = "";
-                    if (field.get(data) instanceof Date) {
-                        Date date = (Date) field.get(data);
-                        SimpleDateFormat sdf = new SimpleDateFormat(dateFmt != null?dateFmt:attribute.format());
-                        txtValue = sdf.format(date);
-                    } else if (field.get(data) instanceof BigDecimal) {
-                        BigDecimal big = (BigDecimal) field.get(data);
-                        txtValue = big.setScale(2, BigDecimal.ROUND_HALF_EVEN).toString();
-                    } else {
-                        if (field.get(data) != null)
-                            txtValue = field.get(data).toString();
-                    }
-
-                    // translate
-                    Map<String, String> map = new HashMap<>();
-                    if (attribute.translate().length > 0) {
-                        Translate[] translates = attribute.translate();
-                        for (Translate translate : translates) {
-                            map.put(translate.key(), translate.value());
-                        }
-                    }
-
-                    // digit number
-                    Pattern p = Pattern.compile("^//d+(//.//d+)?$");
-                    Matcher matcher = p.matcher(txtValue);
-                    if (matcher.matches()) {
-                        if (map.containsKey(txtValue)) {
-                            contentCell.setCellValue(Double.parseDouble(map.get(txtValue)));
-                        } else {
-                            contentCell.setCellValue(Double.parseDouble(txtValue));
-                        }
-                    } else {
-                        contentCell.setCellValue(map.getOrDefault(txtValue, txtValue));
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                } finally {
-                    sheet.autoSizeColumn(j);
-                }
+    /**
+     * Create the content, date and decimal styles which contents of the columns
+     * may use, so styles are created in column order instead of the order values come.
+     * Columns which values may be written by a registered codec get both the date
+     * and decimal styles.
+     * It should be called on the thread owning the workbook before contents are
+     * added, the styles of workbook are not thread safe.
+     *
+     * @param schema  the column schema
+     * @param dateFmt the date fmt, null to use the format of annotation
+     * @return the excel sheet
+     */
+    public ExcelSheet prepareStyles(ColumnSchema schema, String dateFmt) {
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.isExport())
+                continue;
+
+            Class<?> type = column.getAccessor().getType();
+            // codecs registered by user may write any kind of cell
+            boolean custom = codecs.mayUseCustom(type);
+            styles.getStyle(column.getStyle());
+            if (custom || mayBe(type, Date.class) || mayBe(type, Temporal.class)) {
+                getColumnStyle(column, DateFormats.toExcelFormat(dateFmt != null ? dateFmt : column.getFormat()));
+            }
+            if (custom || mayBe(type, BigDecimal.class) || mayBe(type, BigInteger.class)) {
+                getColumnStyle(column, decimalFormat(column));
             }
         }
         return this;
     }
 
+    /**
+     * Identifies if values of declared type may be instances of given type.
+     */
+    private static boolean mayBe(Class<?> declared, Class<?> type) {
+        return declared.isAssignableFrom(type) || type.isAssignableFrom(declared);
+    }
+
+    /**
+     * Gets the date style of java date pattern, one style is created for each
+     * distinct pattern of the workbook.
+     *
+     * @param pattern the java date pattern like "yyyy-MM-dd"
+     * @param mark    identifies if it is for mark column
+     * @return the cell style
+     */
+    public CellStyle getDateStyle(String pattern, boolean mark) {
+        return getFormatStyle(DateFormats.toExcelFormat(pattern), mark);
+    }
+
+    /**
+     * Gets the style of excel number format, one style is created for each
+     * distinct format of the workbook.
+     *
+     * @param format the excel number format like "0.00"
+     * @param mark   identifies if it is for mark column
+     * @return the cell style
+     */
+    public CellStyle getFormatStyle(String format, boolean mark) {
+        return styles.getStyle((mark ? StyleSpec.MARK_CONTENT : StyleSpec.CONTENT).withFormat(format));
+    }
+
+    /**
+     * Gets the content style of column with another number format.
+     */
+    private CellStyle getColumnStyle(ColumnSchema.Column column, String format) {
+        return styles.getStyle(column.getStyle().withFormat(format));
+    }
+
+    /**
+     * Gets number format of decimals of column, the format of column style
+     * takes precedence.
+     */
+    private static String decimalFormat(ColumnSchema.Column column) {
+        String format = column.getStyle().getFormat();
+        return format != null ? format : DECIMAL_FORMAT;
+    }
+
+    /**
+     * Writes typed values into cells of current row, it keeps the summaries
+     * and column widths.
+     */
+    private final class SheetCellSink implements CellSink {
+        private final List<ColumnSchema.Column> columns;
+        private final String dateFmt;
+
+        /**
+         * Content, date and decimal styles of each column, resolved on first value.
+         */
+        private final CellStyle[] contentStyles;
+        private final CellStyle[] columnDateStyles;
+        private final CellStyle[] decimalStyles;
+        private final int[] dateWidths;
+
+        private Cell cell;
+        private int col;
+        private ColumnSchema.Column column;
+
+        private SheetCellSink(List<ColumnSchema.Column> columns, String dateFmt) {
+            this.columns = columns;
+            this.dateFmt = dateFmt;
+            this.contentStyles = new CellStyle[columns.size()];
+            this.columnDateStyles = new CellStyle[columns.size()];
+            this.decimalStyles = new CellStyle[columns.size()];
+            this.dateWidths = new int[columns.size()];
+        }
+
+        private void moveTo(Cell cell, int col) {
+            this.cell = cell;
+            this.col = col;
+            this.column = columns.get(col);
+            if (contentStyles[col] == null) {
+                contentStyles[col] = styles.getStyle(column.getStyle());
+            }
+            cell.setCellStyle(contentStyles[col]);
+        }
+
+        @Override
+        public void writeBlank() {
+        }
+
+        @Override
+        public void writeText(String value) {
+            cell.setCellValue(value);
+            widths.measure(col, value);
+        }
+
+        @Override
+        public void writeNumber(double value) {
+            cell.setCellValue(value);
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            if (widths.isSampling()) {
+                widths.measure(col, Double.toString(value));
+            }
+        }
+
+        @Override
+        public void writeLong(long value) {
+            cell.setCellValue(value);
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            widths.measure(col, ColumnWidthEstimator.digits(value));
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            if (decimalStyles[col] == null) {
+                decimalStyles[col] = getColumnStyle(column, decimalFormat(column));
+            }
+            cell.setCellValue(value.doubleValue());
+            cell.setCellStyle(decimalStyles[col]);
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            // integer digits, sign and two decimal places
+            widths.measure(col, Math.max(value.precision() - value.scale(), 1) + (value.signum() < 0 ? 4 : 3));
+        }
+
+        @Override
+        public void writeBoolean(boolean value) {
+            cell.setCellValue(value);
+            widths.measure(col, value ? 4 : 5);
+        }
+
+        @Override
+        public void writeDate(double serial) {
+            if (columnDateStyles[col] == null) {
+                String pattern = getDatePattern();
+                columnDateStyles[col] = getColumnStyle(column, DateFormats.toExcelFormat(pattern));
+                dateWidths[col] = ColumnWidthEstimator.displayWidth(pattern);
+            }
+            cell.setCellValue(serial);
+            cell.setCellStyle(columnDateStyles[col]);
+            widths.measure(col, dateWidths[col]);
+        }
+
+        @Override
+        public String getDatePattern() {
+            return dateFmt != null ? dateFmt : column.getFormat();
+        }
+    }
+
     /**
      * Add summary excel sheet.
      *
      * @param fields the fields
      * @return the excel sheet
+     * @deprecated use {@link #addSummary(ColumnSchema)}
      */
+    @Deprecated
     public ExcelSheet addSummary(List<Field> fields) {
+        return addSummary(ColumnSchema.of(fields));
+    }
 
-        HSSFRow sumRow = sheet.createRow(sheet.getLastRowNum() + 1);
-        for (int i = 0; i < fields.size(); i++) {
-            Field field = fields.get(i);
-            ExcelAttribute attribute = field.getAnnotation(ExcelAttribute.class);
-            if (!attribute.isSum())
+    /**
+     * Add summary excel sheet.
+     *
+     * @param schema the column schema
+     * @return the excel sheet
+     */
+    public ExcelSheet addSummary(ColumnSchema schema) {
+        long start = System.nanoTime();
+        int lastContentRow = rowNum - 1;
+        Row sumRow = sheet.createRow(rowNum++);
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.hasSummary())
                 continue;
 
-            BigDecimal sum = BigDecimal.ZERO;
-            int lastRowNum = sheet.getLastRowNum();
-            for (int j = 0; j < lastRowNum; j++) {
-                HSSFRow idxRow = sheet.getRow(j);
-                if (idxRow != null) {
-                    HSSFCell idxCell = idxRow.getCell(i);
-                    if (idxCell != null &&
-                            idxCell.getCellType() == HSSFCell.CELL_TYPE_STRING &&
-                            NumberUtils.isNumber(idxCell.getStringCellValue())) {
-                        sum = sum.add(BigDecimal.valueOf(Double.valueOf(idxCell.getStringCellValue())));
-                    }
-                }
+            int i = column.getIndex();
+            Summary summary = column.getSummary();
+            Cell sumCell = sumRow.createCell(i);
+            if (summaryFormula && lastContentRow >= firstContentRow) {
+                String col = CellReference.convertNumToColString(i);
+                sumCell.setCellFormula(summary.getFunction() + "(" + col + (firstContentRow + 1)
+                        + ":" + col + (lastContentRow + 1) + ")");
+                continue;
             }
-            HSSFCell sumCell = sumRow.createCell(i);
-            sumCell.setCellValue(new HSSFRichTextString("合计: " + sum.setScale(2, BigDecimal.ROUND_HALF_EVEN).toString()));
-            sheet.autoSizeColumn(i);
+
+            SummaryAccumulator accumulator = summaries == null ? null : summaries[i];
+            String txtValue = (accumulator == null ? new SummaryAccumulator() : accumulator).getText(summary);
+            sumCell.setCellValue(txtValue);
+            widths.measure(i, ColumnWidthEstimator.displayWidth(txtValue));
         }
+        summaries = null;
+        metrics.phase(ExcelMetrics.Phase.SUMMARY, System.nanoTime() - start);
+        return this;
+    }
+
+    /**
+     * Gets rows of the sheet held in memory, rows of streaming sheet beyond
+     * its window are flushed to disk.
+     */
+    private int getRowsInMemory() {
+        if (sheet instanceof SXSSFSheet) {
+            return rowNum - 1 - ((SXSSFSheet) sheet).getLastFlushedRowNum();
+        }
+        return sheet.getPhysicalNumberOfRows();
+    }
+
+    /**
+     * Apply the column widths estimated from written rows, it should be called
+     * once after all rows of the sheet are written.
+     *
+     * @return the excel sheet
+     */
+    public ExcelSheet autoSizeColumns() {
+        long start = System.nanoTime();
+        widths.apply(sheet);
+        metrics.phase(ExcelMetrics.Phase.SIZING, System.nanoTime() - start);
         return this;
     }
 }
@@ -0,0 +1,378 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static com.allinmoney.platform.excel.XmlBuffer.ascii;
+
+/**
+ * An xlsx template parsed once for exportations, see
+ * {@link ExcelUtil#loadTemplate(InputStream, String)}. The first row of the
+ * template sheet which contains annotated titles is the header row, the cells
+ * of the row below it give the styles of content cells and the rows below
+ * header are dropped. Everything else like logos, merged title blocks, column
+ * widths and other sheets is kept as it is.
+ * <p>
+ * Parsing resolves the column bindings and styles with POI and keeps the
+ * parts of the package as bytes, the sheet is split where rows are inserted.
+ * Exportations copy the parts and stream rows between the split, so a
+ * template is never parsed again and can be shared by threads.
+ *
+ * @author Chris
+ */
+public final class ExcelTemplate {
+
+    private static final int HEADER_SCAN_ROWS = 100;
+    private static final String DECIMAL_FORMAT = "0.00";
+    private static final String SHEET_DATA_END = "</sheetData>";
+
+    private final ColumnSchema schema;
+    private final String sheetName;
+    private final int headerRow;
+    private final int[] columns;
+
+    /**
+     * The bound columns of schema in the order of template columns, cells of
+     * a row are written in this order.
+     */
+    private final int[] order;
+
+    /**
+     * Encoded prefixes of cells like {@code <c r="AB} and style attributes
+     * like {@code " s="12} of each column of schema, null if the column is not
+     * in template.
+     */
+    private final byte[][] cellRefs;
+    private final byte[][] textStyles;
+    private final byte[][] dateStyles;
+    private final byte[][] decimalStyles;
+
+    private final List<Part> parts;
+    private final String sheetPart;
+    private final byte[] sheetHead;
+    private final byte[] sheetTail;
+
+    private ExcelTemplate(Builder builder) {
+        this.schema = builder.schema;
+        this.sheetName = builder.sheetName;
+        this.headerRow = builder.headerRow;
+        this.columns = builder.columns;
+        this.order = IntStream.range(0, columns.length)
+                .filter(i -> builder.cellRefs[i] != null)
+                .boxed()
+                .sorted(Comparator.comparingInt(i -> columns[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.cellRefs = builder.cellRefs;
+        this.textStyles = builder.textStyles;
+        this.dateStyles = builder.dateStyles;
+        this.decimalStyles = builder.decimalStyles;
+        this.parts = Collections.unmodifiableList(builder.parts);
+        this.sheetPart = builder.sheetPart;
+        this.sheetHead = builder.sheetHead;
+        this.sheetTail = builder.sheetTail;
+    }
+
+    /**
+     * Parse xlsx template, the stream is read to the end but not closed.
+     *
+     * @param template  the template
+     * @param sheetName the sheet which rows are written into, null or empty for first sheet
+     * @param schema    the column schema which titles are searched in template
+     * @return the excel template
+     */
+    public static ExcelTemplate parse(InputStream template, String sheetName, ColumnSchema schema) {
+        Builder builder = new Builder(schema);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(template)) {
+            XSSFSheet sheet = sheetName == null || sheetName.isEmpty() ? workbook.getSheetAt(0) : workbook.getSheet(sheetName);
+            if (sheet == null) {
+                throw new ExcelException("No sheet named " + sheetName + " in template");
+            }
+            builder.sheetName = sheet.getSheetName();
+            builder.bindColumns(sheet);
+            builder.resolveStyles(workbook, sheet);
+            for (int r = sheet.getLastRowNum(); r > builder.headerRow; r--) {
+                Row row = sheet.getRow(r);
+                if (row != null) {
+                    sheet.removeRow(row);
+                }
+            }
+            builder.sheetPart = sheet.getPackagePart().getPartName().getName().substring(1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            builder.readParts(out.toByteArray());
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        } catch (POIXMLException | IllegalArgumentException e) {
+            // xls and other formats are rejected by the xlsx package
+            throw new ExcelException("Template should be xlsx: " + e.getMessage(), e);
+        }
+        return new ExcelTemplate(builder);
+    }
+
+    /**
+     * Gets the column schema which the template is bound to.
+     *
+     * @return the column schema
+     */
+    public ColumnSchema getColumnSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the name of sheet which rows are written into.
+     *
+     * @return the sheet name
+     */
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * Gets header row, rows are written from the next row.
+     *
+     * @return the 0-based header row
+     */
+    public int getHeaderRow() {
+        return headerRow;
+    }
+
+    /**
+     * Gets the template column of column of schema.
+     *
+     * @param column the column of schema
+     * @return the 0-based template column, -1 if the title is not in template
+     */
+    public int getTemplateColumn(ColumnSchema.Column column) {
+        return cellRefs[column.getIndex()] == null ? -1 : columns[column.getIndex()];
+    }
+
+    int[] getColumnOrder() {
+        return order;
+    }
+
+    byte[] getCellRef(int col) {
+        return cellRefs[col];
+    }
+
+    byte[] getTextStyle(int col) {
+        return textStyles[col];
+    }
+
+    byte[] getDateStyle(int col) {
+        return dateStyles[col];
+    }
+
+    byte[] getDecimalStyle(int col) {
+        return decimalStyles[col];
+    }
+
+    List<Part> getParts() {
+        return parts;
+    }
+
+    String getSheetPart() {
+        return sheetPart;
+    }
+
+    byte[] getSheetHead() {
+        return sheetHead;
+    }
+
+    byte[] getSheetTail() {
+        return sheetTail;
+    }
+
+    /**
+     * One part of package. Parts which are not xml are stored without
+     * compression, their sizes and checksums are computed once.
+     */
+    static final class Part {
+        private final String name;
+        private final byte[] data;
+        private final long crc;
+
+        private Part(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+            CRC32 checksum = new CRC32();
+            checksum.update(data);
+            this.crc = checksum.getValue();
+        }
+
+        ZipEntry newEntry() {
+            ZipEntry entry = new ZipEntry(name);
+            if (!isXml()) {
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCompressedSize(data.length);
+                entry.setCrc(crc);
+            }
+            return entry;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        private boolean isXml() {
+            return name.endsWith(".xml") || name.endsWith(".rels");
+        }
+    }
+
+    private static final class Builder {
+        private final ColumnSchema schema;
+        private String sheetName;
+        private int headerRow = -1;
+        private final int[] columns;
+        private final byte[][] cellRefs;
+        private final byte[][] textStyles;
+        private final byte[][] dateStyles;
+        private final byte[][] decimalStyles;
+        private final List<Part> parts = new ArrayList<>();
+        private String sheetPart;
+        private byte[] sheetHead;
+        private byte[] sheetTail;
+
+        private Builder(ColumnSchema schema) {
+            this.schema = schema;
+            this.columns = new int[schema.size()];
+            this.cellRefs = new byte[schema.size()][];
+            this.textStyles = new byte[schema.size()][];
+            this.dateStyles = new byte[schema.size()][];
+            this.decimalStyles = new byte[schema.size()][];
+        }
+
+        /**
+         * Find the first row with annotated titles in the leading rows.
+         */
+        private void bindColumns(XSSFSheet sheet) {
+            for (Row row : sheet) {
+                if (row.getRowNum() >= HEADER_SCAN_ROWS) {
+                    break;
+                }
+                boolean found = false;
+                for (Cell cell : row) {
+                    if (cell.getCellTypeEnum() != CellType.STRING) {
+                        continue;
+                    }
+                    ColumnSchema.Column column = schema.getColumn(cell.getStringCellValue());
+                    if (column != null && column.isExport() && cellRefs[column.getIndex()] == null) {
+                        columns[column.getIndex()] = cell.getColumnIndex();
+                        cellRefs[column.getIndex()] = ascii("<c r=\"" + CellReference.convertNumToColString(cell.getColumnIndex()));
+                        found = true;
+                    }
+                }
+                if (found) {
+                    headerRow = row.getRowNum();
+                    return;
+                }
+            }
+            throw new ExcelException("No annotated title is found in template sheet " + sheet.getSheetName());
+        }
+
+        /**
+         * Take styles of content cells from the sample row, date and decimal
+         * cells get their formats unless the sample cells have one.
+         */
+        private void resolveStyles(XSSFWorkbook workbook, XSSFSheet sheet) {
+            Row sample = sheet.getRow(headerRow + 1);
+            for (ColumnSchema.Column column : schema.getColumns()) {
+                int i = column.getIndex();
+                if (cellRefs[i] == null) {
+                    continue;
+                }
+                Cell cell = sample == null ? null : sample.getCell(columns[i]);
+                XSSFCellStyle base = cell != null ? (XSSFCellStyle) cell.getCellStyle()
+                        : (XSSFCellStyle) sheet.getColumnStyle(columns[i]);
+                if (base == null) {
+                    base = workbook.getCellStyleAt(0);
+                }
+                textStyles[i] = styleAttr(base);
+
+                Class<?> type = column.getAccessor().getType();
+                if (mayBe(type, Date.class) || mayBe(type, Temporal.class)) {
+                    boolean dated = DateUtil.isADateFormat(base.getDataFormat(), base.getDataFormatString());
+                    dateStyles[i] = dated ? textStyles[i]
+                            : styleAttr(withFormat(workbook, base, DateFormats.toExcelFormat(column.getFormat())));
+                }
+                if (mayBe(type, BigDecimal.class) || mayBe(type, BigInteger.class)) {
+                    decimalStyles[i] = base.getDataFormat() != 0 ? textStyles[i]
+                            : styleAttr(withFormat(workbook, base, DECIMAL_FORMAT));
+                }
+            }
+        }
+
+        /**
+         * Keep the parts of written template, the sheet is split before the end
+         * of its rows.
+         */
+        private void readParts(byte[] bytes) throws IOException {
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    byte[] data = IOUtils.toByteArray(zip);
+                    if (entry.getName().equals(sheetPart)) {
+                        splitSheet(data);
+                    }
+                    parts.add(new Part(entry.getName(), data));
+                }
+            }
+        }
+
+        private void splitSheet(byte[] data) {
+            String xml = new String(data, StandardCharsets.UTF_8);
+            int split = xml.lastIndexOf(SHEET_DATA_END);
+            if (split < 0) {
+                throw new ExcelException("No rows are found in template sheet " + sheetName);
+            }
+            sheetHead = xml.substring(0, split).getBytes(StandardCharsets.UTF_8);
+            sheetTail = xml.substring(split).getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static XSSFCellStyle withFormat(XSSFWorkbook workbook, XSSFCellStyle base, String format) {
+            XSSFCellStyle style = workbook.createCellStyle();
+            style.cloneStyleFrom(base);
+            style.setDataFormat(workbook.createDataFormat().getFormat(format));
+            return style;
+        }
+
+        private static byte[] styleAttr(XSSFCellStyle style) {
+            return ascii("\" s=\"" + style.getIndex());
+        }
+
+        private static boolean mayBe(Class<?> declared, Class<?> type) {
+            return declared.isAssignableFrom(type) || type.isAssignableFrom(declared);
+        }
+    }
+}
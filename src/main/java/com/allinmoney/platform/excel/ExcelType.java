@@ -0,0 +1,97 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * The file format of exportation.
+ *
+ * @author Chris
+ */
+public enum ExcelType {
+    /**
+     * Excel 97-2003 binary format, the whole workbook is kept in memory.
+     */
+    XLS(SpreadsheetVersion.EXCEL97, "xls"),
+
+    /**
+     * Office open xml format. Rows are written with a sliding window, the rows
+     * out of the window are flushed to temporary files on disk, so the heap
+     * is constant in row count.
+     */
+    XLSX(SpreadsheetVersion.EXCEL2007, "xlsx"),
+
+    /**
+     * Office open xml format written directly as SpreadsheetML without POI
+     * workbook. Strings are inlined unless a {@link SharedStringPolicy} is set,
+     * rows are encoded into one reusable buffer. The column widths
+     * are estimated from the first rows which are held in memory, 100 rows if
+     * all rows are asked to be measured.
+     */
+    XLSX_DIRECT(SpreadsheetVersion.EXCEL2007, "xlsx"),
+
+    /**
+     * Comma separated text without styles and summary rows, for data consumed
+     * by other systems. There is no row limit.
+     */
+    CSV(null, "csv"),
+
+    /**
+     * Tab separated text, see {@link #CSV}.
+     */
+    TSV(null, "tsv");
+
+    private final SpreadsheetVersion version;
+    private final String extension;
+
+    ExcelType(SpreadsheetVersion version, String extension) {
+        this.version = version;
+        this.extension = extension;
+    }
+
+    /**
+     * Gets file extension of current type without dot.
+     *
+     * @return the extension
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Gets max rows of one sheet.
+     *
+     * @return the max rows
+     */
+    public int getMaxRows() {
+        return version == null ? Integer.MAX_VALUE : version.getMaxRows();
+    }
+
+    /**
+     * Identifies if current type is written with POI workbook.
+     *
+     * @return the boolean
+     */
+    public boolean hasWorkbook() {
+        return this == XLS || this == XLSX;
+    }
+
+    /**
+     * Create an empty workbook of current type.
+     *
+     * @param windowSize the rows kept in memory for streaming type
+     * @return the workbook
+     */
+    public Workbook createWorkbook(int windowSize) {
+        switch (this) {
+            case XLSX:
+                return new SXSSFWorkbook(null, windowSize, true);
+            case XLS:
+                return new HSSFWorkbook();
+            default:
+                throw new ExcelException(this + " is not written with workbook");
+        }
+    }
+}
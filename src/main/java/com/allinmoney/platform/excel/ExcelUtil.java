@@ -1,28 +1,24 @@
 package com.allinmoney.platform.excel;
 
-import com.allinmoney.platform.annotation.ExcelAttribute;
-import com.allinmoney.platform.annotation.Translate;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.poi.hssf.usermodel.*;
-import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddressList;
+import org.apache.poi.xssf.usermodel.XSSFDataValidation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
-import static com.allinmoney.platform.excel.ExcelSheet.MAX_ROW;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipOutputStream;
 
 
 /**
@@ -36,11 +32,15 @@ public class ExcelUtil<T> implements Serializable {
     private static final long serialVersionId = 551970754610248636L;
 
     private static final Logger logger = LoggerFactory.getLogger(ExcelUtil.class);
-    private static final Pattern P = Pattern.compile("^//d+(//.//d+)?$");
-
-    private static final short HEADER_FONT_HEIGHT = 14;
-    private static final short CONTENT_FONT_HEIGHT = 12;
     private static final int DEFAULT_DELIMITER = 5;
+    private static final int DEFAULT_WINDOW_SIZE = 100;
+    private static final int DEFAULT_HEADER_SCAN_ROWS = 100;
+    private static final int MAX_PENDING_BATCHES = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Rows written between checks of part size of rolling exportation.
+     */
+    private static final int ROLLING_CHECK_ROWS = 1000;
 
     private Class<T> cls;
 
@@ -48,6 +48,38 @@ public class ExcelUtil<T> implements Serializable {
 
     private int delimiter;
 
+    private ExcelType excelType;
+
+    private int windowSize;
+
+    private int widthSampleRows;
+
+    private boolean summaryFormula;
+
+    /**
+     * Codecs, executor and metrics are not serializable, a deserialized util has
+     * the default codecs and metrics and no executor. Charset is serialized by name.
+     */
+    private transient CellCodecs codecs = new CellCodecs();
+
+    private transient Executor executor;
+
+    private transient Charset charset;
+
+    private boolean bom;
+
+    private boolean gzip;
+
+    private boolean preserveOrder;
+
+    private int headerScanRows;
+
+    private SharedStringPolicy sharedStrings;
+
+    private transient ExcelMetrics metrics;
+
+    private int pipelineWorkers;
+
     /**
      * Instantiates a new Excel util.
      *
@@ -57,6 +89,25 @@ public class ExcelUtil<T> implements Serializable {
         this.cls = cls;
         this.view = null;
         this.delimiter = DEFAULT_DELIMITER;
+        this.excelType = ExcelType.XLS;
+        this.windowSize = DEFAULT_WINDOW_SIZE;
+        this.charset = StandardCharsets.UTF_8;
+        this.preserveOrder = true;
+        this.headerScanRows = DEFAULT_HEADER_SCAN_ROWS;
+        this.sharedStrings = SharedStringPolicy.NEVER;
+        this.metrics = ExcelMetrics.NOOP;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeUTF(charset.name());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.charset = Charset.forName(in.readUTF());
+        this.codecs = new CellCodecs();
+        this.metrics = ExcelMetrics.NOOP;
     }
 
     /**
@@ -77,6 +128,173 @@ public class ExcelUtil<T> implements Serializable {
         this.delimiter = delimiter;
     }
 
+    /**
+     * Sets excel type of exportation, default is {@link ExcelType#XLS}. With
+     * {@link ExcelType#XLSX} rows are streamed to disk, it is recommended for
+     * large data list. {@link ExcelType#XLSX_DIRECT} writes the same format
+     * without POI workbook, it is the fastest for large data list.
+     * {@link ExcelType#CSV} and {@link ExcelType#TSV} write delimited text for
+     * data consumed by other systems.
+     *
+     * @param excelType the excel type
+     */
+    public void setExcelType(ExcelType excelType) {
+        this.excelType = excelType;
+    }
+
+    /**
+     * Sets the rows measured to estimate column widths of each sheet, default
+     * is 0 which measures all rows. Column annotated with width is not measured.
+     *
+     * @param widthSampleRows the width sample rows
+     */
+    public void setWidthSampleRows(int widthSampleRows) {
+        this.widthSampleRows = widthSampleRows;
+    }
+
+    /**
+     * Sets if summary row is written as excel formulas like SUM(C2:C101),
+     * default is false which writes the values computed while rows are
+     * written. Formulas are calculated when the file is opened.
+     *
+     * @param summaryFormula the summary formula
+     */
+    public void setSummaryFormula(boolean summaryFormula) {
+        this.summaryFormula = summaryFormula;
+    }
+
+    /**
+     * Sets the executor which fills sheets of {@link ExcelType#XLSX} in parallel,
+     * e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}. Default is null
+     * which fills sheets one after another on the calling thread. Sheets are
+     * created, styled and written out on the calling thread, only rows of the
+     * sheets are filled by the executor, so the output is the same as the
+     * sequential one. It takes effect when the data list is larger than one
+     * sheet, or multiple data lists are exported. Batches of importation are
+     * bound by the executor too, see {@link #importData(String, String, String, int, Consumer)},
+     * and so are the workers of {@link #setPipelineWorkers(int)}.
+     *
+     * @param executor the executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets if batches of importation are delivered in row order, default is
+     * true. When it is false, batches bound by the executor are delivered as
+     * soon as they are bound.
+     *
+     * @param preserveOrder the preserve order
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+    }
+
+    /**
+     * Sets the leading rows of sheet searched for header of importation,
+     * default is 100. Reading stops if no annotated title is found in them.
+     * 0 or negative to search all rows.
+     *
+     * @param headerScanRows the header scan rows
+     */
+    public void setHeaderScanRows(int headerScanRows) {
+        this.headerScanRows = headerScanRows;
+    }
+
+    /**
+     * Sets the policy of shared strings of {@link ExcelType#XLSX_DIRECT},
+     * default is {@link SharedStringPolicy#NEVER}. The table is kept in
+     * memory mapped temporary files instead of heap. {@link ExcelType#XLSX}
+     * always inlines strings, the shared strings table of POI is on heap.
+     *
+     * @param sharedStrings the shared strings policy
+     */
+    public void setSharedStrings(SharedStringPolicy sharedStrings) {
+        this.sharedStrings = sharedStrings;
+    }
+
+    /**
+     * Sets the metrics of exportations and importations, default is
+     * {@link ExcelMetrics#NOOP}. Phases are timed per sheet or block, rows
+     * of importation are timed only if metrics is set.
+     *
+     * @param metrics the metrics, e.g. {@link HistogramMetrics}
+     */
+    public void setMetrics(ExcelMetrics metrics) {
+        this.metrics = metrics == null ? ExcelMetrics.NOOP : metrics;
+    }
+
+    /**
+     * Sets the workers which convert rows of iterator exportations ahead of
+     * the writer, default is 0 which converts rows on the writing thread.
+     * Workers read fields, translate and encode values of chunks of rows in
+     * parallel, the writing thread only writes the converted cells in source
+     * order, so the output is the same as the sequential one. It helps when
+     * values are expensive to convert, like registered codecs or getters of
+     * lazy fields. Workers run on the executor, or on their own daemon threads
+     * if it is not set; the iterator is read by one worker at a time.
+     *
+     * @param pipelineWorkers the pipeline workers
+     */
+    public void setPipelineWorkers(int pipelineWorkers) {
+        this.pipelineWorkers = pipelineWorkers;
+    }
+
+    /**
+     * Sets charset of {@link ExcelType#CSV} and {@link ExcelType#TSV}, default
+     * is UTF-8.
+     *
+     * @param charset the charset
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Sets if byte order mark is written at the beginning of {@link ExcelType#CSV}
+     * and {@link ExcelType#TSV}, default is false. Excel needs it to open UTF-8
+     * text with east asian characters. It is only written for unicode charsets.
+     *
+     * @param bom the bom
+     */
+    public void setBom(boolean bom) {
+        this.bom = bom;
+    }
+
+    /**
+     * Sets if {@link ExcelType#CSV} and {@link ExcelType#TSV} are compressed
+     * with gzip, default is false.
+     *
+     * @param gzip the gzip
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Register codec which writes values of given type into cells. It replaces
+     * the default codec of the type, values of sub types use it too unless they
+     * have their own codecs.
+     *
+     * @param <V>   the value type
+     * @param type  the value type
+     * @param codec the codec
+     */
+    public <V> void registerCodec(Class<V> type, CellCodec<? super V> codec) {
+        codecs.register(type, codec);
+    }
+
+    /**
+     * Sets the rows kept in memory of each sheet for {@link ExcelType#XLSX},
+     * the rows out of the window are flushed to disk.
+     *
+     * @param windowSize the window size
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
     /**
      * Export data list. If @param withSuperFields is true, exportation will not
      * only export given current model's annotated fields, but also export the annotated
@@ -123,23 +341,231 @@ public class ExcelUtil<T> implements Serializable {
      * @return the boolean
      */
     public boolean exportDataList(List<T> dataList, String sheetName, OutputStream os, String dateFmt, boolean withSuperFields) {
-        HSSFWorkbook workbook = new HSSFWorkbook();
-        int sheets = dataList.size() == 0?1:
-                    dataList.size() % MAX_ROW == 0?dataList.size()/MAX_ROW:dataList.size()/MAX_ROW + 1;
-
-        List<Field> annotatedFields = getAnnotatedFields(withSuperFields);
-        for (int idx = 0; idx < sheets; idx++) {
-            ExcelSheet sheet = new ExcelSheet(workbook.createSheet(sheetName + idx));
-            sheet.setWorkbook(workbook)
-                    .initStylesAndFonts()
-                    .addHeaders(annotatedFields)
-                    .addContent(annotatedFields, dataList, false, idx, dateFmt)
-                    .addSummary(annotatedFields);
+        if (!isParallel()) {
+            return exportDataList(dataList.iterator(), sheetName, os, dateFmt, withSuperFields);
+        }
+
+        long begin = System.nanoTime();
+        CountingOutputStream out = new CountingOutputStream(os, false);
+        Workbook workbook = createWorkbook();
+        StylePool styles = new StylePool(workbook);
+        int maxRows = ExcelSheet.getMaxDataRows(workbook);
+
+        ColumnSchema schema = getColumnSchema(withSuperFields);
+        try {
+            List<Runnable> parts = new ArrayList<>();
+            int start = 0;
+            do {
+                int end = Math.min(start + maxRows, dataList.size());
+                parts.add(sheetPart(newSheet(styles, sheetName + parts.size()), schema, dataList.subList(start, end), dateFmt));
+                start = end;
+            } while (start < dataList.size());
+            fillSheets(parts);
+            PoiSheetWriter.write(workbook, out, metrics);
+        } finally {
+            PoiSheetWriter.dispose(workbook);
+        }
+        metrics.exportCompleted(out.getCount(), System.nanoTime() - begin);
+        return true;
+    }
+
+    /**
+     * Export data of iterable source, the source is iterated only once.
+     *
+     * @param data            the data to export
+     * @param sheetName       the sheet name to export
+     * @param os              the OutputStream for I/O
+     * @param dateFmt         the date fmt for date fields of data source, null to use the
+     *                        format of annotation
+     * @param withSuperFields identifies if to export the annotated fields of element's super class
+     * @return the boolean
+     */
+    public boolean exportDataList(Iterable<? extends T> data, String sheetName, OutputStream os, String dateFmt, boolean withSuperFields) {
+        return exportDataList(data.iterator(), sheetName, os, dateFmt, withSuperFields);
+    }
+
+    /**
+     * Export data of stream without collecting it into a list. The stream is
+     * consumed but not closed.
+     *
+     * @param stream          the stream of data to export
+     * @param sheetName       the sheet name to export
+     * @param os              the OutputStream for I/O
+     * @param dateFmt         the date fmt for date fields of data source, null to use the
+     *                        format of annotation
+     * @param withSuperFields identifies if to export the annotated fields of element's super class
+     * @return the boolean
+     */
+    public boolean exportDataList(Stream<? extends T> stream, String sheetName, OutputStream os, String dateFmt, boolean withSuperFields) {
+        return exportDataList(stream.iterator(), sheetName, os, dateFmt, withSuperFields);
+    }
+
+    /**
+     * Export data of spliterator.
+     *
+     * @param spliterator     the spliterator of data to export
+     * @param sheetName       the sheet name to export
+     * @param os              the OutputStream for I/O
+     * @param dateFmt         the date fmt for date fields of data source, null to use the
+     *                        format of annotation
+     * @param withSuperFields identifies if to export the annotated fields of element's super class
+     * @return the boolean
+     */
+    public boolean exportDataList(Spliterator<? extends T> spliterator, String sheetName, OutputStream os, String dateFmt, boolean withSuperFields) {
+        return exportDataList(Spliterators.iterator(spliterator), sheetName, os, dateFmt, withSuperFields);
+    }
+
+    /**
+     * Export data of iterator in a single forward pass. When one sheet is full
+     * the rest of data is continued in next sheet, sheets are named as sheetName
+     * with sequence number 0, 1, 2...
+     *
+     * @param iterator        the iterator of data to export
+     * @param sheetName       the sheet name to export
+     * @param os              the OutputStream for I/O
+     * @param dateFmt         the date fmt for date fields of data source, null to use the
+     *                        format of annotation
+     * @param withSuperFields identifies if to export the annotated fields of element's super class
+     * @return the boolean
+     */
+    public boolean exportDataList(Iterator<? extends T> iterator, String sheetName, OutputStream os, String dateFmt, boolean withSuperFields) {
+        long start = System.nanoTime();
+        CountingOutputStream out = new CountingOutputStream(os, false);
+        ColumnSchema schema = getColumnSchema(withSuperFields);
+        try (SheetWriter writer = createWriter(out);
+             RowPipeline pipeline = pipeline(iterator, schema, dateFmt)) {
+            int maxRows = writer.getMaxDataRows();
+            Iterator<?> rows = pipeline != null ? pipeline : iterator;
+            int idx = 0;
+            do {
+                writer.newSheet(sheetName + idx);
+                writer.addHeaders(schema, dateFmt);
+                writer.addContent(schema, rows, maxRows, dateFmt);
+                writer.addSummary(schema);
+                idx++;
+            } while (rows.hasNext());
+            writer.finish();
         }
-        flushWorkbook(workbook, os);
+        metrics.exportCompleted(out.getCount(), System.nanoTime() - start);
         return true;
     }
 
+    /**
+     * Export data of iterator into files of at most maxRows rows or maxBytes
+     * bytes, each file is written as an entry of zip stream as soon as it is
+     * completed, so only one file is held at a time and consumers of the zip
+     * stream can start on the first file while the rest are written. Files
+     * are named as sheetName-0, sheetName-1... with the extension of excel
+     * type, {@value PartOutput#MANIFEST} with the rows and bytes of each file
+     * is written after them. The zip stream is flushed but not closed.
+     * <p>
+     * The bytes are checked every 1000 rows, they are known while rows are
+     * written only for {@link ExcelType#XLSX_DIRECT}, {@link ExcelType#CSV}
+     * and {@link ExcelType#TSV}, files of POI workbooks are rolled by rows.
+     *
+     * @param iterator  the iterator of data to export
+     * @param sheetName the sheet name and file name prefix
+     * @param maxRows   the max data rows of one file, 0 for no limit
+     * @param maxBytes  the bytes after which next file is started, 0 for no limit
+     * @param zip       the zip stream
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the parts
+     */
+    public List<ExportPart> exportRolling(Iterator<? extends T> iterator, String sheetName, int maxRows, long maxBytes,
+                                          ZipOutputStream zip, String dateFmt) {
+        return exportRolling(iterator, sheetName, maxRows, maxBytes, PartOutput.of(zip), dateFmt);
+    }
+
+    /**
+     * Export data of iterator into files of directory, see
+     * {@link #exportRolling(Iterator, String, int, long, ZipOutputStream, String)}.
+     * Each file is written under a temporary name and renamed when it is
+     * completed, {@value PartOutput#MANIFEST} is the last file.
+     *
+     * @param iterator  the iterator of data to export
+     * @param sheetName the sheet name and file name prefix
+     * @param maxRows   the max data rows of one file, 0 for no limit
+     * @param maxBytes  the bytes after which next file is started, 0 for no limit
+     * @param directory the directory, it is created if absent
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the parts
+     */
+    public List<ExportPart> exportRolling(Iterator<? extends T> iterator, String sheetName, int maxRows, long maxBytes,
+                                          Path directory, String dateFmt) {
+        return exportRolling(iterator, sheetName, maxRows, maxBytes, PartOutput.of(directory), dateFmt);
+    }
+
+    private List<ExportPart> exportRolling(Iterator<? extends T> iterator, String sheetName, int maxRows, long maxBytes,
+                                           PartOutput output, String dateFmt) {
+        if (maxRows <= 0 && maxBytes <= 0) {
+            throw new ExcelException("Rows or bytes of one file should be limited");
+        }
+        long start = System.nanoTime();
+        ColumnSchema schema = getColumnSchema(true);
+        boolean text = excelType == ExcelType.CSV || excelType == ExcelType.TSV;
+        String extension = "." + excelType.getExtension() + (text && gzip ? ".gz" : "");
+        List<ExportPart> parts = new ArrayList<>();
+        long bytes = 0;
+        try (RowPipeline pipeline = pipeline(iterator, schema, dateFmt)) {
+            Iterator<?> data = pipeline != null ? pipeline : iterator;
+            do {
+                String name = sheetName + "-" + parts.size() + extension;
+                CountingOutputStream out = new CountingOutputStream(output.open(name), true);
+                long rows;
+                try {
+                    try (SheetWriter writer = createWriter(out)) {
+                        rows = addPart(writer, schema, data, sheetName, maxRows, maxBytes, out, dateFmt);
+                        writer.finish();
+                    }
+                    output.close(name);
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        output.abort(name);
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                parts.add(new ExportPart(name, rows, out.getCount()));
+                bytes += out.getCount();
+            } while (data.hasNext());
+            output.finish(parts);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+        metrics.exportCompleted(bytes, System.nanoTime() - start);
+        return parts;
+    }
+
+    /**
+     * Write rows of one file until its rows or bytes are reached, sheets are
+     * rolled over inside the file when they are full.
+     */
+    private long addPart(SheetWriter writer, ColumnSchema schema, Iterator<?> iterator, String sheetName,
+                         int maxRows, long maxBytes, CountingOutputStream out, String dateFmt) {
+        int maxSheetRows = writer.getMaxDataRows();
+        long rows = 0;
+        int idx = 0;
+        boolean full;
+        do {
+            writer.newSheet(sheetName + idx++);
+            writer.addHeaders(schema, dateFmt);
+            int sheetRows = 0;
+            do {
+                int chunk = Math.min(ROLLING_CHECK_ROWS, maxSheetRows - sheetRows);
+                if (maxRows > 0) {
+                    chunk = (int) Math.min(chunk, maxRows - rows);
+                }
+                int written = writer.addContent(schema, iterator, chunk, dateFmt);
+                sheetRows += written;
+                rows += written;
+                full = maxRows > 0 && rows >= maxRows || maxBytes > 0 && out.getCount() >= maxBytes;
+            } while (!full && sheetRows < maxSheetRows && iterator.hasNext());
+            writer.addSummary(schema);
+        } while (!full && iterator.hasNext());
+        return rows;
+    }
+
     /**
      * Export multiple data list. This method is used to export multiple data source into excel
      * file. Different data source will be exported to different sheets.
@@ -151,57 +577,137 @@ public class ExcelUtil<T> implements Serializable {
      * @return the boolean
      */
     public boolean exportMultipleDataList(String sheetName, boolean withSuperFields, OutputStream os, List<?>... dataList) {
-        int sheetNo = 0;
-        HSSFWorkbook workbook = new HSSFWorkbook();
-        for (List list : dataList) {
-            if (list.isEmpty()) {
-                continue;
+        long begin = System.nanoTime();
+        CountingOutputStream out = new CountingOutputStream(os, false);
+        if (!isParallel()) {
+            try (SheetWriter writer = createWriter(out)) {
+                int maxRows = writer.getMaxDataRows();
+                int sheetNo = 0;
+                for (List<?> list : dataList) {
+                    if (list.isEmpty()) {
+                        continue;
+                    }
+
+                    ColumnSchema schema = getColumnSchema(list.get(0).getClass(), withSuperFields);
+                    Iterator<?> iterator = list.iterator();
+                    // roll over to next sheet if list is larger than one sheet
+                    do {
+                        writer.newSheet(sheetName + sheetNo++);
+                        writer.addHeaders(schema, null);
+                        writer.addContent(schema, iterator, maxRows, null);
+                        writer.addSummary(schema);
+                    } while (iterator.hasNext());
+                }
+                writer.finish();
+            }
+            metrics.exportCompleted(out.getCount(), System.nanoTime() - begin);
+            return true;
+        }
+
+        Workbook workbook = createWorkbook();
+        StylePool styles = new StylePool(workbook);
+        int maxRows = ExcelSheet.getMaxDataRows(workbook);
+        try {
+            List<Runnable> parts = new ArrayList<>();
+            for (List<?> list : dataList) {
+                if (list.isEmpty()) {
+                    continue;
+                }
+
+                Class<?> clz = list.get(0).getClass();
+                ColumnSchema schema = getColumnSchema(clz, withSuperFields);
+
+                // roll over to next sheet if list is larger than one sheet
+                for (int start = 0; start < list.size(); start += maxRows) {
+                    List<?> part = list.subList(start, Math.min(start + maxRows, list.size()));
+                    parts.add(sheetPart(newSheet(styles, sheetName + parts.size()), schema, part, null));
+                }
             }
+            fillSheets(parts);
+            PoiSheetWriter.write(workbook, out, metrics);
+        } finally {
+            PoiSheetWriter.dispose(workbook);
+        }
+        metrics.exportCompleted(out.getCount(), System.nanoTime() - begin);
+        return true;
+    }
+
+    /**
+     * Parse xlsx template for {@link #exportTemplate(ExcelTemplate, Iterator, OutputStream)},
+     * the template is bound to the annotated titles of data class with current
+     * data view. It is parsed once and can be kept for all exportations of the template.
+     *
+     * @param template  the template, it is read to the end but not closed
+     * @param sheetName the sheet which rows are written into, null or empty for first sheet
+     * @return the excel template
+     */
+    public ExcelTemplate loadTemplate(InputStream template, String sheetName) {
+        return ExcelTemplate.parse(template, sheetName, getColumnSchema(true));
+    }
 
-            Class<?> clz = list.get(0).getClass();
-            List<Field> annotatedFields = getAnnotatedFields(clz, withSuperFields);
+    /**
+     * Export data list into a fresh copy of template, see {@link #exportTemplate(ExcelTemplate, Iterator, OutputStream)}.
+     *
+     * @param template the template
+     * @param dataList the data list to export
+     * @param os       the OutputStream for I/O
+     * @return the boolean
+     */
+    public boolean exportTemplate(ExcelTemplate template, List<T> dataList, OutputStream os) {
+        return exportTemplate(template, dataList.iterator(), os);
+    }
 
-            ExcelSheet sheet = new ExcelSheet(workbook.createSheet(sheetName + sheetNo));
-            sheet.setWorkbook(workbook)
-                    .initStylesAndFonts()
-                    .addHeaders(annotatedFields)
-                    .addContent(annotatedFields, list, true, sheetNo, null)
-                    .addSummary(annotatedFields);
-            sheetNo++;
+    /**
+     * Export data of iterator into a fresh copy of template. Rows are written
+     * below header row of template sheet with the styles of the sample row,
+     * columns whose titles are not in template are left out. Dates are
+     * formatted by the sample cells or the format of annotation. No summary
+     * row is written, the template is xlsx whatever the excel type is.
+     *
+     * @param template the template, see {@link #loadTemplate(InputStream, String)}
+     * @param iterator the iterator of data to export
+     * @param os       the OutputStream for I/O
+     * @return the boolean
+     */
+    public boolean exportTemplate(ExcelTemplate template, Iterator<? extends T> iterator, OutputStream os) {
+        if (template.getColumnSchema().getType() != cls) {
+            throw new ExcelException("Template is not bound to " + cls.getName());
         }
-        flushWorkbook(workbook, os);
+        long start = System.nanoTime();
+        CountingOutputStream out = new CountingOutputStream(os, false);
+        new TemplateWriter(template, out, codecs).setMetrics(metrics).write(iterator);
+        metrics.exportCompleted(out.getCount(), System.nanoTime() - start);
         return true;
     }
 
+    /**
+     * Gets the header cells of annotated titles in the sheet.
+     *
+     * @param excelFilePath the excel file path
+     * @param sheetName     the sheet name, null or empty for first sheet
+     * @return the map of title to header cell
+     */
     public Map<String, Cell> getAnnotatedCellsMap(String excelFilePath, String sheetName) {
-        final List<Field> fields = getAnnotatedFields(true);
+        final ColumnSchema schema = getColumnSchema(true);
         Map<String, Cell> headerCellsMap= new HashMap<>();
-        try {
-            FileInputStream inputStream = new FileInputStream(new File(excelFilePath));
-            Workbook workbook = WorkbookFactory.create(inputStream);
+        try (Workbook workbook = WorkbookFactory.create(new File(excelFilePath), null, true)) {
             Sheet sheet = sheetName == null || sheetName.isEmpty()? workbook.getSheetAt(0):workbook.getSheet(sheetName);
             Iterator<Row> iterator = sheet.rowIterator();
-            while (iterator.hasNext()) {
+            // stop when all titles are found or leading rows are searched
+            while (iterator.hasNext() && headerCellsMap.size() < schema.size()) {
                 Row row = iterator.next();
-                Iterator<Cell> cellIterator = row.cellIterator();
-                while (cellIterator.hasNext()) {
-                    Cell cell = cellIterator.next();
-                    if (cell.toString().isEmpty()) {
-                        logger.info("Empty cell at row: " + row.toString() + ",column: " + cell.getColumnIndex());
-                        continue;
-                    }
-                    if (!cell.getCellTypeEnum().equals(CellType.STRING)) {
-                        logger.info("Cell at row: " + row.toString() + ", column: " + cell.getColumnIndex() + " is not string");
+                if (headerScanRows > 0 && row.getRowNum() >= headerScanRows) {
+                    break;
+                }
+                for (Cell cell : row) {
+                    if (cell.getCellTypeEnum() != CellType.STRING) {
                         continue;
                     }
 
-                    fields.stream()
-                            .filter(field -> field.getAnnotation(ExcelAttribute.class).title().equals(cell.getStringCellValue()))
-                            .findFirst()
-                            .ifPresent(field -> {
-                                headerCellsMap.putIfAbsent(field.getAnnotation(ExcelAttribute.class).title(), cell);
-                            });
-
+                    ColumnSchema.Column column = schema.getColumn(cell.getStringCellValue());
+                    if (column != null) {
+                        headerCellsMap.putIfAbsent(column.getTitle(), cell);
+                    }
                 }
             }
         } catch (IOException e) {
@@ -214,83 +720,146 @@ public class ExcelUtil<T> implements Serializable {
         return headerCellsMap;
     }
 
-    public List<T> importData(String path, String sheetName, String dateFormat) {
-        List<T> dataList = new LinkedList<>();
-        final List<Field> fields = getAnnotatedFields(true);
-        Map<String, Cell> headerCellsMap = getAnnotatedCellsMap(path, sheetName);
-        Integer headerRow = ((Cell)(headerCellsMap.values().toArray()[0])).getRowIndex();
+    /**
+     * Detect header of sheet, only the leading rows set by
+     * {@link #setHeaderScanRows(int)} are read. The returned schema can be
+     * kept to import files of the same template without detecting header again.
+     *
+     * @param path      the path of excel file, xls or xlsx
+     * @param sheetName the sheet name, null or empty for first sheet
+     * @return the sheet schema, null if no annotated title is found
+     * @throws ExcelException if the file can not be read
+     */
+    public SheetSchema getSheetSchema(String path, String sheetName) {
+        RowBinder<T> binder = new RowBinder<>(cls, getColumnSchema(true), null, null);
+        binder.setScanRows(headerScanRows);
         try {
-            FileInputStream inputStream = new FileInputStream(new File(path));
-            Workbook workbook = WorkbookFactory.create(inputStream);
-            Sheet sheet = sheetName == null || sheetName.isEmpty()?workbook.getSheetAt(0):workbook.getSheet(sheetName);
-            Iterator<Row> iterator = sheet.rowIterator();
+            SheetReader.open(new File(path)).read(sheetName, row -> binder.handle(row) && binder.getSheetSchema() == null);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+        return binder.getSheetSchema();
+    }
 
-            while (iterator.hasNext()) {
-                Row row = iterator.next();
-                if (row.getRowNum() <= headerRow) {
-                    logger.debug("Skipping unused rows: " + row.getRowNum());
-                    continue;
-                }
-                T data = cls.newInstance();
-                fields.forEach(field -> {
-                    Cell cell = null;
-                    try {
-                        cell = row.getCell(headerCellsMap.get(field.getAnnotation(ExcelAttribute.class).title()).getColumnIndex());
-                    } catch (NullPointerException e) {
-                        logger.warn(field.getAnnotation(ExcelAttribute.class).title() + " is not existing");
-                    }
+    /**
+     * Import data from sheet of excel file. The file is streamed once, header
+     * row is detected by the annotated titles and the rows after header are
+     * bound to data objects.
+     *
+     * @param path       the excel file path, xls or xlsx
+     * @param sheetName  the sheet name, null or empty for first sheet
+     * @param dateFormat the format to convert date cells to string, default is yyyyMMdd
+     * @return the data list
+     */
+    public List<T> importData(String path, String sheetName, String dateFormat) {
+        List<T> dataList = new ArrayList<>();
+        importData(path, sheetName, dateFormat, dataList::add);
+        return dataList;
+    }
 
-                    if (cell != null) {
-                        Object[] value = new Object[1];
-                        switch (cell.getCellTypeEnum()) {
-                            case _NONE:
-                            case BLANK:
-                                break;
-                            case STRING:
-                                value[0] = cell.getStringCellValue();
-                                break;
-                            case BOOLEAN:
-                                value[0] = cell.getBooleanCellValue();
-                                break;
-                            case ERROR:
-                                value[0] = "!ERROR!";
-                                break;
-                            case FORMULA:
-                                value[0] = cell.getCellFormula();
-                                break;
-                            case NUMERIC:
-                                if (HSSFDateUtil.isCellDateFormatted(cell)) {
-                                    DateFormat format = new SimpleDateFormat(dateFormat == null || dateFormat.isEmpty()?"yyyyMMdd":dateFormat);
-                                    value[0] = format.format(cell.getDateCellValue());
-                                } else {
-                                    value[0] = String.valueOf(cell.getNumericCellValue());
-                                }
-                                break;
-                            default:
-                                break;
-                        }
-                        try {
-                            field.setAccessible(true);
-                            field.set(data, value[0]);
-                        } catch (IllegalAccessException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                });
-                dataList.add(data);
-            }
+    /**
+     * Import data from sheet of excel file, each data object is passed to consumer
+     * as soon as its row is read, so memory does not grow with sheet size.
+     *
+     * @param path       the excel file path, xls or xlsx
+     * @param sheetName  the sheet name, null or empty for first sheet
+     * @param dateFormat the format to convert date cells to string, default is yyyyMMdd
+     * @param consumer   the consumer of data
+     */
+    public void importData(String path, String sheetName, String dateFormat, Consumer<? super T> consumer) {
+        importData(path, sheetName, dateFormat, null, consumer);
+    }
+
+    /**
+     * Import data with known header of sheet, see {@link #getSheetSchema(String, String)}.
+     *
+     * @param path        the path of excel file, xls or xlsx
+     * @param sheetName   the sheet name, null or empty for first sheet
+     * @param dateFormat  the format of date cells, default is yyyyMMdd
+     * @param sheetSchema the sheet schema, null to detect header
+     * @return the data list
+     */
+    public List<T> importData(String path, String sheetName, String dateFormat, SheetSchema sheetSchema) {
+        List<T> dataList = new ArrayList<>();
+        importData(path, sheetName, dateFormat, sheetSchema, dataList::add);
+        return dataList;
+    }
+
+    /**
+     * Import data with known header of sheet, see {@link #getSheetSchema(String, String)}.
+     * Rows up to the header row are skipped.
+     *
+     * @param path        the path of excel file, xls or xlsx
+     * @param sheetName   the sheet name, null or empty for first sheet
+     * @param dateFormat  the format of date cells, default is yyyyMMdd
+     * @param sheetSchema the sheet schema, null to detect header
+     * @param consumer    the consumer of bound data
+     */
+    public void importData(String path, String sheetName, String dateFormat, SheetSchema sheetSchema, Consumer<? super T> consumer) {
+        long start = System.nanoTime();
+        RowBinder<T> binder = newRowBinder(dateFormat, sheetSchema, consumer);
+        TimedRowHandler handler = new TimedRowHandler(binder, metrics != ExcelMetrics.NOOP);
+        try {
+            SheetReader.open(new File(path)).read(sheetName, handler);
         } catch (IOException e) {
             e.printStackTrace();
             logger.debug(e.getMessage());
-        } catch (IllegalAccessException | InstantiationException | InvalidFormatException e) {
-            logger.debug(e.getMessage());
         }
+        if (binder.getHeaderRow() < 0) {
+            logger.warn("No annotated header is found in " + path);
+        }
+        metrics.phase(ExcelMetrics.Phase.BIND, binder.getBindNanos());
+        importCompleted(start, handler, binder.getRows());
+    }
 
-        return dataList;
+    /**
+     * Import data in batches. Rows are read on the calling thread and bound to
+     * data objects in batches by the executor if it is set, see
+     * {@link #setExecutor(Executor)}, so reading continues while rows are bound.
+     * Batches are delivered to consumer on the calling thread in row order
+     * unless {@link #setPreserveOrder(boolean)} is false. A few batches are in
+     * flight at most, the whole sheet is never held in memory.
+     *
+     * @param path       the path of excel file, xls or xlsx
+     * @param sheetName  the sheet name, null or empty for first sheet
+     * @param dateFormat the format of date cells, default is yyyyMMdd
+     * @param batchSize  the rows of one batch
+     * @param consumer   the consumer of bound batches
+     */
+    public void importData(String path, String sheetName, String dateFormat, int batchSize, Consumer<? super List<T>> consumer) {
+        RowBinder<T> binder = newRowBinder(dateFormat, null, null);
+        long start = System.nanoTime();
+        BatchRowBinder<T> batches = new BatchRowBinder<>(binder, executor, batchSize,
+                MAX_PENDING_BATCHES, preserveOrder, consumer);
+        batches.setMetrics(metrics);
+        TimedRowHandler handler = new TimedRowHandler(batches, metrics != ExcelMetrics.NOOP);
+        RuntimeException failure = null;
+        try {
+            SheetReader.open(new File(path)).read(sheetName, handler);
+        } catch (IOException e) {
+            failure = new ExcelException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (failure != null) {
+            // rows read before the failure are still delivered
+            try {
+                batches.finish();
+            } catch (RuntimeException suppressed) {
+                failure.addSuppressed(suppressed);
+            }
+            throw failure;
+        }
+        batches.finish();
+        if (binder.getHeaderRow() < 0) {
+            logger.warn("No annotated header is found in " + path);
+        }
+        importCompleted(start, handler, batches.getRows());
     }
 
     /**
-     * Export multiple data source within same sheet.
+     * Export multiple data source within same sheet. If the data can not be held
+     * in one sheet, the rest will be continued in new sheets.
      *
      * @param sheetName the sheet name to export
      * @param os        OutputStream for I/O
@@ -298,198 +867,36 @@ public class ExcelUtil<T> implements Serializable {
      * @return the boolean
      */
     public boolean exportDataList(String sheetName, OutputStream os, List<?>... dataList) {
-        HSSFWorkbook workbook = new HSSFWorkbook();
-
-        HSSFSheet sheet = workbook.createSheet(sheetName);
-        HSSFRow row;
-        HSSFCell headerCell;
-        HSSFCell contentCell;
-
-        // set style for normal cell
-        HSSFCellStyle headerCellStyle = workbook.createCellStyle();
-        headerCellStyle.setAlignment(HorizontalAlignment.CENTER);
-
-        // Header Font
-        HSSFFont headerFont = workbook.createFont();
-        headerFont.setFontName("Arail narrow");
-        headerFont.setColor(HSSFColor.BLACK.index);
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints(HEADER_FONT_HEIGHT);
-        headerCellStyle.setFont(headerFont);
-
-        // set style for content
-        HSSFCellStyle contentCellStyle = workbook.createCellStyle();
-
-        // Content Font
-        HSSFFont contentFont = workbook.createFont();
-        contentFont.setFontName("Arail narrow");
-        contentFont.setColor(HSSFFont.COLOR_NORMAL);
-        contentFont.setBold(false);
-        contentFont.setFontHeightInPoints(CONTENT_FONT_HEIGHT);
-        contentCellStyle.setFont(contentFont);
-
-        // Mark header style
-        HSSFCellStyle markHeaderCellStyle = workbook.createCellStyle();
-        markHeaderCellStyle.setAlignment(HorizontalAlignment.CENTER);
-
-        // Mark Header Font
-        HSSFFont markHeaderFont = workbook.createFont();
-        markHeaderFont.setFontName("Arail narrow");
-        markHeaderFont.setColor(HSSFColor.RED.index);
-        markHeaderFont.setBold(true);
-        markHeaderFont.setFontHeightInPoints(HEADER_FONT_HEIGHT);
-        markHeaderCellStyle.setFont(markHeaderFont);
-
-        // Mark content style
-        HSSFCellStyle markContentCellStyle = workbook.createCellStyle();
-        // Mark Content Font
-        HSSFFont markContentFont = workbook.createFont();
-        markContentFont.setFontName("Arail narrow");
-        markContentFont.setColor(HSSFFont.COLOR_RED);
-        markContentFont.setBold(true);
-        markContentFont.setFontHeightInPoints(CONTENT_FONT_HEIGHT);
-        markContentCellStyle.setFont(markContentFont);
-
-        int line = 0;
-        int first = 0;
-        try {
-            for (List list:dataList) {
-                if (list.size() == 0) {
+        long start = System.nanoTime();
+        CountingOutputStream out = new CountingOutputStream(os, false);
+        try (SheetWriter writer = createWriter(out)) {
+            int sheetNo = 0;
+            writer.newSheet(sheetName);
+
+            for (List<?> list : dataList) {
+                if (list.isEmpty()) {
                     continue;
                 }
 
-                Class clazz = list.get(0).getClass();
-                List<Field> validFields = getAnnotatedFields(clazz, true);
-
-                row = sheet.createRow(line);
-                line++;
-                // create headers
-                for (int i = 0; i < validFields.size(); i++) {
-                    Field field = validFields.get(i);
-                    ExcelAttribute attr = field.getAnnotation(ExcelAttribute.class);
-                    int col = i;
-                    // create columns
-                    headerCell = row.createCell(col);
-                    if (attr.isMark()) {
-                        headerCell.setCellStyle(markHeaderCellStyle);
-                    } else {
-                        headerCell.setCellStyle(headerCellStyle);
-                    }
-
-                    headerCell.setCellType(HSSFCell.CELL_TYPE_STRING);
-                    headerCell.setCellValue(attr.title());
-
-                    if (StringUtils.isNotBlank(attr.prompt())) {
-                        setHSSFPrompt(sheet, "", attr.prompt(), 1, 100, col, col);
-                    }
+                Class<?> clazz = list.get(0).getClass();
+                ColumnSchema schema = getColumnSchema(clazz, true);
 
-                    if (attr.combo().length > 0) {
-                        setHSSFValidation(sheet, attr.combo(), 1, 100, col, col);
+                Iterator<?> iterator = list.iterator();
+                do {
+                    // header, one row of content and summary at least
+                    if (writer.getRemainingRows() < 3) {
+                        sheetNo++;
+                        writer.newSheet(sheetName + sheetNo);
                     }
-                    sheet.autoSizeColumn(col);
-                }
-
-                contentFont = workbook.createFont();
-                first = line;
-                for (int i = 0; i < list.size(); i++) {
-                    row = sheet.createRow(line);
-                    line++;
-                    Object data = list.get(i);
-                    for (int j = 0; j < validFields.size(); j++) {
-                        Field field = validFields.get(j);
-                        field.setAccessible(true);
-                        ExcelAttribute attr = field.getAnnotation(ExcelAttribute.class);
-
-                        int col = j;
-
-                        if (attr.isExport()) {
-                            contentCell = row.createCell(col);
-                            if (attr.isMark()) {
-                                contentCell.setCellStyle(markContentCellStyle);
-                            } else {
-                                contentCell.setCellStyle(contentCellStyle);
-                            }
-
-                            try {
-                                String txtValue = null;
-                                if (field.get(data) instanceof Date) {
-                                    Date date = (Date) field.get(data);
-                                    SimpleDateFormat sdf = new SimpleDateFormat(attr.format());
-                                    txtValue = sdf.format(date);
-                                } else if(field.get(data) instanceof BigDecimal) {
-                                    BigDecimal big = (BigDecimal) field.get(data);
-                                    txtValue = big.setScale(2, BigDecimal.ROUND_HALF_EVEN).toString();
-                                } else {
-                                    txtValue = field.get(data) == null?"":field.get(data).toString();
-                                }
-
-                                Map<String, String> map = new HashMap<>();
-                                if (attr.translate().length > 0) {
-                                    Translate[] translates = attr.translate();
-                                    for (int ix = 0; ix < translates.length; ix++) {
-                                        map.put(translates[ix].key(), translates[ix].value());
-                                    }
-                                }
-
-                                Matcher matcher = P.matcher(txtValue);
-                                if (matcher.matches())
-                                {
-                                    if (map.containsKey(txtValue)) {
-                                        contentCell.setCellValue(Double.parseDouble(map.get(txtValue)));
-                                    } else {
-                                        contentCell.setCellValue(Double.parseDouble(txtValue));
-                                    }
-                                } else {
-                                    contentCell.setCellValue(map.containsKey(txtValue)?map.get(txtValue):txtValue);
-                                }
-
-                            } catch (IllegalAccessException e) {
-                                e.printStackTrace();
-                                logger.debug(e.getMessage());
-                            }
-                            sheet.autoSizeColumn(col);
-                        }
-                    }
-                }
-
-                // create summary row
-                HSSFRow sumRow = sheet.createRow(line);
-                line++;
-                for (int i = 0; i < validFields.size(); i++) {
-                    Field field  = validFields.get(i);
-                    ExcelAttribute attr = field.getAnnotation(ExcelAttribute.class);
-                    if (attr.isSum()) {
-                        int col = i;
-                        BigDecimal sum = BigDecimal.ZERO;
-                        int lastRowNum = sheet.getLastRowNum();
-                        for (int j = first; j < lastRowNum; j++) {
-                            HSSFRow idxRow = sheet.getRow(j);
-                            if (idxRow != null) {
-                                HSSFCell idxCell = idxRow.getCell(col);
-                                if (idxCell != null &&
-                                        idxCell.getCellType() == HSSFCell.CELL_TYPE_STRING &&
-                                        NumberUtils.isNumber(idxCell.getStringCellValue())) {
-                                    sum = sum.add(BigDecimal.valueOf(Double.valueOf(idxCell.getStringCellValue())));
-                                }
-                            }
-                        }
-                        HSSFCell sumCell = sumRow.createCell(col);
-                        sumCell.setCellValue(new HSSFRichTextString("合计: " + sum.setScale(2, BigDecimal.ROUND_HALF_EVEN).toString()));
-                        sheet.autoSizeColumn(col);
-                    }
-                }
-                line=line+delimiter;
+                    writer.addHeaders(schema, null);
+                    writer.addContent(schema, iterator, writer.getRemainingRows() - 1, null);
+                    writer.addSummary(schema);
+                    writer.skipRows(delimiter);
+                } while (iterator.hasNext());
             }
-
-            os.flush();
-            workbook.write(os);
-            os.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new ExcelException(e.getMessage());
+            writer.finish();
         }
-
+        metrics.exportCompleted(out.getCount(), System.nanoTime() - start);
         return true;
     }
 
@@ -500,14 +907,7 @@ public class ExcelUtil<T> implements Serializable {
      * @return int value according to A, B, C...
      */
     public static int getExcelCol(String col) {
-        col = col.toUpperCase();
-        int count = -1;
-        char[] cs = col.toCharArray();
-        for (int i = 0; i < cs.length; i++) {
-            count += (cs[i] - 64) * Math.pow(26, cs.length - 1 - i);
-        }
-
-        return count;
+        return ColumnSchema.getExcelCol(col);
     }
 
     /**
@@ -523,11 +923,30 @@ public class ExcelUtil<T> implements Serializable {
      * @return the hssf prompt
      */
     public static HSSFSheet setHSSFPrompt(HSSFSheet sheet, String promptTitle, String promptContent, int firstRow, int endRow, int firstCol, int endCol) {
-        DVConstraint constraint = DVConstraint.createCustomFormulaConstraint("DD1");
+        setPrompt(sheet, promptTitle, promptContent, firstRow, endRow, firstCol, endCol);
+        return sheet;
+    }
+
+    /**
+     * Sets prompt for sheet of any excel type.
+     *
+     * @param sheet         the sheet
+     * @param promptTitle   the prompt title
+     * @param promptContent the prompt content
+     * @param firstRow      the first row
+     * @param endRow        the end row
+     * @param firstCol      the first col
+     * @param endCol        the end col
+     * @return the sheet
+     */
+    public static Sheet setPrompt(Sheet sheet, String promptTitle, String promptContent, int firstRow, int endRow, int firstCol, int endCol) {
+        DataValidationHelper helper = sheet.getDataValidationHelper();
+        DataValidationConstraint constraint = helper.createCustomConstraint("DD1");
 
         CellRangeAddressList regions = new CellRangeAddressList(firstRow, endRow, firstCol, endCol);
-        HSSFDataValidation validation = new HSSFDataValidation(regions, constraint);
+        DataValidation validation = helper.createValidation(constraint, regions);
         validation.createPromptBox(promptTitle, promptContent);
+        validation.setShowPromptBox(true);
         sheet.addValidationData(validation);
         return sheet;
     }
@@ -544,131 +963,194 @@ public class ExcelUtil<T> implements Serializable {
      * @return the hssf validation
      */
     public static HSSFSheet setHSSFValidation(HSSFSheet sheet, String[] txtList, int firstRow, int endRow, int firstCol, int endCol) {
-        DVConstraint constraint = DVConstraint.createExplicitListConstraint(txtList);
+        setValidation(sheet, txtList, firstRow, endRow, firstCol, endCol);
+        return sheet;
+    }
+
+    /**
+     * Sets validation for sheet of any excel type.
+     *
+     * @param sheet    the sheet
+     * @param txtList  the txt list
+     * @param firstRow the first row
+     * @param endRow   the end row
+     * @param firstCol the first col
+     * @param endCol   the end col
+     * @return the sheet
+     */
+    public static Sheet setValidation(Sheet sheet, String[] txtList, int firstRow, int endRow, int firstCol, int endCol) {
+        DataValidationHelper helper = sheet.getDataValidationHelper();
+        DataValidationConstraint constraint = helper.createExplicitListConstraint(txtList);
         CellRangeAddressList regions = new CellRangeAddressList(firstRow, endRow, firstCol, endCol);
-        HSSFDataValidation validationList = new HSSFDataValidation(regions, constraint);
+        DataValidation validationList = helper.createValidation(constraint, regions);
+        if (validationList instanceof XSSFDataValidation) {
+            // xssf inverts the meaning of this flag, true shows the drop down arrow
+            validationList.setSuppressDropDownArrow(true);
+            validationList.setShowErrorBox(true);
+        }
         sheet.addValidationData(validationList);
         return sheet;
     }
 
-    private Optional<Field[]> getFieldsOfSuperClass(Class<T> clz) {
-        Optional<Field[]> fields = Optional.empty();
-        if (clz.getClass().getSuperclass() != null) {
-            fields = Optional.of(clz.getClass().getSuperclass().getDeclaredFields());
-        }
-        return fields;
+    /**
+     * Gets the compiled column schema of data class with current data view.
+     *
+     * @param superFlag identifies if to include the annotated fields of super class
+     * @return the column schema
+     */
+    public ColumnSchema getColumnSchema(boolean superFlag) {
+        return getColumnSchema(cls, superFlag);
     }
 
-    private List<Field> getAnnotatedFields(boolean superFlag) {
-        return getAnnotatedFields(cls, superFlag);
+    private ColumnSchema getColumnSchema(Class<?> clz, boolean superFlag) {
+        long start = System.nanoTime();
+        ColumnSchema schema = ColumnSchema.of(clz, view, superFlag);
+        metrics.phase(ExcelMetrics.Phase.SCHEMA, System.nanoTime() - start);
+        return schema;
     }
 
-    private List<Field> getAnnotatedFields(Class<?> clz, boolean superFlag) {
-        List<Field> fields = new LinkedList<>();
-        List<Field> annotatedFields = new LinkedList<>();
-        if (superFlag && clz.getSuperclass() != null) {
-            fields.addAll(Arrays.asList(clz.getSuperclass().getDeclaredFields()));
+    private RowBinder<T> newRowBinder(String dateFormat, SheetSchema sheetSchema, Consumer<? super T> consumer) {
+        RowBinder<T> binder = new RowBinder<>(cls, getColumnSchema(true), dateFormat, consumer);
+        binder.setScanRows(headerScanRows);
+        binder.setTimed(metrics != ExcelMetrics.NOOP);
+        if (sheetSchema != null) {
+            binder.setSheetSchema(sheetSchema);
         }
-        fields.addAll(Arrays.asList(clz.getDeclaredFields()));
-
-        fields.stream()
-                .filter(f->f.isAnnotationPresent(ExcelAttribute.class))
-                .forEach(f->{
-                    boolean match = false;
-                    ExcelAttribute attr = f.getAnnotation(ExcelAttribute.class);
-                    if (this.view == null) {
-                        match = true;
-                    } else {
-                        for (Class<?> v : attr.groups()) {
-                            if (v.equals(this.view)) {
-                                match = true;
-                                break;
-                            }
-                        }
-                    }
-                    if (match) {
-                        annotatedFields.add(f);
-                    }
-                });
+        return binder;
+    }
 
-        sortFields(annotatedFields);
-        return annotatedFields;
+    private Workbook createWorkbook() {
+        return excelType.createWorkbook(windowSize);
+    }
+
+    private SheetWriter createWriter(OutputStream os) {
+        switch (excelType) {
+            case XLSX_DIRECT:
+                return new XlsxDirectWriter(os, widthSampleRows, summaryFormula, codecs, sharedStrings)
+                        .setMetrics(metrics);
+            case CSV:
+                return new DelimitedTextWriter(os, ',', charset, bom, gzip, codecs).setMetrics(metrics);
+            case TSV:
+                return new DelimitedTextWriter(os, '\t', charset, bom, gzip, codecs).setMetrics(metrics);
+            default:
+                StylePool styles = new StylePool(createWorkbook());
+                return new PoiSheetWriter(styles.getWorkbook(), os, name -> newSheet(styles, name))
+                        .setMetrics(metrics);
+        }
     }
 
     /**
-     * Some of the fields may be annotated with column attribute, to eliminate
-     * the messy of columns of exportation, fields should be sorted correctly
-     * before exportation.
-     * @param fields the annotated fields to sort
+     * Start the workers which convert rows of iterator, see {@link #setPipelineWorkers(int)}.
+     *
+     * @return the pipeline, null if rows are converted by the writing thread
      */
-    private void sortFields(List<Field> fields) {
-        List<Field> fieldsNoColumn = new LinkedList<>();
-        List<Field> fieldsWithColumn = new LinkedList<>();
-        // store fields into dedicated lists, then free slots
-        for (int i = 0; i < fields.size(); i++) {
-            Field field = fields.get(i);
-            if (field.getAnnotation(ExcelAttribute.class).column().isEmpty()) {
-                fieldsNoColumn.add(field);
-            } else {
-                fieldsWithColumn.add(field);
-            }
-            fields.set(i, null);
+    private RowPipeline pipeline(Iterator<?> iterator, ColumnSchema schema, String dateFmt) {
+        if (pipelineWorkers <= 0) {
+            return null;
+        }
+        RowPipeline pipeline = new RowPipeline(iterator, schema, dateFmt, codecs, pipelineWorkers);
+        try {
+            return pipeline.start(pipelineWorkers, executor);
+        } catch (RuntimeException e) {
+            pipeline.close();
+            throw e;
         }
+    }
 
-        // sort fields with column
-        fieldsWithColumn.sort((o1, o2) ->
-                o1.getAnnotation(ExcelAttribute.class).column()
-                .compareToIgnoreCase(o2.getAnnotation(ExcelAttribute.class).column()));
-
-        // write back sorted column fields
-        for (int i = 0; i < fieldsWithColumn.size(); i++) {
-            Field field = fieldsWithColumn.get(i);
-            int col = getExcelCol(field.getAnnotation(ExcelAttribute.class).column());
-            if (col < fields.size() && fields.get(col) == null) {
-                fields.set(col, field);
-                fieldsWithColumn.set(i, null);
-            }
+    /**
+     * Identifies if sheets are filled by the executor. Only sheets of streaming
+     * workbook are filled in parallel, they are written to their own temporary
+     * files and do not share strings.
+     */
+    private boolean isParallel() {
+        return executor != null && excelType == ExcelType.XLSX;
+    }
+
+    private ExcelSheet newSheet(StylePool styles, String sheetName) {
+        Workbook workbook = styles.getWorkbook();
+        if (summaryFormula) {
+            workbook.setForceFormulaRecalculation(true);
         }
-        // remove all nulls in fieldsWithColumn list
-        fieldsWithColumn = fieldsWithColumn
-                .stream()
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-
-        // write back non-columned fields
-        int j = 0;
-        for (int i = 0; j < fieldsNoColumn.size() && i < fields.size(); i++) {
-            if (fields.get(i) == null) {
-                fields.set(i, fieldsNoColumn.get(j));
-                fieldsNoColumn.set(j, null);
-                j++;
-            }
+        metrics.sheetCreated();
+        return new ExcelSheet(workbook.createSheet(sheetName))
+                .setWorkbook(workbook)
+                .setStylePool(styles)
+                .setWidthSampleRows(widthSampleRows)
+                .setSummaryFormula(summaryFormula)
+                .setCodecs(codecs)
+                .setMetrics(metrics)
+                .initStylesAndFonts();
+    }
+
+    /**
+     * Add headers of sheet on calling thread, and returns the part which fills
+     * contents, summary and column widths of the sheet.
+     */
+    private Runnable sheetPart(ExcelSheet sheet, ColumnSchema schema, List<?> rows, String dateFmt) {
+        sheet.addHeaders(schema).prepareStyles(schema, dateFmt);
+        return () -> sheet.addContent(schema, rows.iterator(), rows.size(), dateFmt)
+                .addSummary(schema)
+                .autoSizeColumns();
+    }
+
+    /**
+     * Fill sheets with the executor, see {@link #isParallel()}.
+     */
+    private void fillSheets(List<Runnable> parts) {
+        if (parts.size() < 2) {
+            parts.forEach(Runnable::run);
+            return;
         }
 
-        // append remains in columned fields list to fields
-        // the remains are the columns that have duplicate
-        // columns in fields or column is too large to store
-        int k = 0;
-        for (int i = 0; k < fieldsWithColumn.size() && i < fields.size(); i++) {
-            if (fields.get(i) == null) {
-                Field field = fieldsWithColumn.get(k);
-                fields.set(i, field);
-                fieldsWithColumn.set(k, null);
-                k++;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[parts.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(parts.get(i), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new ExcelException(cause.getMessage(), cause);
         }
     }
 
-    private void flushWorkbook(HSSFWorkbook workbook, OutputStream os) throws RuntimeException {
-        try {
-            os.flush();
-            workbook.write(os);
-            os.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            logger.info(e.getMessage());
-            throw new ExcelException(e.getMessage());
-        }
+    /**
+     * Report the parse time and the rows of importation, the parse time is the
+     * time of reading thread outside of row handler.
+     */
+    private void importCompleted(long start, TimedRowHandler handler, long rows) {
+        long nanos = System.nanoTime() - start;
+        metrics.phase(ExcelMetrics.Phase.PARSE, nanos - handler.nanos);
+        metrics.importCompleted(rows, nanos);
     }
 
+    /**
+     * Sums the time spent in row handler, rows are timed only if metrics is set.
+     */
+    private static final class TimedRowHandler implements RowHandler {
+        private final RowHandler handler;
+        private final boolean timed;
+        private long nanos;
+
+        private TimedRowHandler(RowHandler handler, boolean timed) {
+            this.handler = handler;
+            this.timed = timed;
+        }
+
+        @Override
+        public boolean handle(RawRow row) {
+            if (!timed) {
+                return handler.handle(row);
+            }
+            long start = System.nanoTime();
+            try {
+                return handler.handle(row);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * One file of a rolling exportation, see
+ * {@link ExcelUtil#exportRolling(java.util.Iterator, String, int, long, java.util.zip.ZipOutputStream, String)}.
+ *
+ * @author Chris
+ */
+public final class ExportPart {
+
+    private final String name;
+    private final long rows;
+    private final long bytes;
+
+    /**
+     * Instantiates a new export part.
+     *
+     * @param name  the file name
+     * @param rows  the exported data rows
+     * @param bytes the bytes of file
+     */
+    ExportPart(String name, long rows, long bytes) {
+        this.name = name;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Gets file name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets exported data rows, header and summary rows are not counted.
+     *
+     * @return the rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets bytes of file.
+     *
+     * @return the bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportPart{name=" + name + ", rows=" + rows + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,61 @@
+package com.allinmoney.platform.excel;
+
+import java.time.Duration;
+
+/**
+ * The result of one exportation by {@link AsyncExporter}.
+ *
+ * @author Chris
+ */
+public final class ExportResult {
+
+    private final long rows;
+    private final long bytes;
+    private final Duration duration;
+
+    /**
+     * Instantiates a new export result.
+     *
+     * @param rows     the exported data rows
+     * @param bytes    the bytes written to output stream
+     * @param duration the duration of exportation
+     */
+    ExportResult(long rows, long bytes, Duration duration) {
+        this.rows = rows;
+        this.bytes = bytes;
+        this.duration = duration;
+    }
+
+    /**
+     * Gets exported data rows, header and summary rows are not counted.
+     *
+     * @return the rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets bytes written to output stream.
+     *
+     * @return the bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets duration from start of exportation to the last byte written, the
+     * time waiting in queue of executor is not included.
+     *
+     * @return the duration
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportResult{rows=" + rows + ", bytes=" + bytes + ", duration=" + duration + "}";
+    }
+}
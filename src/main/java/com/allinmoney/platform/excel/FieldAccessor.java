@@ -0,0 +1,527 @@
+package com.allinmoney.platform.excel;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Reads and writes one field of data objects. The field is bound to method
+ * handles once, so there is no reflective access per call. Fields of type int,
+ * long, double and boolean have primitive paths which never box the value.
+ * Accessors generated by {@link ExcelAttributeProcessor} call the getters and
+ * setters of data class instead.
+ *
+ * @author Chris
+ */
+public abstract class FieldAccessor {
+
+    private final Class<?> type;
+
+    /**
+     * Instantiates a new Field accessor.
+     *
+     * @param type the value type
+     */
+    protected FieldAccessor(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * Bind accessor to given field.
+     *
+     * @param field the field
+     * @return the field accessor
+     */
+    public static FieldAccessor of(Field field) {
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle getter;
+        MethodHandle setter = null;
+        try {
+            getter = lookup.unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            throw new ExcelException("Can not access field " + field.getName(), e);
+        }
+        try {
+            setter = lookup.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            // final field, read only
+        }
+
+        Class<?> type = field.getType();
+        if (type == int.class) {
+            return new IntAccessor(getter, setter);
+        } else if (type == long.class) {
+            return new LongAccessor(getter, setter);
+        } else if (type == double.class) {
+            return new DoubleAccessor(getter, setter);
+        } else if (type == boolean.class) {
+            return new BooleanAccessor(getter, setter);
+        }
+        return new ObjectAccessor(type, getter, setter);
+    }
+
+    /**
+     * Gets type of value.
+     *
+     * @return the type
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Identifies if the value is primitive.
+     *
+     * @return the boolean
+     */
+    public boolean isPrimitive() {
+        return type.isPrimitive();
+    }
+
+    /**
+     * Gets value, primitive value is boxed.
+     *
+     * @param target the data object
+     * @return the value
+     */
+    public abstract Object get(Object target);
+
+    /**
+     * Sets value, the value is unboxed for primitive field.
+     *
+     * @param target the data object
+     * @param value  the value
+     */
+    public abstract void set(Object target, Object value);
+
+    /**
+     * Gets int value.
+     *
+     * @param target the data object
+     * @return the int
+     */
+    public int getInt(Object target) {
+        return ((Number) get(target)).intValue();
+    }
+
+    /**
+     * Gets long value.
+     *
+     * @param target the data object
+     * @return the long
+     */
+    public long getLong(Object target) {
+        return ((Number) get(target)).longValue();
+    }
+
+    /**
+     * Gets double value.
+     *
+     * @param target the data object
+     * @return the double
+     */
+    public double getDouble(Object target) {
+        return ((Number) get(target)).doubleValue();
+    }
+
+    /**
+     * Gets boolean value.
+     *
+     * @param target the data object
+     * @return the boolean
+     */
+    public boolean getBoolean(Object target) {
+        return (Boolean) get(target);
+    }
+
+    /**
+     * Sets int value.
+     *
+     * @param target the data object
+     * @param value  the value
+     */
+    public void setInt(Object target, int value) {
+        set(target, value);
+    }
+
+    /**
+     * Sets long value.
+     *
+     * @param target the data object
+     * @param value  the value
+     */
+    public void setLong(Object target, long value) {
+        set(target, value);
+    }
+
+    /**
+     * Sets double value.
+     *
+     * @param target the data object
+     * @param value  the value
+     */
+    public void setDouble(Object target, double value) {
+        set(target, value);
+    }
+
+    /**
+     * Sets boolean value.
+     *
+     * @param target the data object
+     * @param value  the value
+     */
+    public void setBoolean(Object target, boolean value) {
+        set(target, value);
+    }
+
+    private static RuntimeException failure(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new ExcelException(e.toString(), e);
+    }
+
+    private static MethodHandle adapt(MethodHandle handle, MethodType type) {
+        return handle == null ? null : handle.asType(type);
+    }
+
+    private static final class ObjectAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private ObjectAccessor(Class<?> type, MethodHandle getter, MethodHandle setter) {
+            super(type);
+            this.getter = adapt(getter, MethodType.methodType(Object.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        @Override
+        public Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            if (setter == null) {
+                throw new ExcelException("Field of " + getType().getName() + " is read only");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+    }
+
+    /**
+     * Accessor of int field, subclasses read and write the primitive value,
+     * the other values are converted.
+     */
+    public abstract static class OfInt extends FieldAccessor {
+
+        /**
+         * Instantiates a new int accessor.
+         */
+        protected OfInt() {
+            super(int.class);
+        }
+
+        @Override
+        public abstract int getInt(Object target);
+
+        @Override
+        public abstract void setInt(Object target, int value);
+
+        @Override
+        public Object get(Object target) {
+            return getInt(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            setInt(target, ((Number) value).intValue());
+        }
+
+        @Override
+        public long getLong(Object target) {
+            return getInt(target);
+        }
+
+        @Override
+        public double getDouble(Object target) {
+            return getInt(target);
+        }
+
+        @Override
+        public void setLong(Object target, long value) {
+            setInt(target, (int) value);
+        }
+
+        @Override
+        public void setDouble(Object target, double value) {
+            setInt(target, (int) value);
+        }
+    }
+
+    /**
+     * Accessor of long field, subclasses read and write the primitive value,
+     * the other values are converted.
+     */
+    public abstract static class OfLong extends FieldAccessor {
+
+        /**
+         * Instantiates a new long accessor.
+         */
+        protected OfLong() {
+            super(long.class);
+        }
+
+        @Override
+        public abstract long getLong(Object target);
+
+        @Override
+        public abstract void setLong(Object target, long value);
+
+        @Override
+        public Object get(Object target) {
+            return getLong(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            setLong(target, ((Number) value).longValue());
+        }
+
+        @Override
+        public int getInt(Object target) {
+            return (int) getLong(target);
+        }
+
+        @Override
+        public double getDouble(Object target) {
+            return getLong(target);
+        }
+
+        @Override
+        public void setInt(Object target, int value) {
+            setLong(target, value);
+        }
+
+        @Override
+        public void setDouble(Object target, double value) {
+            setLong(target, (long) value);
+        }
+    }
+
+    /**
+     * Accessor of double field, subclasses read and write the primitive value,
+     * the other values are converted.
+     */
+    public abstract static class OfDouble extends FieldAccessor {
+
+        /**
+         * Instantiates a new double accessor.
+         */
+        protected OfDouble() {
+            super(double.class);
+        }
+
+        @Override
+        public abstract double getDouble(Object target);
+
+        @Override
+        public abstract void setDouble(Object target, double value);
+
+        @Override
+        public Object get(Object target) {
+            return getDouble(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            setDouble(target, ((Number) value).doubleValue());
+        }
+
+        @Override
+        public int getInt(Object target) {
+            return (int) getDouble(target);
+        }
+
+        @Override
+        public long getLong(Object target) {
+            return (long) getDouble(target);
+        }
+
+        @Override
+        public void setInt(Object target, int value) {
+            setDouble(target, value);
+        }
+
+        @Override
+        public void setLong(Object target, long value) {
+            setDouble(target, value);
+        }
+    }
+
+    /**
+     * Accessor of boolean field, subclasses read and write the primitive value.
+     */
+    public abstract static class OfBoolean extends FieldAccessor {
+
+        /**
+         * Instantiates a new boolean accessor.
+         */
+        protected OfBoolean() {
+            super(boolean.class);
+        }
+
+        @Override
+        public abstract boolean getBoolean(Object target);
+
+        @Override
+        public abstract void setBoolean(Object target, boolean value);
+
+        @Override
+        public Object get(Object target) {
+            return getBoolean(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            setBoolean(target, (Boolean) value);
+        }
+    }
+
+    private static final class IntAccessor extends OfInt {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private IntAccessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = adapt(getter, MethodType.methodType(int.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, int.class));
+        }
+
+        @Override
+        public int getInt(Object target) {
+            try {
+                return (int) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void setInt(Object target, int value) {
+            if (setter == null) {
+                throw new ExcelException("Field of int is read only");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+    }
+
+    private static final class LongAccessor extends OfLong {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private LongAccessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = adapt(getter, MethodType.methodType(long.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, long.class));
+        }
+
+        @Override
+        public long getLong(Object target) {
+            try {
+                return (long) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void setLong(Object target, long value) {
+            if (setter == null) {
+                throw new ExcelException("Field of long is read only");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+    }
+
+    private static final class DoubleAccessor extends OfDouble {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private DoubleAccessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = adapt(getter, MethodType.methodType(double.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, double.class));
+        }
+
+        @Override
+        public double getDouble(Object target) {
+            try {
+                return (double) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void setDouble(Object target, double value) {
+            if (setter == null) {
+                throw new ExcelException("Field of double is read only");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+    }
+
+    private static final class BooleanAccessor extends OfBoolean {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private BooleanAccessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = adapt(getter, MethodType.methodType(boolean.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, boolean.class));
+        }
+
+        @Override
+        public boolean getBoolean(Object target) {
+            try {
+                return (boolean) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void setBoolean(Object target, boolean value) {
+            if (setter == null) {
+                throw new ExcelException("Field of boolean is read only");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+    }
+}
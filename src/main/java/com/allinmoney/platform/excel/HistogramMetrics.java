@@ -0,0 +1,258 @@
+package com.allinmoney.platform.excel;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps metrics in memory, the times of each phase are counted in histogram
+ * of power of two buckets. Recording takes a few atomic additions and
+ * allocates nothing, {@link #snapshot()} gives flat values for scraping.
+ *
+ * @author Chris
+ */
+public class HistogramMetrics implements ExcelMetrics {
+
+    private static final int BUCKETS = 64;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder sheets = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder exportNanos = new LongAdder();
+    private final LongAdder importRows = new LongAdder();
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder importNanos = new LongAdder();
+    private final LongAccumulator peakRowsInMemory = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Instantiates a new histogram metrics.
+     */
+    public HistogramMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void rowsWritten(int rows) {
+        this.rows.add(rows);
+    }
+
+    @Override
+    public void sheetCreated() {
+        sheets.increment();
+    }
+
+    @Override
+    public void rowsInMemory(int rows) {
+        peakRowsInMemory.accumulate(rows);
+    }
+
+    @Override
+    public void exportCompleted(long bytes, long nanos) {
+        this.bytes.add(bytes);
+        exports.increment();
+        exportNanos.add(nanos);
+    }
+
+    @Override
+    public void importCompleted(long rows, long nanos) {
+        importRows.add(rows);
+        imports.increment();
+        importNanos.add(nanos);
+    }
+
+    /**
+     * Gets count of recorded times of phase.
+     *
+     * @param phase the phase
+     * @return the count
+     */
+    public long getCount(Phase phase) {
+        return phases[phase.ordinal()].count.sum();
+    }
+
+    /**
+     * Gets total time of phase.
+     *
+     * @param phase the phase
+     * @return the nanoseconds
+     */
+    public long getTotalNanos(Phase phase) {
+        return phases[phase.ordinal()].total.sum();
+    }
+
+    /**
+     * Gets max time of phase.
+     *
+     * @param phase the phase
+     * @return the nanoseconds
+     */
+    public long getMaxNanos(Phase phase) {
+        return phases[phase.ordinal()].max.get();
+    }
+
+    /**
+     * Gets percentile of times of phase, it is the upper bound of the bucket
+     * which the percentile falls in, so it is at most twice the exact value.
+     *
+     * @param phase    the phase
+     * @param quantile the quantile between 0 and 1, like 0.99
+     * @return the nanoseconds, 0 if nothing is recorded
+     */
+    public long getPercentileNanos(Phase phase, double quantile) {
+        return phases[phase.ordinal()].percentile(quantile);
+    }
+
+    /**
+     * Gets exported content rows.
+     *
+     * @return the rows
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * Gets created sheets.
+     *
+     * @return the sheets
+     */
+    public long getSheets() {
+        return sheets.sum();
+    }
+
+    /**
+     * Gets bytes written by exportations.
+     *
+     * @return the bytes
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Gets completed exportations.
+     *
+     * @return the exports
+     */
+    public long getExports() {
+        return exports.sum();
+    }
+
+    /**
+     * Gets exported rows per second of exportation time.
+     *
+     * @return the rows per second
+     */
+    public double getRowsPerSecond() {
+        long nanos = exportNanos.sum();
+        return nanos == 0 ? 0 : getRows() * NANOS_PER_SECOND / nanos;
+    }
+
+    /**
+     * Gets imported rows.
+     *
+     * @return the rows
+     */
+    public long getImportRows() {
+        return importRows.sum();
+    }
+
+    /**
+     * Gets imported rows per second of importation time.
+     *
+     * @return the rows per second
+     */
+    public double getImportRowsPerSecond() {
+        long nanos = importNanos.sum();
+        return nanos == 0 ? 0 : getImportRows() * NANOS_PER_SECOND / nanos;
+    }
+
+    /**
+     * Gets the most rows held in memory.
+     *
+     * @return the rows
+     */
+    public long getPeakRowsInMemory() {
+        return peakRowsInMemory.get();
+    }
+
+    /**
+     * Gets all values by names like {@code phase.content.p99}, times are in
+     * nanoseconds.
+     *
+     * @return the values
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            String prefix = "phase." + phase.name().toLowerCase(Locale.ROOT) + ".";
+            values.put(prefix + "count", getCount(phase));
+            values.put(prefix + "total", getTotalNanos(phase));
+            values.put(prefix + "max", getMaxNanos(phase));
+            values.put(prefix + "p50", getPercentileNanos(phase, 0.5));
+            values.put(prefix + "p99", getPercentileNanos(phase, 0.99));
+        }
+        values.put("export.count", getExports());
+        values.put("export.rows", getRows());
+        values.put("export.sheets", getSheets());
+        values.put("export.bytes", getBytes());
+        values.put("export.rows_per_second", getRowsPerSecond());
+        values.put("import.count", imports.sum());
+        values.put("import.rows", getImportRows());
+        values.put("import.rows_per_second", getImportRowsPerSecond());
+        values.put("memory.peak_rows", getPeakRowsInMemory());
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Times in buckets of power of two, bucket i counts times below 2^(i+1).
+     */
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(value | 1));
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        private long percentile(double quantile) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : Math.min(1L << (i + 1), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.allinmoney.platform.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Receives the files of a rolling exportation, see
+ * {@link ExcelUtil#exportRolling(java.util.Iterator, String, int, long, ZipOutputStream, String)}.
+ * Each part is completed before the next one is opened, the manifest is
+ * written after the last part.
+ *
+ * @author Chris
+ */
+abstract class PartOutput {
+
+    /**
+     * The name of manifest, one line of file, rows and bytes for each part.
+     */
+    static final String MANIFEST = "manifest.csv";
+
+    /**
+     * Open the stream of a part, it is closed by {@link #close(String)}.
+     *
+     * @param name the file name
+     * @return the output stream
+     * @throws IOException the io exception
+     */
+    abstract OutputStream open(String name) throws IOException;
+
+    /**
+     * Complete the part which is written.
+     *
+     * @param name the file name
+     * @throws IOException the io exception
+     */
+    abstract void close(String name) throws IOException;
+
+    /**
+     * Discard the part which failed, nothing is discarded by default.
+     *
+     * @param name the file name
+     * @throws IOException the io exception
+     */
+    void abort(String name) throws IOException {
+    }
+
+    /**
+     * Write manifest of the parts.
+     *
+     * @param parts the parts
+     * @throws IOException the io exception
+     */
+    void finish(List<ExportPart> parts) throws IOException {
+        StringBuilder manifest = new StringBuilder("file,rows,bytes\r\n");
+        for (ExportPart part : parts) {
+            manifest.append(part.getName()).append(',').append(part.getRows())
+                    .append(',').append(part.getBytes()).append("\r\n");
+        }
+        open(MANIFEST).write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+        close(MANIFEST);
+    }
+
+    /**
+     * Parts written as entries of zip stream, the entries are flushed when
+     * they are completed. The zip stream is left open.
+     *
+     * @param zip the zip stream
+     * @return the part output
+     */
+    static PartOutput of(ZipOutputStream zip) {
+        return new PartOutput() {
+            @Override
+            OutputStream open(String name) throws IOException {
+                zip.putNextEntry(new ZipEntry(name));
+                return zip;
+            }
+
+            @Override
+            void close(String name) throws IOException {
+                zip.closeEntry();
+                zip.flush();
+            }
+        };
+    }
+
+    /**
+     * Parts written as files of directory. A part is written to a temporary
+     * file and renamed when it is completed, so readers of directory never
+     * see a partial file. The temporary file of a failed part is deleted.
+     *
+     * @param directory the directory, it is created if absent
+     * @return the part output
+     */
+    static PartOutput of(Path directory) {
+        return new PartOutput() {
+            private OutputStream current;
+
+            @Override
+            OutputStream open(String name) throws IOException {
+                Files.createDirectories(directory);
+                current = new BufferedOutputStream(Files.newOutputStream(directory.resolve(name + ".part")));
+                return current;
+            }
+
+            @Override
+            void close(String name) throws IOException {
+                current.close();
+                Files.move(directory.resolve(name + ".part"), directory.resolve(name),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            @Override
+            void abort(String name) throws IOException {
+                try {
+                    current.close();
+                } finally {
+                    Files.deleteIfExists(directory.resolve(name + ".part"));
+                }
+            }
+        };
+    }
+}
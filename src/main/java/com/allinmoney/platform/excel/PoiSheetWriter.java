@@ -0,0 +1,127 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * Writes sheets with the POI workbook of {@link ExcelType#XLS} or
+ * {@link ExcelType#XLSX}.
+ *
+ * @author Chris
+ */
+final class PoiSheetWriter extends SheetWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoiSheetWriter.class);
+
+    private final Workbook workbook;
+    private final OutputStream os;
+    private final Function<String, ExcelSheet> sheets;
+    private ExcelSheet sheet;
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param workbook the workbook
+     * @param os       the output stream
+     * @param sheets   creates styled sheet of the name in workbook
+     */
+    PoiSheetWriter(Workbook workbook, OutputStream os, Function<String, ExcelSheet> sheets) {
+        this.workbook = workbook;
+        this.os = os;
+        this.sheets = sheets;
+    }
+
+    @Override
+    void newSheet(String name) {
+        if (sheet != null) {
+            sheet.autoSizeColumns();
+        }
+        sheet = sheets.apply(name);
+    }
+
+    @Override
+    void addHeaders(ColumnSchema schema, String dateFmt) {
+        sheet.addHeaders(schema).prepareStyles(schema, dateFmt);
+    }
+
+    @Override
+    int addContent(ColumnSchema schema, Iterator<?> iterator, int maxRows, String dateFmt) {
+        int remaining = sheet.getRemainingRows();
+        sheet.addContent(schema, iterator, maxRows, dateFmt);
+        return remaining - sheet.getRemainingRows();
+    }
+
+    @Override
+    void addSummary(ColumnSchema schema) {
+        sheet.addSummary(schema);
+    }
+
+    @Override
+    void skipRows(int rows) {
+        sheet.skipRows(rows);
+    }
+
+    @Override
+    int getRemainingRows() {
+        return sheet.getRemainingRows();
+    }
+
+    @Override
+    int getMaxDataRows() {
+        return ExcelSheet.getMaxDataRows(workbook);
+    }
+
+    @Override
+    void finish() {
+        if (sheet != null) {
+            sheet.autoSizeColumns();
+        }
+        write(workbook, os, metrics);
+    }
+
+    @Override
+    public void close() {
+        dispose(workbook);
+    }
+
+    /**
+     * Write workbook to output stream and close the stream, the workbook
+     * should be disposed at last.
+     *
+     * @param workbook the workbook
+     * @param os       the output stream
+     * @param metrics  the metrics which time serialization
+     */
+    static void write(Workbook workbook, OutputStream os, ExcelMetrics metrics) {
+        long start = System.nanoTime();
+        try {
+            os.flush();
+            workbook.write(os);
+            os.close();
+            metrics.phase(ExcelMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+        } catch (IOException e) {
+            logger.info(e.getMessage());
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove temporary files of streaming workbook, it is safe to call more
+     * than once.
+     *
+     * @param workbook the workbook
+     */
+    static void dispose(Workbook workbook) {
+        if (workbook instanceof SXSSFWorkbook) {
+            // delete temporary files of flushed rows
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+import java.util.Arrays;
+
+/**
+ * One row read by a streaming sheet reader. Cells keep their parsed type, numbers
+ * are kept as primitive doubles. Readers reuse one instance for all rows, use
+ * {@link #copy()} to keep a row after it is handled.
+ *
+ * @author Chris
+ */
+public final class RawRow {
+
+    private static final int INITIAL_COLUMNS = 16;
+
+    private int rowNum;
+    private int lastColumn;
+    private CellType[] types;
+    private double[] numbers;
+    private String[] strings;
+    private boolean[] dates;
+
+    /**
+     * Instantiates a new Raw row.
+     */
+    public RawRow() {
+        this(INITIAL_COLUMNS);
+    }
+
+    private RawRow(int columns) {
+        types = new CellType[columns];
+        numbers = new double[columns];
+        strings = new String[columns];
+        dates = new boolean[columns];
+        lastColumn = -1;
+    }
+
+    /**
+     * Clear all cells and move to given row.
+     *
+     * @param rowNum the 0-based row num
+     */
+    public void reset(int rowNum) {
+        for (int i = 0; i <= lastColumn; i++) {
+            types[i] = null;
+            strings[i] = null;
+        }
+        this.rowNum = rowNum;
+        this.lastColumn = -1;
+    }
+
+    /**
+     * Sets string cell.
+     *
+     * @param col   the column
+     * @param value the value
+     */
+    public void setString(int col, String value) {
+        ensure(col);
+        types[col] = CellType.STRING;
+        strings[col] = value;
+    }
+
+    /**
+     * Sets numeric cell.
+     *
+     * @param col   the column
+     * @param value the value
+     * @param date  identifies if cell is date formatted
+     */
+    public void setNumber(int col, double value, boolean date) {
+        ensure(col);
+        types[col] = CellType.NUMERIC;
+        numbers[col] = value;
+        dates[col] = date;
+    }
+
+    /**
+     * Sets boolean cell.
+     *
+     * @param col   the column
+     * @param value the value
+     */
+    public void setBoolean(int col, boolean value) {
+        ensure(col);
+        types[col] = CellType.BOOLEAN;
+        numbers[col] = value ? 1 : 0;
+    }
+
+    /**
+     * Sets error cell.
+     *
+     * @param col the column
+     */
+    public void setError(int col) {
+        ensure(col);
+        types[col] = CellType.ERROR;
+    }
+
+    /**
+     * Gets 0-based row num.
+     *
+     * @return the row num
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * Gets last column with value, -1 for empty row.
+     *
+     * @return the last column
+     */
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    /**
+     * Identifies if row has no cell.
+     *
+     * @return the boolean
+     */
+    public boolean isEmpty() {
+        return lastColumn < 0;
+    }
+
+    /**
+     * Gets cell type, {@link CellType#BLANK} for missing cell.
+     *
+     * @param col the column
+     * @return the type
+     */
+    public CellType getType(int col) {
+        if (col > lastColumn || types[col] == null) {
+            return CellType.BLANK;
+        }
+        return types[col];
+    }
+
+    /**
+     * Gets string value.
+     *
+     * @param col the column
+     * @return the string, null for non string cell
+     */
+    public String getString(int col) {
+        return col > lastColumn ? null : strings[col];
+    }
+
+    /**
+     * Gets numeric value, 1 or 0 for boolean cell.
+     *
+     * @param col the column
+     * @return the number
+     */
+    public double getNumber(int col) {
+        return col > lastColumn ? 0 : numbers[col];
+    }
+
+    /**
+     * Gets boolean value.
+     *
+     * @param col the column
+     * @return the boolean
+     */
+    public boolean getBoolean(int col) {
+        return getNumber(col) != 0;
+    }
+
+    /**
+     * Identifies if numeric cell is date formatted.
+     *
+     * @param col the column
+     * @return the boolean
+     */
+    public boolean isDate(int col) {
+        return getType(col) == CellType.NUMERIC && dates[col];
+    }
+
+    /**
+     * Copy current row.
+     *
+     * @return the raw row
+     */
+    public RawRow copy() {
+        RawRow row = new RawRow(lastColumn + 1);
+        row.rowNum = rowNum;
+        row.lastColumn = lastColumn;
+        System.arraycopy(types, 0, row.types, 0, lastColumn + 1);
+        System.arraycopy(numbers, 0, row.numbers, 0, lastColumn + 1);
+        System.arraycopy(strings, 0, row.strings, 0, lastColumn + 1);
+        System.arraycopy(dates, 0, row.dates, 0, lastColumn + 1);
+        return row;
+    }
+
+    private void ensure(int col) {
+        if (col >= types.length) {
+            int size = Math.max(col + 1, types.length * 2);
+            types = Arrays.copyOf(types, size);
+            numbers = Arrays.copyOf(numbers, size);
+            strings = Arrays.copyOf(strings, size);
+            dates = Arrays.copyOf(dates, size);
+        }
+        if (col > lastColumn) {
+            for (int i = lastColumn + 1; i < col; i++) {
+                types[i] = null;
+                strings[i] = null;
+            }
+            lastColumn = col;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.allinmoney.platform.excel;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports rows of a {@link ResultSet} without collecting them into a list.
+ * Columns of result set are bound to the annotated fields of data class by
+ * the explicit mapping of {@link #mapColumn(String, String)}, else by label
+ * equal to the title, else by label equal to the field name ignoring case
+ * and underscores, so {@code birth_day} is bound to {@code birthDay}.
+ * <p>
+ * A prefetch thread reads and binds the next rows into a bounded buffer while
+ * the calling thread writes the current ones, so the latency of database and
+ * the writing of workbook overlap. The result set is read only by the
+ * prefetch thread and is not closed.
+ *
+ * <pre>
+ *     try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+ *         new ResultSetExporter&lt;&gt;(util).setFetchSize(1000).export(rs, "person", os, null);
+ *     }
+ * </pre>
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+public class ResultSetExporter<T> {
+
+    private static final int DEFAULT_PREFETCH_ROWS = 4096;
+    private static final int CHUNK_ROWS = 256;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Marks the end of result set in buffer.
+     */
+    private static final Object END = new Object();
+
+    private final ExcelUtil<T> util;
+    private final Map<String, String> columnLabels = new HashMap<>();
+    private int fetchSize;
+    private int prefetchRows = DEFAULT_PREFETCH_ROWS;
+    private Executor executor;
+
+    /**
+     * Instantiates a new exporter with the settings of excel util.
+     *
+     * @param util the excel util
+     */
+    public ResultSetExporter(ExcelUtil<T> util) {
+        this.util = util;
+    }
+
+    /**
+     * Sets fetch size of result set, default is 0 which keeps the size of
+     * driver. Some drivers stream rows only with their own value, like
+     * {@link Integer#MIN_VALUE} of MySQL.
+     *
+     * @param fetchSize the fetch size
+     * @return the result set exporter
+     */
+    public ResultSetExporter<T> setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Sets the rows read ahead of the writer, default is 4096. Rows are
+     * buffered in chunks of 256 rows.
+     *
+     * @param prefetchRows the prefetch rows
+     * @return the result set exporter
+     */
+    public ResultSetExporter<T> setPrefetchRows(int prefetchRows) {
+        this.prefetchRows = prefetchRows;
+        return this;
+    }
+
+    /**
+     * Sets the executor which runs the prefetch of each exportation, default
+     * is null which starts a daemon thread per exportation.
+     *
+     * @param executor the executor
+     * @return the result set exporter
+     */
+    public ResultSetExporter<T> setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Bind column of result set to the field of title.
+     *
+     * @param title       the title of annotated field
+     * @param columnLabel the label of result set column
+     * @return the result set exporter
+     */
+    public ResultSetExporter<T> mapColumn(String title, String columnLabel) {
+        columnLabels.put(title, columnLabel);
+        return this;
+    }
+
+    /**
+     * Export the rows of result set from its current position, see
+     * {@link ExcelUtil#exportDataList(Iterator, String, OutputStream, String, boolean)}.
+     *
+     * @param rs        the result set
+     * @param sheetName the sheet name to export
+     * @param os        the OutputStream for I/O
+     * @param dateFmt   the date fmt, null to use the format of annotation
+     * @return the exported rows
+     */
+    public long export(ResultSet rs, String sheetName, OutputStream os, String dateFmt) {
+        ColumnSchema schema = util.getColumnSchema(true);
+        Prefetch prefetch;
+        try {
+            if (fetchSize != 0) {
+                rs.setFetchSize(fetchSize);
+            }
+            prefetch = new Prefetch(rs, schema, bindColumns(rs.getMetaData(), schema));
+        } catch (SQLException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+
+        CompletableFuture<Void> done = executor == null
+                ? CompletableFuture.runAsync(prefetch, ResultSetExporter::startDaemon)
+                : CompletableFuture.runAsync(prefetch, executor);
+        try {
+            util.exportDataList(prefetch, sheetName, os, dateFmt, true);
+        } finally {
+            prefetch.cancelled = true;
+            // the caller may close result set once it is returned
+            done.exceptionally(e -> null).join();
+        }
+        return prefetch.rows;
+    }
+
+    /**
+     * Find the result set column of each column of schema, 0 if it is absent.
+     */
+    private int[] bindColumns(ResultSetMetaData meta, ColumnSchema schema) throws SQLException {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = meta.getColumnCount(); i > 0; i--) {
+            labels.put(meta.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+            labels.putIfAbsent(normalize(meta.getColumnLabel(i)), i);
+        }
+
+        int[] indexes = new int[schema.size()];
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            String label = columnLabels.get(column.getTitle());
+            Integer index;
+            if (label != null) {
+                index = labels.get(label.toLowerCase(Locale.ROOT));
+                if (index == null) {
+                    throw new ExcelException("No column " + label + " in result set for " + column.getTitle());
+                }
+            } else {
+                index = labels.get(column.getTitle().toLowerCase(Locale.ROOT));
+                if (index == null) {
+                    index = labels.get(normalize(column.getName()));
+                }
+            }
+            indexes[column.getIndex()] = index == null ? 0 : index;
+        }
+        return indexes;
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static void startDaemon(Runnable runnable) {
+        Thread thread = new Thread(runnable, "excel-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads one column of result set into field of data object.
+     */
+    @FunctionalInterface
+    private interface ColumnReader {
+        void read(ResultSet rs, int index, Object target) throws SQLException;
+    }
+
+    private static ColumnReader reader(ColumnSchema.Column column) {
+        FieldAccessor accessor = column.getAccessor();
+        Class<?> type = accessor.getType();
+        boolean primitive = type.isPrimitive();
+        if (type == String.class) {
+            return (rs, i, target) -> set(accessor, target, rs.getString(i));
+        } else if (type == int.class || type == Integer.class) {
+            return (rs, i, target) -> {
+                int value = rs.getInt(i);
+                if (rs.wasNull()) {
+                    return;
+                }
+                if (primitive) {
+                    accessor.setInt(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == long.class || type == Long.class) {
+            return (rs, i, target) -> {
+                long value = rs.getLong(i);
+                if (rs.wasNull()) {
+                    return;
+                }
+                if (primitive) {
+                    accessor.setLong(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == double.class || type == Double.class) {
+            return (rs, i, target) -> {
+                double value = rs.getDouble(i);
+                if (rs.wasNull()) {
+                    return;
+                }
+                if (primitive) {
+                    accessor.setDouble(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == boolean.class || type == Boolean.class) {
+            return (rs, i, target) -> {
+                boolean value = rs.getBoolean(i);
+                if (rs.wasNull()) {
+                    return;
+                }
+                if (primitive) {
+                    accessor.setBoolean(target, value);
+                } else {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == short.class || type == Short.class) {
+            return (rs, i, target) -> {
+                short value = rs.getShort(i);
+                if (!rs.wasNull()) {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == byte.class || type == Byte.class) {
+            return (rs, i, target) -> {
+                byte value = rs.getByte(i);
+                if (!rs.wasNull()) {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == float.class || type == Float.class) {
+            return (rs, i, target) -> {
+                float value = rs.getFloat(i);
+                if (!rs.wasNull()) {
+                    accessor.set(target, value);
+                }
+            };
+        } else if (type == BigDecimal.class) {
+            return (rs, i, target) -> set(accessor, target, rs.getBigDecimal(i));
+        } else if (type == BigInteger.class) {
+            return (rs, i, target) -> {
+                BigDecimal value = rs.getBigDecimal(i);
+                set(accessor, target, value == null ? null : value.toBigInteger());
+            };
+        } else if (type == Date.class) {
+            return (rs, i, target) -> {
+                Timestamp value = rs.getTimestamp(i);
+                set(accessor, target, value == null ? null : new Date(value.getTime()));
+            };
+        } else if (type == LocalDate.class) {
+            return (rs, i, target) -> {
+                java.sql.Date value = rs.getDate(i);
+                set(accessor, target, value == null ? null : value.toLocalDate());
+            };
+        } else if (type == LocalDateTime.class) {
+            return (rs, i, target) -> {
+                Timestamp value = rs.getTimestamp(i);
+                set(accessor, target, value == null ? null : value.toLocalDateTime());
+            };
+        } else if (type == Instant.class) {
+            return (rs, i, target) -> {
+                Timestamp value = rs.getTimestamp(i);
+                set(accessor, target, value == null ? null : value.toInstant());
+            };
+        } else if (type.isEnum()) {
+            Map<String, Object> constants = ColumnDecoder.enumConstants(column);
+            return (rs, i, target) -> {
+                String value = rs.getString(i);
+                if (value == null) {
+                    return;
+                }
+                Object constant = constants.get(value.trim());
+                if (constant == null) {
+                    throw new IllegalArgumentException("No constant of " + value);
+                }
+                accessor.set(target, constant);
+            };
+        }
+        return (rs, i, target) -> set(accessor, target, rs.getObject(i));
+    }
+
+    private static void set(FieldAccessor accessor, Object target, Object value) {
+        if (value != null) {
+            accessor.set(target, value);
+        }
+    }
+
+    /**
+     * Reads and binds rows on the prefetch thread, the writer iterates the
+     * buffered chunks. A failure of reading is passed through the buffer and
+     * thrown by the iterator.
+     */
+    private final class Prefetch implements Runnable, Iterator<T> {
+        private final ResultSet rs;
+        private final ColumnSchema schema;
+        private final int[] indexes;
+        private final ColumnReader[] readers;
+        private final BlockingQueue<Object> buffer;
+        private volatile boolean cancelled;
+
+        /**
+         * State of writer thread.
+         */
+        private List<T> chunk;
+        private int next;
+        private long rows;
+        private boolean ended;
+
+        private Prefetch(ResultSet rs, ColumnSchema schema, int[] indexes) {
+            this.rs = rs;
+            this.schema = schema;
+            this.indexes = indexes;
+            this.readers = new ColumnReader[indexes.length];
+            for (ColumnSchema.Column column : schema.getColumns()) {
+                if (indexes[column.getIndex()] > 0) {
+                    readers[column.getIndex()] = reader(column);
+                }
+            }
+            this.buffer = new ArrayBlockingQueue<>(Math.max(prefetchRows / CHUNK_ROWS, 1));
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<T> rows = new ArrayList<>(CHUNK_ROWS);
+                while (!cancelled && rs.next()) {
+                    rows.add(bind());
+                    if (rows.size() == CHUNK_ROWS) {
+                        put(rows);
+                        rows = new ArrayList<>(CHUNK_ROWS);
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    put(rows);
+                }
+                put(END);
+            } catch (Throwable e) {
+                // errors of binding are passed to the writer too, it would wait forever
+                put(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T bind() throws SQLException {
+            T data = (T) schema.newInstance();
+            for (int j = 0; j < readers.length; j++) {
+                if (readers[j] != null) {
+                    readers[j].read(rs, indexes[j], data);
+                }
+            }
+            return data;
+        }
+
+        /**
+         * Put into buffer unless the writer is gone.
+         */
+        private void put(Object element) {
+            try {
+                while (!cancelled && !buffer.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // wait for writer
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            if (chunk != null && next < chunk.size()) {
+                return true;
+            }
+            if (ended) {
+                return false;
+            }
+            Object element;
+            try {
+                element = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExcelException(e.getMessage(), e);
+            }
+            if (element == END) {
+                ended = true;
+                return false;
+            }
+            if (element instanceof Throwable) {
+                ended = true;
+                Throwable e = (Throwable) element;
+                throw e instanceof ExcelException ? (ExcelException) e : new ExcelException(e.getMessage(), e);
+            }
+            chunk = (List<T>) element;
+            next = 0;
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rows++;
+            return chunk.get(next++);
+        }
+    }
+}
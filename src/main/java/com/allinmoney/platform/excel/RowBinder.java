@@ -0,0 +1,191 @@
+package com.allinmoney.platform.excel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+
+/**
+ * Binds streamed rows to data objects. The first row which contains titles of
+ * the schema is taken as header row, the rows after it are bound by the columns
+ * of the matched titles. A known {@link SheetSchema} skips the detection.
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+class RowBinder<T> implements RowHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowBinder.class);
+    private static final String DEFAULT_DATE_FORMAT = "yyyyMMdd";
+
+    private final Class<T> cls;
+    private final ColumnSchema schema;
+    private final Consumer<? super T> consumer;
+    private final DateTimeFormatter dateFormat;
+
+    /**
+     * The matched header, null until header row is found.
+     */
+    private SheetSchema sheetSchema;
+    private ColumnDecoder[] decoders;
+    private int scanRows;
+    private int rows;
+
+    /**
+     * Identifies if binding is timed, the time is summed in bindNanos.
+     */
+    private boolean timed;
+    private long bindNanos;
+
+    /**
+     * Instantiates a new Row binder.
+     *
+     * @param cls        the data class
+     * @param schema     the column schema
+     * @param dateFormat the format of date cells, default is yyyyMMdd
+     * @param consumer   the consumer of bound data, null if rows are bound by {@link #bind(RawRow)}
+     */
+    RowBinder(Class<T> cls, ColumnSchema schema, String dateFormat, Consumer<? super T> consumer) {
+        this.cls = cls;
+        this.schema = schema;
+        this.consumer = consumer;
+        this.dateFormat = DateFormats.formatter(dateFormat == null || dateFormat.isEmpty() ? DEFAULT_DATE_FORMAT : dateFormat);
+    }
+
+    /**
+     * Sets the leading rows searched for header, reading stops if header is
+     * not found in them. 0 or negative to search all rows.
+     *
+     * @param scanRows the scan rows
+     */
+    void setScanRows(int scanRows) {
+        this.scanRows = scanRows;
+    }
+
+    /**
+     * Sets if the time of binding rows by {@link #handle(RawRow)} is summed.
+     *
+     * @param timed the timed
+     */
+    void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    /**
+     * Sets known header of sheet, the header is not detected.
+     *
+     * @param sheetSchema the sheet schema
+     */
+    void setSheetSchema(SheetSchema sheetSchema) {
+        if (sheetSchema.getColumnSchema() != schema) {
+            throw new ExcelException("Sheet schema is not matched with " + schema.getType().getName());
+        }
+        this.sheetSchema = sheetSchema;
+        this.decoders = new ColumnDecoder[sheetSchema.size()];
+        for (int col = 0; col < decoders.length; col++) {
+            ColumnSchema.Column column = sheetSchema.getColumn(col);
+            if (column != null) {
+                decoders[col] = new ColumnDecoder(column, dateFormat);
+            }
+        }
+    }
+
+    @Override
+    public boolean handle(RawRow row) {
+        if (sheetSchema == null) {
+            if (scanRows > 0 && row.getRowNum() >= scanRows) {
+                return false;
+            }
+            SheetSchema found = SheetSchema.match(schema, row);
+            if (found != null) {
+                setSheetSchema(found);
+                logger.debug("Header row is found at: {}", found.getHeaderRow());
+            }
+            return true;
+        }
+        if (!isContent(row)) {
+            return true;
+        }
+
+        long start = timed ? System.nanoTime() : 0;
+        T data = bind(row);
+        if (timed) {
+            bindNanos += System.nanoTime() - start;
+        }
+        consumer.accept(data);
+        rows++;
+        return true;
+    }
+
+    /**
+     * Bind row after header row to a new data object. It only reads the
+     * columns of header, so rows can be bound by multiple threads once the
+     * header is found.
+     *
+     * @param row the row
+     * @return the data object
+     */
+    T bind(RawRow row) {
+        T data = cls.cast(schema.newInstance());
+        int last = Math.min(row.getLastColumn(), decoders.length - 1);
+        for (int col = 0; col <= last; col++) {
+            ColumnDecoder decoder = decoders[col];
+            if (decoder == null) {
+                continue;
+            }
+            try {
+                decoder.decode(row, col, data);
+            } catch (RuntimeException e) {
+                logger.warn("Can not set {} with value: {}", sheetSchema.getColumn(col).getTitle(), ColumnDecoder.text(row, col));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Identifies if row is bound as data, rows up to the header are not.
+     *
+     * @param row the row
+     * @return the boolean
+     */
+    boolean isContent(RawRow row) {
+        return sheetSchema != null && row.getRowNum() > sheetSchema.getHeaderRow();
+    }
+
+    /**
+     * Gets the matched header.
+     *
+     * @return the sheet schema, null if header is not found
+     */
+    SheetSchema getSheetSchema() {
+        return sheetSchema;
+    }
+
+    /**
+     * Gets header row.
+     *
+     * @return the 0-based header row, -1 if header is not found
+     */
+    int getHeaderRow() {
+        return sheetSchema == null ? -1 : sheetSchema.getHeaderRow();
+    }
+
+    /**
+     * Gets count of bound rows.
+     *
+     * @return the rows
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the time of binding rows by {@link #handle(RawRow)}, see {@link #setTimed(boolean)}.
+     *
+     * @return the nanoseconds
+     */
+    long getBindNanos() {
+        return bindNanos;
+    }
+}
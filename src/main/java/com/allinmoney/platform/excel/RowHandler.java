@@ -0,0 +1,19 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * Receives rows from a streaming sheet reader.
+ *
+ * @author Chris
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Handle one row. The row is reused by reader for next row, it should be
+     * copied if it is kept after this call.
+     *
+     * @param row the row
+     * @return true to continue, false to stop reading rest of sheet
+     */
+    boolean handle(RawRow row);
+}
@@ -0,0 +1,282 @@
+package com.allinmoney.platform.excel;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Converts data objects into {@link EncodedRows} with worker threads, the
+ * writer iterates the converted rows in the order of source. Workers take
+ * chunks of source with a sequence number and publish converted chunks into
+ * the slot of their sequence in a bounded ring, the writer takes the slots in
+ * sequence, so the output is the same as the sequential one.
+ * <p>
+ * The ring is lock-free, a slot is owned by the worker of its sequence until
+ * it is published and by the writer until it is consumed. Workers wait while
+ * their sequence is a whole ring ahead of the writer, the writer waits for the
+ * next sequence. Only reading the source is serialized, iterators are not
+ * thread safe.
+ * <p>
+ * While its next slot is empty the writer converts chunks itself, so rows
+ * keep flowing when workers are queued behind other tasks of a shared
+ * executor. Workers run on the writer thread, like with
+ * {@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}, return
+ * at once and leave the chunks to the writer.
+ *
+ * @author Chris
+ */
+final class RowPipeline implements Iterator<Object>, AutoCloseable {
+
+    private static final int CHUNK_ROWS = 256;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Published after the last chunk.
+     */
+    private static final Object END = new Object();
+
+    private final Iterator<?> source;
+    private final List<ColumnSchema.Column> columns;
+    private final String dateFmt;
+    private final CellCodecs codecs;
+    private final AtomicReferenceArray<Object> slots;
+    private final int mask;
+
+    /**
+     * The next sequence of writer, slots before it are free.
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * The next sequence of workers, guarded by source.
+     */
+    private long claimed;
+    private boolean exhausted;
+
+    /**
+     * Set when the writer is gone, waiting workers give up their chunks.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * State of writer thread.
+     */
+    private Thread writer;
+    private EncodedRows current;
+    private boolean ended;
+    private ColumnEncoder[] writerEncoders;
+    private Object[] writerChunk;
+
+    /**
+     * Instantiates a new pipeline, workers are started by {@link #start(int, Executor)}.
+     *
+     * @param source  the iterator of data
+     * @param schema  the column schema
+     * @param dateFmt the date fmt, null to use the format of annotation
+     * @param codecs  the codecs of cell values
+     * @param workers the workers which the ring is sized for
+     */
+    RowPipeline(Iterator<?> source, ColumnSchema schema, String dateFmt, CellCodecs codecs, int workers) {
+        this.source = source;
+        this.columns = schema.getColumns();
+        this.dateFmt = dateFmt;
+        this.codecs = codecs;
+        // chunks being converted by all workers and the same again ready for writer
+        int capacity = Integer.highestOneBit(Math.max(workers, 1) * 4 - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Start workers, the calling thread is the writer.
+     *
+     * @param workers  the workers
+     * @param executor the executor, null to start a daemon thread per worker
+     * @return the row pipeline
+     */
+    RowPipeline start(int workers, Executor executor) {
+        writer = Thread.currentThread();
+        for (int i = 0; i < workers; i++) {
+            if (executor != null) {
+                executor.execute(this::work);
+            } else {
+                Thread thread = new Thread(this::work, "excel-pipeline-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        return this;
+    }
+
+    private void work() {
+        if (Thread.currentThread() == writer) {
+            // the writer converts chunks while it waits for them
+            return;
+        }
+        ColumnEncoder[] encoders = newEncoders();
+        Object[] chunk = new Object[CHUNK_ROWS];
+        while (convert(encoders, chunk, false)) {
+            // next chunk
+        }
+    }
+
+    private ColumnEncoder[] newEncoders() {
+        ColumnEncoder[] encoders = new ColumnEncoder[columns.size()];
+        for (int j = 0; j < encoders.length; j++) {
+            if (columns.get(j).isExport()) {
+                encoders[j] = new ColumnEncoder(columns.get(j), codecs);
+            }
+        }
+        return encoders;
+    }
+
+    /**
+     * Claim next chunk of source, convert and publish it.
+     *
+     * @param encoders the encoders of calling thread
+     * @param chunk    the buffer of data objects of calling thread
+     * @param helping  identifies if it is called by the writer, which only claims
+     *                 sequences it can publish without waiting for itself
+     * @return false if there is no chunk to convert
+     */
+    private boolean convert(ColumnEncoder[] encoders, Object[] chunk, boolean helping) {
+        if (cancelled) {
+            return false;
+        }
+        long seq;
+        long endSeq = -1;
+        int size = 0;
+        Object element = null;
+        synchronized (source) {
+            if (exhausted || helping && claimed + 1 - consumed.get() > mask) {
+                return false;
+            }
+            seq = claimed++;
+            try {
+                while (size < CHUNK_ROWS && source.hasNext()) {
+                    chunk[size++] = source.next();
+                }
+            } catch (RuntimeException | Error e) {
+                element = e;
+            }
+            if (element == null && size < CHUNK_ROWS) {
+                // the writer stops after the last rows
+                endSeq = size > 0 ? claimed++ : seq;
+            }
+            exhausted = endSeq >= 0 || element != null;
+        }
+
+        if (element == null && size > 0) {
+            try {
+                EncodedRows rows = new EncodedRows(columns, dateFmt, size);
+                for (int i = 0; i < size; i++) {
+                    rows.add(chunk[i], encoders);
+                }
+                element = rows;
+            } catch (RuntimeException | Error e) {
+                element = e;
+            }
+            Arrays.fill(chunk, 0, size, null);
+        }
+        return (element == null || publish(seq, element)) && (endSeq < 0 || publish(endSeq, END));
+    }
+
+    /**
+     * Publish into the slot of sequence once the writer has freed it.
+     */
+    private boolean publish(long seq, Object element) {
+        for (int spins = 0; seq - consumed.get() > mask; spins++) {
+            if (cancelled) {
+                return false;
+            }
+            idle(spins);
+        }
+        slots.lazySet((int) seq & mask, element);
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (current != null && current.hasNext()) {
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+
+        long seq = consumed.get();
+        int slot = (int) seq & mask;
+        Object element;
+        for (int spins = 0; (element = slots.get(slot)) == null; spins++) {
+            if (help()) {
+                spins = 0;
+            } else {
+                idle(spins);
+            }
+        }
+        slots.set(slot, null);
+        consumed.lazySet(seq + 1);
+        current = null;
+        if (element == END) {
+            ended = true;
+            return false;
+        }
+        if (element instanceof Throwable) {
+            ended = true;
+            Throwable e = (Throwable) element;
+            if (e instanceof ExcelException) {
+                throw (ExcelException) e;
+            }
+            throw new ExcelException(e.getMessage(), e);
+        }
+        current = (EncodedRows) element;
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        current.next();
+        return current;
+    }
+
+    /**
+     * Convert a chunk on the writer thread while the next slot is empty.
+     *
+     * @return false if there is no chunk the writer can convert now
+     */
+    private boolean help() {
+        if (writerEncoders == null) {
+            writerEncoders = newEncoders();
+            writerChunk = new Object[CHUNK_ROWS];
+        }
+        return convert(writerEncoders, writerChunk, true);
+    }
+
+    /**
+     * Stop workers, the source is not read once it returns.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        synchronized (source) {
+            exhausted = true;
+        }
+    }
+
+    private static void idle(int spins) {
+        if (spins < 100) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(1L << Math.min(spins - 100, 20), MAX_PARK_NANOS));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * Creates data objects of importation, generated at compile time by
+ * {@link ExcelAttributeProcessor} together with {@link RowWriter}. Values are
+ * bound by the accessors of {@link ColumnDefinition}, which call the setters
+ * of data class.
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+public interface RowReader<T> {
+
+    /**
+     * Create a new instance of data type.
+     *
+     * @return the new instance
+     */
+    T newInstance();
+}
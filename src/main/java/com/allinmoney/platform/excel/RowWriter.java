@@ -0,0 +1,40 @@
+package com.allinmoney.platform.excel;
+
+import java.util.List;
+
+/**
+ * The columns of a data class generated at compile time by
+ * {@link ExcelAttributeProcessor}. When the generated class is present,
+ * {@link ColumnSchema#of(Class, Class, boolean)} compiles the schema from it
+ * instead of scanning fields and annotations, values are read by accessors
+ * which call the getters of data class.
+ *
+ * @author Chris
+ * @param <T> the type parameter
+ */
+public interface RowWriter<T> {
+
+    /**
+     * Gets type of data.
+     *
+     * @return the type
+     */
+    Class<T> getType();
+
+    /**
+     * Gets columns of the annotated fields of super class and the type, in
+     * the order they are declared.
+     *
+     * @return the columns
+     */
+    List<ColumnDefinition> getColumns();
+
+    /**
+     * Gets the indexes of {@link #getColumns()} in sheet order, for all data
+     * views.
+     *
+     * @param withSuperFields identifies if to include the annotated fields of super class
+     * @return the column order
+     */
+    int[] getColumnOrder(boolean withSuperFields);
+}
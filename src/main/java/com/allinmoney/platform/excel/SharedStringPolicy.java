@@ -0,0 +1,27 @@
+package com.allinmoney.platform.excel;
+
+/**
+ * Policy of writing text cells of {@link ExcelType#XLSX_DIRECT} into the
+ * shared strings table instead of inline strings. Shared strings make files
+ * of repeated texts much smaller, the table is kept out of heap, see
+ * {@link ExcelUtil#setSharedStrings(SharedStringPolicy)}.
+ *
+ * @author Chris
+ */
+public enum SharedStringPolicy {
+    /**
+     * All texts are inlined in cells, nothing is kept for the table.
+     */
+    NEVER,
+
+    /**
+     * All texts are written into the shared strings table.
+     */
+    ALWAYS,
+
+    /**
+     * A text is inlined the first time and shared from its second time on,
+     * so texts which occur only once do not enlarge the table.
+     */
+    IF_REPEATED
+}
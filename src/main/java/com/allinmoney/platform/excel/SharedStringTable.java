@@ -0,0 +1,296 @@
+package com.allinmoney.platform.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared strings table of {@link XlsxDirectWriter} kept out of heap. The
+ * UTF-8 bytes of texts are appended to a memory mapped temporary file, they
+ * are found by an open addressing hash index mapped from another temporary
+ * file, 16 bytes a slot. The {@code <si>} entries are appended to a third
+ * temporary file as texts become shared and copied into the zip at last. So
+ * heap is flat however many distinct texts a workbook has. When the index
+ * reaches its max slots the texts indexed so far are still shared, the
+ * others are inlined.
+ *
+ * @author Chris
+ */
+final class SharedStringTable implements Closeable {
+
+    private static final int SEGMENT_SIZE = 1 << 24;
+    private static final int MAX_TEXT_BYTES = SEGMENT_SIZE - Integer.BYTES;
+
+    /**
+     * Slot is position of text plus 1 (0 for empty slot), hash of text and
+     * index in table (-1 if text is not shared yet).
+     */
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int MAX_SLOTS = 1 << 26;
+
+    private final SharedStringPolicy policy;
+
+    private final FileChannel texts;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long textSize;
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int slots;
+    private int size;
+
+    /**
+     * Identifies if index is at its max slots, texts not indexed yet are
+     * inlined from then on.
+     */
+    private boolean full;
+
+    private final FileChannel entryChannel;
+    private final OutputStream entryOutput;
+    private final XmlBuffer entries = new XmlBuffer();
+    private int uniqueCount;
+    private long count;
+
+    /**
+     * Instantiates a new table, the temporary files are deleted when it is closed.
+     *
+     * @param policy the policy, not {@link SharedStringPolicy#NEVER}
+     */
+    SharedStringTable(SharedStringPolicy policy) {
+        this.policy = policy;
+        try {
+            this.texts = openTemp();
+            this.slots = INITIAL_SLOTS;
+            this.indexChannel = openTemp();
+            this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+            this.entryChannel = openTemp();
+            this.entryOutput = new BufferedOutputStream(Channels.newOutputStream(entryChannel));
+        } catch (IOException e) {
+            close();
+            throw new ExcelException(e.getMessage(), e);
+        }
+        this.entries.setOutput(entryOutput);
+    }
+
+    /**
+     * Gets index of text in table, the text is added if it should be shared.
+     *
+     * @param text the text
+     * @return the index, -1 if text should be inlined
+     */
+    int indexOf(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_BYTES) {
+            return -1;
+        }
+        int hash = mix(text.hashCode());
+        int mask = slots - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int offset = slot * SLOT_SIZE;
+            long position = index.getLong(offset);
+            if (position == 0) {
+                if (full) {
+                    return -1;
+                }
+                int shared = policy == SharedStringPolicy.ALWAYS ? share(text) : -1;
+                index.putLong(offset, append(bytes) + 1);
+                index.putInt(offset + 8, hash);
+                index.putInt(offset + 12, shared);
+                if (++size * 2 > slots) {
+                    if (slots == MAX_SLOTS) {
+                        full = true;
+                    } else {
+                        grow();
+                    }
+                }
+                return count(shared);
+            }
+            if (index.getInt(offset + 8) == hash && matches(position - 1, bytes)) {
+                int shared = index.getInt(offset + 12);
+                if (shared < 0) {
+                    shared = share(text);
+                    index.putInt(offset + 12, shared);
+                }
+                return count(shared);
+            }
+        }
+    }
+
+    /**
+     * Gets count of distinct shared texts.
+     *
+     * @return the unique count
+     */
+    int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Gets count of cells referring to shared texts.
+     *
+     * @return the count
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Copy the {@code <si>} entries in table order to output.
+     *
+     * @param os the output stream
+     */
+    void copyTo(OutputStream os) {
+        entries.flush();
+        try {
+            entryOutput.flush();
+            WritableByteChannel target = Channels.newChannel(os);
+            long size = entryChannel.size();
+            for (long position = 0; position < size; ) {
+                position += entryChannel.transferTo(position, size - position, target);
+            }
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(texts);
+        closeQuietly(indexChannel);
+        closeQuietly(entryOutput);
+        closeQuietly(entryChannel);
+        segments.clear();
+        index = null;
+    }
+
+    private int count(int shared) {
+        if (shared >= 0) {
+            count++;
+        }
+        return shared;
+    }
+
+    private int share(String text) {
+        boolean preserve = !text.isEmpty() && (Character.isWhitespace(text.charAt(0))
+                || Character.isWhitespace(text.charAt(text.length() - 1)));
+        entries.writeAscii(preserve ? "<si><t xml:space=\"preserve\">" : "<si><t>")
+                .writeEscaped(text).writeAscii("</t></si>");
+        entries.flushIfFull();
+        return uniqueCount++;
+    }
+
+    /**
+     * Append length and bytes of text, a text does not span segments.
+     */
+    private long append(byte[] bytes) {
+        int offset = (int) (textSize % SEGMENT_SIZE);
+        if (offset + Integer.BYTES + bytes.length > SEGMENT_SIZE) {
+            textSize += SEGMENT_SIZE - offset;
+            offset = 0;
+        }
+        ByteBuffer segment = segment((int) (textSize / SEGMENT_SIZE)).duplicate();
+        segment.position(offset);
+        segment.putInt(bytes.length).put(bytes);
+        long position = textSize;
+        textSize += Integer.BYTES + bytes.length;
+        return position;
+    }
+
+    private boolean matches(long position, byte[] bytes) {
+        MappedByteBuffer segment = segment((int) (position / SEGMENT_SIZE));
+        int offset = (int) (position % SEGMENT_SIZE);
+        if (segment.getInt(offset) != bytes.length) {
+            return false;
+        }
+        offset += Integer.BYTES;
+        for (int i = 0; i < bytes.length; i++) {
+            if (segment.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer segment(int no) {
+        while (segments.size() <= no) {
+            try {
+                segments.add(texts.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            } catch (IOException e) {
+                throw new ExcelException(e.getMessage(), e);
+            }
+        }
+        return segments.get(no);
+    }
+
+    /**
+     * Rehash slots into an index of double size.
+     */
+    private void grow() {
+        int newSlots = slots * 2;
+        FileChannel newChannel = null;
+        MappedByteBuffer newIndex;
+        try {
+            newChannel = openTemp();
+            newIndex = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) newSlots * SLOT_SIZE);
+        } catch (IOException e) {
+            closeQuietly(newChannel);
+            throw new ExcelException(e.getMessage(), e);
+        }
+
+        int mask = newSlots - 1;
+        for (int slot = 0; slot < slots; slot++) {
+            int offset = slot * SLOT_SIZE;
+            long position = index.getLong(offset);
+            if (position == 0) {
+                continue;
+            }
+            int hash = index.getInt(offset + 8);
+            int target = hash & mask;
+            while (newIndex.getLong(target * SLOT_SIZE) != 0) {
+                target = (target + 1) & mask;
+            }
+            newIndex.putLong(target * SLOT_SIZE, position);
+            newIndex.putInt(target * SLOT_SIZE + 8, hash);
+            newIndex.putInt(target * SLOT_SIZE + 12, index.getInt(offset + 12));
+        }
+        closeQuietly(indexChannel);
+        indexChannel = newChannel;
+        index = newIndex;
+        slots = newSlots;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static FileChannel openTemp() throws IOException {
+        Path path = Files.createTempFile("excel-sst", ".tmp");
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // temporary file is left to the system
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams rows of one sheet of an excel file. The file is parsed once without
+ * building the workbook in memory, so memory does not grow with sheet size.
+ * Empty rows are not reported.
+ *
+ * @author Chris
+ */
+public abstract class SheetReader {
+
+    protected final File file;
+
+    /**
+     * Instantiates a new Sheet reader.
+     *
+     * @param file the file
+     */
+    protected SheetReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open reader for given file, the format is detected by file content.
+     *
+     * @param file the excel file, xls or xlsx
+     * @return the sheet reader
+     * @throws IOException if file can not be read
+     */
+    public static SheetReader open(File file) throws IOException {
+        FileMagic magic;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            magic = FileMagic.valueOf(is);
+        }
+        switch (magic) {
+            case OLE2:
+                return new XlsSheetReader(file);
+            case OOXML:
+                return new XlsxSheetReader(file);
+            default:
+                throw new ExcelException("Unsupported excel file: " + file.getName());
+        }
+    }
+
+    /**
+     * Read rows of sheet.
+     *
+     * @param sheetName the sheet name, null or empty for first sheet
+     * @param handler   the row handler
+     * @throws IOException if file can not be read
+     */
+    public abstract void read(String sheetName, RowHandler handler) throws IOException;
+
+    /**
+     * Identifies if sheet is the one to read.
+     *
+     * @param sheetName the sheet name to read, null or empty for first sheet
+     * @param name      the name of current sheet
+     * @param index     the index of current sheet
+     * @return the boolean
+     */
+    protected static boolean isTarget(String sheetName, String name, int index) {
+        return sheetName == null || sheetName.isEmpty() ? index == 0 : sheetName.equals(name);
+    }
+}
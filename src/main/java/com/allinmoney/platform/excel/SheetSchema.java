@@ -0,0 +1,109 @@
+package com.allinmoney.platform.excel;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The header of a sheet matched with the column schema of a data class. It
+ * tells the header row and the sheet column of each annotated title, so rows
+ * can be bound without detecting the header again. It is immutable, files of
+ * the same template can share one instance, see
+ * {@link ExcelUtil#getSheetSchema(String, String)}.
+ *
+ * @author Chris
+ */
+public final class SheetSchema {
+
+    private final ColumnSchema schema;
+    private final int headerRow;
+
+    /**
+     * Schema columns indexed by sheet column, null for sheet column without title.
+     */
+    private final ColumnSchema.Column[] columns;
+    private final Map<String, Integer> titles;
+
+    private SheetSchema(ColumnSchema schema, int headerRow, ColumnSchema.Column[] columns) {
+        this.schema = schema;
+        this.headerRow = headerRow;
+        this.columns = columns;
+        Map<String, Integer> map = new HashMap<>();
+        for (int col = 0; col < columns.length; col++) {
+            if (columns[col] != null) {
+                map.putIfAbsent(columns[col].getTitle(), col);
+            }
+        }
+        this.titles = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Match header row with column schema.
+     *
+     * @param schema the column schema
+     * @param row    the row
+     * @return the sheet schema, null if no title of schema is in the row
+     */
+    static SheetSchema match(ColumnSchema schema, RawRow row) {
+        ColumnSchema.Column[] found = null;
+        for (int col = 0; col <= row.getLastColumn(); col++) {
+            String title = row.getString(col);
+            ColumnSchema.Column column = title == null ? null : schema.getColumn(title);
+            if (column == null) {
+                continue;
+            }
+            if (found == null) {
+                found = new ColumnSchema.Column[row.getLastColumn() + 1];
+            }
+            found[col] = column;
+        }
+        return found == null ? null : new SheetSchema(schema, row.getRowNum(), found);
+    }
+
+    /**
+     * Gets column schema.
+     *
+     * @return the column schema
+     */
+    public ColumnSchema getColumnSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets header row.
+     *
+     * @return the 0-based header row
+     */
+    public int getHeaderRow() {
+        return headerRow;
+    }
+
+    /**
+     * Gets count of sheet columns up to the last titled one.
+     *
+     * @return the count
+     */
+    public int size() {
+        return columns.length;
+    }
+
+    /**
+     * Gets schema column of sheet column.
+     *
+     * @param col the 0-based sheet column
+     * @return the column, null if sheet column has no annotated title
+     */
+    public ColumnSchema.Column getColumn(int col) {
+        return col < columns.length ? columns[col] : null;
+    }
+
+    /**
+     * Gets sheet column of title.
+     *
+     * @param title the title
+     * @return the 0-based sheet column, -1 if title is not in header
+     */
+    public int getColumnIndex(String title) {
+        return titles.getOrDefault(title, -1);
+    }
+}
@@ -0,0 +1,101 @@
+package com.allinmoney.platform.excel;
+
+import java.util.Iterator;
+
+/**
+ * Writes sheets of one exportation. A sheet holds one or more blocks, each
+ * block is a header row, content rows and a summary row. The sheets are
+ * written out by {@link #finish()}, the writer is closed whether the
+ * exportation is finished or failed.
+ *
+ * @author Chris
+ */
+abstract class SheetWriter implements AutoCloseable {
+
+    /**
+     * The metrics of exportation.
+     */
+    ExcelMetrics metrics = ExcelMetrics.NOOP;
+
+    /**
+     * Sets the metrics of exportation.
+     *
+     * @param metrics the metrics
+     * @return the sheet writer
+     */
+    SheetWriter setMetrics(ExcelMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Start a new sheet, the previous sheet is completed.
+     *
+     * @param name the sheet name
+     */
+    abstract void newSheet(String name);
+
+    /**
+     * Add header row of block.
+     *
+     * @param schema  the column schema
+     * @param dateFmt the date fmt of contents, null to use the format of annotation
+     */
+    abstract void addHeaders(ColumnSchema schema, String dateFmt);
+
+    /**
+     * Add content rows of block with the next elements of iterator, at most
+     * maxRows elements are consumed.
+     *
+     * @param schema   the column schema
+     * @param iterator the iterator of data
+     * @param maxRows  the max rows to write
+     * @param dateFmt  the date fmt, null to use the format of annotation
+     * @return the rows written
+     */
+    abstract int addContent(ColumnSchema schema, Iterator<?> iterator, int maxRows, String dateFmt);
+
+    /**
+     * Add summary row of block.
+     *
+     * @param schema the column schema
+     */
+    abstract void addSummary(ColumnSchema schema);
+
+    /**
+     * Skip rows to leave blank lines between blocks.
+     *
+     * @param rows the rows
+     */
+    abstract void skipRows(int rows);
+
+    /**
+     * Gets the rows that are still available in current sheet.
+     *
+     * @return the remaining rows
+     */
+    abstract int getRemainingRows();
+
+    /**
+     * Gets the max data rows that one sheet can hold besides header row and
+     * summary row.
+     *
+     * @return the max data rows
+     */
+    abstract int getMaxDataRows();
+
+    /**
+     * Complete the last sheet and write out the file. The output stream is
+     * closed.
+     */
+    abstract void finish();
+
+    /**
+     * Release temporary files and buffers of writer, it is called after
+     * {@link #finish()} or when exportation fails before it. The output
+     * stream is not closed.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,133 @@
+package com.allinmoney.platform.excel;
+
+import java.math.BigDecimal;
+
+import static com.allinmoney.platform.excel.XmlBuffer.ascii;
+
+/**
+ * Encodes rows and cells of SpreadsheetML sheet into {@link XmlBuffer}, it is
+ * shared by {@link XlsxDirectWriter} and {@link TemplateWriter}. A cell is
+ * started by its writer with the reference and style attribute, for example
+ * {@code <c r="A1" s="1}, and completed with its value here.
+ *
+ * @author Chris
+ */
+final class SheetXml {
+
+    private static final byte[] ROW_START = ascii("<row r=\"");
+    private static final byte[] ROW_OPEN = ascii("\">");
+    private static final byte[] ROW_END = ascii("</row>\n");
+    private static final byte[] BLANK = ascii("\"/>");
+    private static final byte[] NUMBER = ascii("\"><v>");
+    private static final byte[] VALUE_END = ascii("</v></c>");
+    private static final byte[] BOOLEAN = ascii("\" t=\"b\"><v>");
+    private static final byte[] ERROR = ascii("\" t=\"e\"><v>");
+    private static final byte[] SHARED_TEXT = ascii("\" t=\"s\"><v>");
+    private static final byte[] TEXT = ascii("\" t=\"inlineStr\"><is><t>");
+    private static final byte[] PRESERVED_TEXT = ascii("\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+    private static final byte[] TEXT_END = ascii("</t></is></c>");
+
+    private SheetXml() {
+    }
+
+    /**
+     * Start a row.
+     *
+     * @param xml the buffer
+     * @param row the zero based row index
+     */
+    static void startRow(XmlBuffer xml, int row) {
+        xml.write(ROW_START).writeLong(row + 1).write(ROW_OPEN);
+    }
+
+    /**
+     * End the row.
+     *
+     * @param xml the buffer
+     */
+    static void endRow(XmlBuffer xml) {
+        xml.write(ROW_END);
+    }
+
+    /**
+     * Complete a cell without value.
+     *
+     * @param xml the buffer
+     */
+    static void writeBlank(XmlBuffer xml) {
+        xml.write(BLANK);
+    }
+
+    /**
+     * Complete a cell with inline text, the leading and trailing whitespaces
+     * are preserved.
+     *
+     * @param xml   the buffer
+     * @param value the text
+     */
+    static void writeText(XmlBuffer xml, String value) {
+        boolean preserve = !value.isEmpty() && (Character.isWhitespace(value.charAt(0))
+                || Character.isWhitespace(value.charAt(value.length() - 1)));
+        xml.write(preserve ? PRESERVED_TEXT : TEXT).writeEscaped(value).write(TEXT_END);
+    }
+
+    /**
+     * Complete a cell with text of shared string table.
+     *
+     * @param xml   the buffer
+     * @param index the index of shared string
+     */
+    static void writeSharedText(XmlBuffer xml, int index) {
+        xml.write(SHARED_TEXT).writeLong(index).write(VALUE_END);
+    }
+
+    /**
+     * Complete a cell with number, NaN and infinity are written as the errors
+     * excel gives for them.
+     *
+     * @param xml   the buffer
+     * @param value the number
+     * @return false if an error is written
+     */
+    static boolean writeNumber(XmlBuffer xml, double value) {
+        if (Double.isNaN(value)) {
+            xml.write(ERROR).writeAscii("#NUM!").write(VALUE_END);
+            return false;
+        } else if (Double.isInfinite(value)) {
+            xml.write(ERROR).writeAscii("#DIV/0!").write(VALUE_END);
+            return false;
+        }
+        xml.write(NUMBER).writeDouble(value).write(VALUE_END);
+        return true;
+    }
+
+    /**
+     * Complete a cell with integral number.
+     *
+     * @param xml   the buffer
+     * @param value the number
+     */
+    static void writeLong(XmlBuffer xml, long value) {
+        xml.write(NUMBER).writeLong(value).write(VALUE_END);
+    }
+
+    /**
+     * Complete a cell with decimal, excel keeps numbers as doubles.
+     *
+     * @param xml   the buffer
+     * @param value the decimal
+     */
+    static void writeDecimal(XmlBuffer xml, BigDecimal value) {
+        xml.write(NUMBER).writeDouble(value.doubleValue()).write(VALUE_END);
+    }
+
+    /**
+     * Complete a cell with boolean.
+     *
+     * @param xml   the buffer
+     * @param value the boolean
+     */
+    static void writeBoolean(XmlBuffer xml, boolean value) {
+        xml.write(BOOLEAN).write(value ? '1' : '0').write(VALUE_END);
+    }
+}
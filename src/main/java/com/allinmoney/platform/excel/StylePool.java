@@ -0,0 +1,91 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fonts and cell styles of one workbook interned by their attributes. All
+ * sheets of the workbook share the pool, so the workbook holds one style for
+ * each distinct {@link StyleSpec} however many sheets and columns use it, it
+ * keeps xls workbooks far below the 4000 styles limit. The pool is thread
+ * safe, sheets filled in parallel may ask for styles concurrently.
+ *
+ * @author Chris
+ */
+final class StylePool {
+
+    private final Workbook workbook;
+    private final Map<StyleSpec, Font> fonts = new HashMap<>();
+    private final Map<StyleSpec, CellStyle> styles = new HashMap<>();
+    private DataFormat dataFormat;
+
+    /**
+     * Instantiates a new style pool.
+     *
+     * @param workbook the workbook
+     */
+    StylePool(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * Gets workbook.
+     *
+     * @return the workbook
+     */
+    Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /**
+     * Gets the font of spec, it is created on first use.
+     *
+     * @param spec the style spec, only the font attributes are used
+     * @return the font
+     */
+    synchronized Font getFont(StyleSpec spec) {
+        return fonts.computeIfAbsent(spec.font(), key -> {
+            Font font = workbook.createFont();
+            font.setFontName(key.getFontName());
+            font.setColor(key.getFontColor());
+            font.setBold(key.isBold());
+            font.setItalic(key.isItalic());
+            font.setFontHeightInPoints(key.getFontHeight());
+            return font;
+        });
+    }
+
+    /**
+     * Gets the cell style of spec, it is created on first use.
+     *
+     * @param spec the style spec
+     * @return the cell style
+     */
+    synchronized CellStyle getStyle(StyleSpec spec) {
+        CellStyle style = styles.get(spec);
+        if (style == null) {
+            style = workbook.createCellStyle();
+            style.setFont(getFont(spec));
+            style.setAlignment(spec.getAlign());
+            style.setWrapText(spec.isWrapText());
+            if (spec.getFillColor() != StyleSpec.NO_FILL) {
+                style.setFillForegroundColor(spec.getFillColor());
+                style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            }
+            if (spec.getFormat() != null) {
+                if (dataFormat == null) {
+                    dataFormat = workbook.createDataFormat();
+                }
+                style.setDataFormat(dataFormat.getFormat(spec.getFormat()));
+            }
+            styles.put(spec, style);
+        }
+        return style;
+    }
+}
@@ -0,0 +1,178 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.ExcelStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
+import java.util.Objects;
+
+/**
+ * The attributes of a cell style and its font. It is immutable and compared
+ * by value, so equal styles of different sheets and columns are created only
+ * once per workbook, see {@link StylePool}.
+ *
+ * @author Chris
+ */
+final class StyleSpec {
+
+    /**
+     * Fill color of style without background.
+     */
+    static final short NO_FILL = -1;
+
+    private static final String FONT_NAME = "Arail narrow";
+    private static final short HEADER_FONT_HEIGHT = 14;
+    private static final short CONTENT_FONT_HEIGHT = 12;
+
+    static final StyleSpec CONTENT = new StyleSpec(FONT_NAME, CONTENT_FONT_HEIGHT, Font.COLOR_NORMAL, true, false,
+            NO_FILL, HorizontalAlignment.GENERAL, false, null);
+    static final StyleSpec MARK_CONTENT = CONTENT.withFontColor(Font.COLOR_RED);
+    static final StyleSpec HEADER = new StyleSpec(FONT_NAME, HEADER_FONT_HEIGHT, IndexedColors.BLACK.getIndex(), true, false,
+            NO_FILL, HorizontalAlignment.CENTER, false, null);
+    static final StyleSpec MARK_HEADER = HEADER.withFontColor(IndexedColors.RED.getIndex());
+
+    private final String fontName;
+    private final short fontHeight;
+    private final short fontColor;
+    private final boolean bold;
+    private final boolean italic;
+    private final short fillColor;
+    private final HorizontalAlignment align;
+    private final boolean wrapText;
+
+    /**
+     * Excel number format, null for general format.
+     */
+    private final String format;
+
+    private StyleSpec(String fontName, short fontHeight, short fontColor, boolean bold, boolean italic,
+                      short fillColor, HorizontalAlignment align, boolean wrapText, String format) {
+        this.fontName = fontName;
+        this.fontHeight = fontHeight;
+        this.fontColor = fontColor;
+        this.bold = bold;
+        this.italic = italic;
+        this.fillColor = fillColor;
+        this.align = align;
+        this.wrapText = wrapText;
+        this.format = format;
+    }
+
+    /**
+     * Gets the content style of column, the attributes of annotation override
+     * the default content style.
+     *
+     * @param style the annotation, null for default style
+     * @param mark  identifies if it is mark column
+     * @return the style spec
+     */
+    static StyleSpec of(ExcelStyle style, boolean mark) {
+        if (style == null) {
+            return mark ? MARK_CONTENT : CONTENT;
+        }
+        return of(style.fontName(), style.fontHeight(), style.fontColor(), style.bold(), style.italic(),
+                style.fillColor(), style.align(), style.wrapText(), style.dataFormat(), mark);
+    }
+
+    /**
+     * Gets the content style of column with the attributes of {@link ExcelStyle},
+     * see {@link ColumnDefinition.Builder#style}.
+     *
+     * @return the style spec
+     */
+    static StyleSpec of(String fontName, short fontHeight, IndexedColors fontColor, boolean bold, boolean italic,
+                        IndexedColors fillColor, HorizontalAlignment align, boolean wrapText, String dataFormat,
+                        boolean mark) {
+        StyleSpec base = mark ? MARK_CONTENT : CONTENT;
+        return new StyleSpec(
+                fontName.isEmpty() ? base.fontName : fontName,
+                fontHeight > 0 ? fontHeight : base.fontHeight,
+                fontColor == IndexedColors.AUTOMATIC ? base.fontColor : fontColor.getIndex(),
+                bold,
+                italic,
+                fillColor == IndexedColors.AUTOMATIC ? NO_FILL : fillColor.getIndex(),
+                align,
+                wrapText,
+                dataFormat.isEmpty() ? null : dataFormat);
+    }
+
+    /**
+     * Gets the same style with another number format.
+     *
+     * @param format the excel number format, null for general format
+     * @return the style spec
+     */
+    StyleSpec withFormat(String format) {
+        return Objects.equals(format, this.format) ? this
+                : new StyleSpec(fontName, fontHeight, fontColor, bold, italic, fillColor, align, wrapText, format);
+    }
+
+    private StyleSpec withFontColor(short fontColor) {
+        return new StyleSpec(fontName, fontHeight, fontColor, bold, italic, fillColor, align, wrapText, format);
+    }
+
+    /**
+     * Gets the spec of font only, styles of equal font share the font.
+     *
+     * @return the font spec
+     */
+    StyleSpec font() {
+        return new StyleSpec(fontName, fontHeight, fontColor, bold, italic, NO_FILL, HorizontalAlignment.GENERAL, false, null);
+    }
+
+    String getFontName() {
+        return fontName;
+    }
+
+    short getFontHeight() {
+        return fontHeight;
+    }
+
+    short getFontColor() {
+        return fontColor;
+    }
+
+    boolean isBold() {
+        return bold;
+    }
+
+    boolean isItalic() {
+        return italic;
+    }
+
+    short getFillColor() {
+        return fillColor;
+    }
+
+    HorizontalAlignment getAlign() {
+        return align;
+    }
+
+    boolean isWrapText() {
+        return wrapText;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StyleSpec)) {
+            return false;
+        }
+        StyleSpec that = (StyleSpec) o;
+        return fontHeight == that.fontHeight && fontColor == that.fontColor && bold == that.bold
+                && italic == that.italic && fillColor == that.fillColor && wrapText == that.wrapText
+                && fontName.equals(that.fontName) && align == that.align && Objects.equals(format, that.format);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fontName, fontHeight, fontColor, bold, italic, fillColor, align, wrapText, format);
+    }
+}
@@ -0,0 +1,215 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.Summary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Accumulates count, sum, min and max of one column while rows are written.
+ * Integral values are added to a primitive long, the sum is promoted to an
+ * exact decimal when it overflows or a fractional value is added. Values are
+ * never read back from the sheet.
+ *
+ * @author Chris
+ */
+public final class SummaryAccumulator {
+
+    private long count;
+
+    private long longSum;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+    private boolean hasLong;
+
+    /**
+     * The exact sum, null until it is promoted.
+     */
+    private BigDecimal decimalSum;
+    private BigDecimal decimalMin;
+    private BigDecimal decimalMax;
+
+    /**
+     * Add integral value.
+     *
+     * @param value the value
+     */
+    public void add(long value) {
+        count++;
+        hasLong = true;
+        if (value < longMin) {
+            longMin = value;
+        }
+        if (value > longMax) {
+            longMax = value;
+        }
+        if (decimalSum != null) {
+            decimalSum = decimalSum.add(BigDecimal.valueOf(value));
+            return;
+        }
+        long sum = longSum + value;
+        if (((longSum ^ sum) & (value ^ sum)) < 0) {
+            // overflow, continue with exact decimal
+            decimalSum = BigDecimal.valueOf(longSum).add(BigDecimal.valueOf(value));
+        } else {
+            longSum = sum;
+        }
+    }
+
+    /**
+     * Add floating value, it is added as the exact decimal of its shortest
+     * representation. NaN and infinite values are ignored.
+     *
+     * @param value the value
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value == (long) value && Math.abs(value) < 0x1p53) {
+            add((long) value);
+            return;
+        }
+        add(BigDecimal.valueOf(value));
+    }
+
+    /**
+     * Add decimal value.
+     *
+     * @param value the value
+     */
+    public void add(BigDecimal value) {
+        count++;
+        if (decimalSum == null) {
+            decimalSum = BigDecimal.valueOf(longSum);
+        }
+        decimalSum = decimalSum.add(value);
+        if (decimalMin == null || value.compareTo(decimalMin) < 0) {
+            decimalMin = value;
+        }
+        if (decimalMax == null || value.compareTo(decimalMax) > 0) {
+            decimalMax = value;
+        }
+    }
+
+    /**
+     * Add number of any type, null is ignored.
+     *
+     * @param value the value
+     */
+    public void add(Number value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            add(value.longValue());
+        } else if (value instanceof BigDecimal) {
+            add((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            add(new BigDecimal((BigInteger) value));
+        } else if (value instanceof Double || value instanceof Float) {
+            add(value.doubleValue());
+        } else {
+            add(new BigDecimal(value.toString()));
+        }
+    }
+
+    /**
+     * Gets count of added values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets sum of added values.
+     *
+     * @return the sum, zero if no value is added
+     */
+    public BigDecimal getSum() {
+        return decimalSum != null ? decimalSum : BigDecimal.valueOf(longSum);
+    }
+
+    /**
+     * Gets min of added values.
+     *
+     * @return the min, null if no value is added
+     */
+    public BigDecimal getMin() {
+        BigDecimal min = hasLong ? BigDecimal.valueOf(longMin) : null;
+        if (decimalMin != null && (min == null || decimalMin.compareTo(min) < 0)) {
+            min = decimalMin;
+        }
+        return min;
+    }
+
+    /**
+     * Gets max of added values.
+     *
+     * @return the max, null if no value is added
+     */
+    public BigDecimal getMax() {
+        BigDecimal max = hasLong ? BigDecimal.valueOf(longMax) : null;
+        if (decimalMax != null && (max == null || decimalMax.compareTo(max) > 0)) {
+            max = decimalMax;
+        }
+        return max;
+    }
+
+    /**
+     * Gets average of added values.
+     *
+     * @return the average, null if no value is added
+     */
+    public BigDecimal getAverage() {
+        if (count == 0) {
+            return null;
+        }
+        return getSum().divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+    }
+
+    /**
+     * Gets result of summary function.
+     *
+     * @param summary the summary function
+     * @return the result, null if function has no result
+     */
+    public BigDecimal get(Summary summary) {
+        switch (summary) {
+            case SUM:
+                return getSum();
+            case COUNT:
+                return BigDecimal.valueOf(count);
+            case MIN:
+                return getMin();
+            case MAX:
+                return getMax();
+            case AVERAGE:
+                return getAverage();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets text of summary cell like "合计: 100.00", values other than count
+     * are rounded to two decimal places.
+     *
+     * @param summary the summary function
+     * @return the text
+     */
+    public String getText(Summary summary) {
+        BigDecimal value = get(summary);
+        String text = summary.getLabel() + ": ";
+        if (summary == Summary.COUNT) {
+            return text + value.toPlainString();
+        } else if (value != null) {
+            return text + value.setScale(2, BigDecimal.ROUND_HALF_EVEN).toPlainString();
+        }
+        return text;
+    }
+}
@@ -0,0 +1,192 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a fresh copy of {@link ExcelTemplate} with content rows below its
+ * header row. The parts of template are copied as they are, rows are
+ * streamed into the template sheet through one reusable {@link XmlBuffer}.
+ *
+ * @author Chris
+ */
+final class TemplateWriter {
+
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    private final ExcelTemplate template;
+    private final ZipOutputStream zip;
+    private final XmlBuffer xml = new XmlBuffer();
+    private final CellCodecs codecs;
+    private ExcelMetrics metrics = ExcelMetrics.NOOP;
+    private int rowNum;
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param template the template
+     * @param os       the output stream
+     * @param codecs   the codecs of cell values
+     */
+    TemplateWriter(ExcelTemplate template, OutputStream os, CellCodecs codecs) {
+        this.template = template;
+        this.zip = new ZipOutputStream(os);
+        this.zip.setLevel(Deflater.BEST_SPEED);
+        this.codecs = codecs;
+        this.xml.setOutput(zip);
+    }
+
+    /**
+     * Sets the metrics of exportation.
+     *
+     * @param metrics the metrics
+     * @return the template writer
+     */
+    TemplateWriter setMetrics(ExcelMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Write the template with rows of iterator and close the output stream.
+     *
+     * @param iterator the iterator of data
+     */
+    void write(Iterator<?> iterator) {
+        try {
+            long start = System.nanoTime();
+            long content = 0;
+            for (ExcelTemplate.Part part : template.getParts()) {
+                zip.putNextEntry(part.newEntry());
+                if (!part.getName().equals(template.getSheetPart())) {
+                    zip.write(part.getData());
+                    zip.closeEntry();
+                    continue;
+                }
+
+                zip.write(template.getSheetHead());
+                metrics.sheetCreated();
+                long contentStart = System.nanoTime();
+                addContent(iterator);
+                content = System.nanoTime() - contentStart;
+                zip.write(template.getSheetTail());
+                zip.closeEntry();
+            }
+            zip.close();
+            // copying parts of template
+            metrics.phase(ExcelMetrics.Phase.SERIALIZE, System.nanoTime() - start - content);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    private void addContent(Iterator<?> iterator) {
+        long start = System.nanoTime();
+        List<ColumnSchema.Column> columns = template.getColumnSchema().getColumns();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns.size()];
+        for (int j = 0; j < encoders.length; j++) {
+            if (template.getCellRef(j) != null) {
+                encoders[j] = new ColumnEncoder(columns.get(j), codecs);
+            }
+        }
+
+        int[] order = template.getColumnOrder();
+        TemplateCellSink sink = new TemplateCellSink(columns);
+        rowNum = template.getHeaderRow() + 1;
+        int rows = 0;
+        for (; iterator.hasNext(); rows++) {
+            if (rowNum >= MAX_ROWS) {
+                throw new ExcelException("Template sheet " + template.getSheetName() + " can not hold more than "
+                        + rows + " rows");
+            }
+            Object data = iterator.next();
+            SheetXml.startRow(xml, rowNum);
+            for (int j : order) {
+                sink.moveTo(j);
+                encoders[j].encode(data, sink);
+            }
+            SheetXml.endRow(xml);
+            rowNum++;
+            xml.flushIfFull();
+        }
+        xml.flush();
+        metrics.phase(ExcelMetrics.Phase.CONTENT, System.nanoTime() - start);
+        metrics.rowsWritten(rows);
+    }
+
+    /**
+     * Writes typed values as cells of current row with the styles of template.
+     */
+    private final class TemplateCellSink implements CellSink {
+        private final List<ColumnSchema.Column> columns;
+        private int col;
+
+        private TemplateCellSink(List<ColumnSchema.Column> columns) {
+            this.columns = columns;
+        }
+
+        private void moveTo(int col) {
+            this.col = col;
+        }
+
+        private void start(byte[] style) {
+            xml.write(template.getCellRef(col)).writeLong(rowNum + 1).write(style);
+        }
+
+        @Override
+        public void writeBlank() {
+            start(template.getTextStyle(col));
+            SheetXml.writeBlank(xml);
+        }
+
+        @Override
+        public void writeText(String value) {
+            start(template.getTextStyle(col));
+            SheetXml.writeText(xml, value);
+        }
+
+        @Override
+        public void writeNumber(double value) {
+            start(template.getTextStyle(col));
+            SheetXml.writeNumber(xml, value);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            start(template.getTextStyle(col));
+            SheetXml.writeLong(xml, value);
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            byte[] style = template.getDecimalStyle(col);
+            start(style != null ? style : template.getTextStyle(col));
+            SheetXml.writeDecimal(xml, value);
+        }
+
+        @Override
+        public void writeBoolean(boolean value) {
+            start(template.getTextStyle(col));
+            SheetXml.writeBoolean(xml, value);
+        }
+
+        @Override
+        public void writeDate(double serial) {
+            byte[] style = template.getDateStyle(col);
+            start(style != null ? style : template.getTextStyle(col));
+            SheetXml.writeNumber(xml, serial);
+        }
+
+        @Override
+        public String getDatePattern() {
+            return columns.get(col).getFormat();
+        }
+    }
+}
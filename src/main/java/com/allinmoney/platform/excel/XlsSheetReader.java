@@ -0,0 +1,184 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads sheet of xls file with the record listener of hssf event model.
+ *
+ * @author Chris
+ */
+final class XlsSheetReader extends SheetReader {
+
+    private static final short CONTINUE = 0;
+    private static final short STOP = 1;
+
+    /**
+     * Cached result types of formula record, the codes of {@link CellType}.
+     */
+    private static final int RESULT_NUMERIC = 0;
+    private static final int RESULT_BOOLEAN = 4;
+    private static final int RESULT_ERROR = 5;
+
+    XlsSheetReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public void read(String sheetName, RowHandler handler) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            Listener listener = new Listener(sheetName, handler);
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(listener);
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+            if (!listener.found) {
+                throw new ExcelException("Sheet " + sheetName + " is not existing");
+            }
+        } catch (HSSFUserException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    private static final class Listener extends AbortableHSSFListener {
+        private final String sheetName;
+        private final RowHandler handler;
+        private final FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(null);
+        private final RawRow row = new RawRow();
+        private final List<String> sheetNames = new ArrayList<>();
+
+        private SSTRecord sst;
+        private int sheetIndex = -1;
+        private boolean active;
+        private boolean found;
+        private int rowNum = -1;
+
+        /**
+         * Column of formula cell whose string result is in next string record.
+         */
+        private int pendingStringColumn = -1;
+
+        private Listener(String sheetName, RowHandler handler) {
+            this.sheetName = sheetName;
+            this.handler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            formats.processRecordInternally(record);
+            switch (record.getSid()) {
+                case BoundSheetRecord.sid:
+                    sheetNames.add(((BoundSheetRecord) record).getSheetname());
+                    break;
+                case SSTRecord.sid:
+                    sst = (SSTRecord) record;
+                    break;
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        sheetIndex++;
+                        String name = sheetIndex < sheetNames.size() ? sheetNames.get(sheetIndex) : null;
+                        active = isTarget(sheetName, name, sheetIndex);
+                        found |= active;
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (active) {
+                        flush();
+                        return STOP;
+                    }
+                    break;
+                default:
+                    if (active && record instanceof CellValueRecordInterface) {
+                        return cell((CellValueRecordInterface) record);
+                    }
+                    if (active && record instanceof StringRecord && pendingStringColumn >= 0) {
+                        row.setString(pendingStringColumn, ((StringRecord) record).getString());
+                        pendingStringColumn = -1;
+                    }
+                    break;
+            }
+            return CONTINUE;
+        }
+
+        private short cell(CellValueRecordInterface cell) {
+            if (cell.getRow() != rowNum) {
+                if (!flush()) {
+                    return STOP;
+                }
+                rowNum = cell.getRow();
+                row.reset(rowNum);
+            }
+
+            int col = cell.getColumn();
+            switch (((Record) cell).getSid()) {
+                case NumberRecord.sid:
+                    row.setNumber(col, ((NumberRecord) cell).getValue(), isDate(cell));
+                    break;
+                case LabelSSTRecord.sid:
+                    row.setString(col, sst.getString(((LabelSSTRecord) cell).getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    row.setString(col, ((LabelRecord) cell).getValue());
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) cell;
+                    if (boolErr.isBoolean()) {
+                        row.setBoolean(col, boolErr.getBooleanValue());
+                    } else {
+                        row.setError(col);
+                    }
+                    break;
+                case FormulaRecord.sid:
+                    formula((FormulaRecord) cell, col);
+                    break;
+                default:
+                    break;
+            }
+            return CONTINUE;
+        }
+
+        private void formula(FormulaRecord formula, int col) {
+            if (formula.hasCachedResultString()) {
+                pendingStringColumn = col;
+                return;
+            }
+            switch (formula.getCachedResultType()) {
+                case RESULT_NUMERIC:
+                    row.setNumber(col, formula.getValue(), isDate(formula));
+                    break;
+                case RESULT_BOOLEAN:
+                    row.setBoolean(col, formula.getCachedBooleanValue());
+                    break;
+                case RESULT_ERROR:
+                    row.setError(col);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private boolean isDate(CellValueRecordInterface cell) {
+            return DateUtil.isADateFormat(formats.getFormatIndex(cell), formats.getFormatString(cell));
+        }
+
+        private boolean flush() {
+            if (rowNum < 0 || row.isEmpty()) {
+                return true;
+            }
+            boolean next = handler.handle(row);
+            row.reset(rowNum);
+            return next;
+        }
+    }
+}
@@ -0,0 +1,753 @@
+package com.allinmoney.platform.excel;
+
+import com.allinmoney.platform.annotation.Summary;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.allinmoney.platform.excel.XmlBuffer.ascii;
+
+/**
+ * Writes sheets of {@link ExcelType#XLSX_DIRECT} as SpreadsheetML straight
+ * into the zip stream without POI workbook. Cells are written with inline
+ * strings through one reusable {@link XmlBuffer}, the cell reference prefixes,
+ * style attributes and header cells are encoded once. The rows measured for
+ * column widths are held in the buffer until the widths are known, then
+ * the sheet is streamed.
+ *
+ * @author Chris
+ */
+final class XlsxDirectWriter extends SheetWriter {
+
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    /**
+     * Rows measured for column widths when all rows are asked to be measured,
+     * the measured rows are held in memory.
+     */
+    private static final int DEFAULT_SAMPLE_ROWS = 100;
+
+    /**
+     * Rows below header which prompts and combos apply to.
+     */
+    private static final int VALIDATION_ROWS = 100;
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    /**
+     * Header styles of styles.xml, they are registered first, other styles
+     * are appended in the order they are used.
+     */
+    private static final int HEADER_STYLE = 1;
+    private static final int MARK_HEADER_STYLE = 2;
+    private static final int FIRST_CUSTOM_FORMAT = 164;
+    private static final String DECIMAL_FORMAT = "0.00";
+
+    private static final byte[] FORMULA = ascii("\"><f>");
+    private static final byte[] FORMULA_END = ascii("</f></c>");
+
+    private final ZipOutputStream zip;
+    private final XmlBuffer xml = new XmlBuffer();
+    private final int sampleRows;
+    private final boolean summaryFormula;
+    private final CellCodecs codecs;
+
+    /**
+     * The shared strings, null if texts are inlined.
+     */
+    private final SharedStringTable strings;
+
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Map<ColumnSchema, byte[][]> headerCells = new IdentityHashMap<>();
+    private byte[][] cellRefs = new byte[0][];
+
+    /**
+     * The style attribute of each cell style like {@code " s="1}.
+     */
+    private final List<byte[]> styleAttrs = new ArrayList<>();
+
+    /**
+     * Cell styles, fonts and fills of the workbook interned by attributes,
+     * the default style, font and fills are not in the maps.
+     */
+    private final Map<StyleSpec, Integer> styles = new LinkedHashMap<>();
+    private final Map<StyleSpec, Integer> fonts = new LinkedHashMap<>();
+    private final Map<Short, Integer> fills = new LinkedHashMap<>();
+    private final Map<String, Integer> numFmts = new HashMap<>();
+    private boolean hasFormula;
+
+    /**
+     * State of current sheet.
+     */
+    private boolean inSheet;
+    private boolean headWritten;
+    private int rowNum;
+    private int firstContentRow;
+    private SummaryAccumulator[] summaries;
+    private ColumnWidthEstimator widths;
+    private final XmlBuffer validations = new XmlBuffer(1024);
+    private int validationCount;
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param os             the output stream
+     * @param sampleRows     the rows measured for column widths
+     * @param summaryFormula identifies if summary row is written as formulas
+     * @param codecs         the codecs of cell values
+     * @param sharedStrings  the policy of shared strings
+     */
+    XlsxDirectWriter(OutputStream os, int sampleRows, boolean summaryFormula, CellCodecs codecs,
+                     SharedStringPolicy sharedStrings) {
+        this.zip = new ZipOutputStream(os);
+        this.zip.setLevel(Deflater.BEST_SPEED);
+        this.sampleRows = sampleRows > 0 ? sampleRows : DEFAULT_SAMPLE_ROWS;
+        this.summaryFormula = summaryFormula;
+        this.codecs = codecs;
+        this.strings = sharedStrings == null || sharedStrings == SharedStringPolicy.NEVER
+                ? null : new SharedStringTable(sharedStrings);
+        this.xml.setOutput(zip);
+        this.validations.setOutput(zip);
+        styleAttrs.add(ascii("\" s=\"0"));
+        getStyle(StyleSpec.HEADER);
+        getStyle(StyleSpec.MARK_HEADER);
+    }
+
+    @Override
+    void newSheet(String name) {
+        WorkbookUtil.validateSheetName(name);
+        for (String sheetName : sheetNames) {
+            if (sheetName.equalsIgnoreCase(name)) {
+                throw new IllegalArgumentException("The workbook already contains a sheet named '" + name + "'");
+            }
+        }
+        endSheet();
+        sheetNames.add(name);
+        putEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml");
+        inSheet = true;
+        headWritten = false;
+        rowNum = 0;
+        summaries = null;
+        widths = new ColumnWidthEstimator(sampleRows);
+        validationCount = 0;
+        xml.hold();
+        metrics.sheetCreated();
+    }
+
+    @Override
+    void addHeaders(ColumnSchema schema, String dateFmt) {
+        long start = System.nanoTime();
+        byte[][] cells = headerCells.computeIfAbsent(schema, XlsxDirectWriter::headerCells);
+        int headerRow = rowNum++;
+        SheetXml.startRow(xml, headerRow);
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.isExport())
+                continue;
+
+            int i = column.getIndex();
+            xml.write(cellRef(i)).writeLong(headerRow + 1).write(cells[i]);
+
+            if (StringUtils.isNotBlank(column.getPrompt())) {
+                addPrompt(column.getPrompt(), headerRow, i);
+            }
+            if (column.hasCombo()) {
+                addCombo(column.getCombo(), headerRow, i);
+            }
+
+            if (column.getWidth() >= 0) {
+                widths.fix(i, column.getWidth());
+            } else {
+                widths.measureHeader(i, column.getTitle());
+            }
+        }
+        SheetXml.endRow(xml);
+        firstContentRow = rowNum;
+        summaries = null;
+        metrics.phase(ExcelMetrics.Phase.HEADER, System.nanoTime() - start);
+    }
+
+    @Override
+    int addContent(ColumnSchema schema, Iterator<?> iterator, int maxRows, String dateFmt) {
+        long start = System.nanoTime();
+        if (summaries == null) {
+            summaries = new SummaryAccumulator[schema.size()];
+            for (ColumnSchema.Column column : schema.getColumns()) {
+                if (column.hasSummary()) {
+                    summaries[column.getIndex()] = new SummaryAccumulator();
+                }
+            }
+        }
+
+        List<ColumnSchema.Column> columns = schema.getColumns();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns.size()];
+        for (int j = 0; j < encoders.length; j++) {
+            if (columns.get(j).isExport()) {
+                encoders[j] = new ColumnEncoder(columns.get(j), codecs);
+                cellRef(j);
+            }
+        }
+
+        DirectCellSink sink = new DirectCellSink(columns, dateFmt);
+        int rows = 0;
+        for (; rows < maxRows && iterator.hasNext(); rows++) {
+            Object data = iterator.next();
+            SheetXml.startRow(xml, rowNum);
+            for (int j = 0; j < encoders.length; j++) {
+                if (encoders[j] == null)
+                    continue;
+
+                sink.moveTo(j);
+                encoders[j].encode(data, sink);
+            }
+            SheetXml.endRow(xml);
+            rowNum++;
+            widths.nextRow();
+            if (!headWritten && !widths.isSampling()) {
+                writeHead();
+            }
+            xml.flushIfFull();
+        }
+        metrics.phase(ExcelMetrics.Phase.CONTENT, System.nanoTime() - start);
+        metrics.rowsWritten(rows);
+        return rows;
+    }
+
+    @Override
+    void addSummary(ColumnSchema schema) {
+        long start = System.nanoTime();
+        int lastContentRow = rowNum - 1;
+        int sumRow = rowNum++;
+        SheetXml.startRow(xml, sumRow);
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            if (!column.hasSummary())
+                continue;
+
+            int i = column.getIndex();
+            Summary summary = column.getSummary();
+            xml.write(cellRef(i)).writeLong(sumRow + 1);
+            if (summaryFormula && lastContentRow >= firstContentRow) {
+                String col = CellReference.convertNumToColString(i);
+                xml.write(FORMULA).writeAscii(summary.getFunction()).write('(')
+                        .writeAscii(col).writeLong(firstContentRow + 1).write(':')
+                        .writeAscii(col).writeLong(lastContentRow + 1).write(')').write(FORMULA_END);
+                hasFormula = true;
+                continue;
+            }
+
+            SummaryAccumulator accumulator = summaries == null ? null : summaries[i];
+            String txtValue = (accumulator == null ? new SummaryAccumulator() : accumulator).getText(summary);
+            SheetXml.writeText(xml, txtValue);
+            widths.measure(i, ColumnWidthEstimator.displayWidth(txtValue));
+        }
+        SheetXml.endRow(xml);
+        summaries = null;
+        metrics.phase(ExcelMetrics.Phase.SUMMARY, System.nanoTime() - start);
+    }
+
+    @Override
+    void skipRows(int rows) {
+        rowNum += rows;
+    }
+
+    @Override
+    int getRemainingRows() {
+        return MAX_ROWS - rowNum;
+    }
+
+    @Override
+    int getMaxDataRows() {
+        return MAX_ROWS - 2;
+    }
+
+    @Override
+    void finish() {
+        long start = System.nanoTime();
+        try {
+            endSheet();
+            writeWorkbook();
+            writeStyles();
+            if (hasSharedStrings()) {
+                writeSharedStrings();
+            }
+            writeRelationships();
+            writeContentTypes();
+            zip.close();
+            metrics.phase(ExcelMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (strings != null) {
+            strings.close();
+        }
+    }
+
+    private void addPrompt(String prompt, int headerRow, int col) {
+        validations.writeAscii("<dataValidation type=\"custom\" allowBlank=\"1\" showInputMessage=\"1\" promptTitle=\"")
+                .writeEscaped("提示").writeAscii("\" prompt=\"").writeEscaped(prompt).writeAscii("\" sqref=\"");
+        writeValidationRange(headerRow, col);
+        validations.writeAscii("\"><formula1>DD1</formula1></dataValidation>");
+        validationCount++;
+    }
+
+    private void addCombo(String[] combo, int headerRow, int col) {
+        validations.writeAscii("<dataValidation type=\"list\" allowBlank=\"1\" showErrorMessage=\"1\" sqref=\"");
+        writeValidationRange(headerRow, col);
+        validations.writeAscii("\"><formula1>").writeEscaped("\"" + String.join(",", combo) + "\"")
+                .writeAscii("</formula1></dataValidation>");
+        validationCount++;
+    }
+
+    private void writeValidationRange(int headerRow, int col) {
+        String letters = CellReference.convertNumToColString(col);
+        validations.writeAscii(letters).writeLong(headerRow + 2).write(':')
+                .writeAscii(letters).writeLong(headerRow + VALIDATION_ROWS + 1);
+    }
+
+    /**
+     * Write head of sheet with the estimated column widths, then the held rows.
+     */
+    private void writeHead() {
+        XmlBuffer head = new XmlBuffer(1024);
+        head.setOutput(zip);
+        head.writeAscii(XML_DECLARATION).writeAscii("<worksheet xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">");
+        boolean hasCols = false;
+        for (int col = 0; col < cellRefs.length; col++) {
+            int width = widths.getWidth(col);
+            if (width <= 0) {
+                continue;
+            }
+            if (!hasCols) {
+                head.writeAscii("<cols>");
+                hasCols = true;
+            }
+            head.writeAscii("<col min=\"").writeLong(col + 1).writeAscii("\" max=\"").writeLong(col + 1)
+                    .writeAscii("\" width=\"").writeLong(width).writeAscii("\" customWidth=\"1\"/>");
+        }
+        if (hasCols) {
+            head.writeAscii("</cols>");
+        }
+        head.writeAscii("<sheetData>\n");
+        head.flush();
+        headWritten = true;
+        // the widths are written with the head, the rows measured so far were held for them
+        metrics.rowsInMemory(rowNum);
+        xml.release();
+        xml.flush();
+    }
+
+    private void endSheet() {
+        if (!inSheet) {
+            return;
+        }
+        if (!headWritten) {
+            writeHead();
+        }
+        xml.writeAscii("</sheetData>");
+        xml.flush();
+        if (validationCount > 0) {
+            xml.writeAscii("<dataValidations count=\"").writeLong(validationCount).writeAscii("\">");
+            xml.flush();
+            validations.flush();
+            xml.writeAscii("</dataValidations>");
+        }
+        xml.writeAscii("</worksheet>");
+        xml.flush();
+        closeEntry();
+        inSheet = false;
+    }
+
+    private void writeWorkbook() {
+        putEntry("xl/workbook.xml");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\"><sheets>");
+        for (int i = 0; i < sheetNames.size(); i++) {
+            xml.writeAscii("<sheet name=\"").writeEscaped(sheetNames.get(i)).writeAscii("\" sheetId=\"").writeLong(i + 1)
+                    .writeAscii("\" r:id=\"rId").writeLong(i + 1).writeAscii("\"/>");
+        }
+        xml.writeAscii("</sheets>");
+        if (hasFormula) {
+            xml.writeAscii("<calcPr fullCalcOnLoad=\"1\"/>");
+        }
+        xml.writeAscii("</workbook>");
+        closeEntry();
+    }
+
+    private void writeStyles() {
+        putEntry("xl/styles.xml");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<styleSheet xmlns=\"" + MAIN_NS + "\">");
+        if (!numFmts.isEmpty()) {
+            String[] formats = new String[numFmts.size()];
+            numFmts.forEach((format, id) -> formats[id - FIRST_CUSTOM_FORMAT] = format);
+            xml.writeAscii("<numFmts count=\"").writeLong(formats.length).writeAscii("\">");
+            for (int i = 0; i < formats.length; i++) {
+                xml.writeAscii("<numFmt numFmtId=\"").writeLong(FIRST_CUSTOM_FORMAT + i)
+                        .writeAscii("\" formatCode=\"").writeEscaped(formats[i]).writeAscii("\"/>");
+            }
+            xml.writeAscii("</numFmts>");
+        }
+        xml.writeAscii("<fonts count=\"").writeLong(fonts.size() + 1).writeAscii("\">")
+                .writeAscii("<font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font>");
+        for (StyleSpec font : fonts.keySet()) {
+            writeFont(font);
+        }
+        xml.writeAscii("</fonts>")
+                .writeAscii("<fills count=\"").writeLong(fills.size() + 2).writeAscii("\">")
+                .writeAscii("<fill><patternFill patternType=\"none\"/></fill>")
+                .writeAscii("<fill><patternFill patternType=\"gray125\"/></fill>");
+        for (short color : fills.keySet()) {
+            xml.writeAscii("<fill><patternFill patternType=\"solid\"><fgColor indexed=\"").writeLong(color)
+                    .writeAscii("\"/><bgColor indexed=\"64\"/></patternFill></fill>");
+        }
+        xml.writeAscii("</fills>")
+                .writeAscii("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+                .writeAscii("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+                .writeAscii("<cellXfs count=\"").writeLong(styleAttrs.size()).writeAscii("\">")
+                .writeAscii("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        for (StyleSpec style : styles.keySet()) {
+            writeXf(style);
+        }
+        xml.writeAscii("</cellXfs>")
+                .writeAscii("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+                .writeAscii("</styleSheet>");
+        closeEntry();
+    }
+
+    private void writeFont(StyleSpec font) {
+        xml.writeAscii("<font>");
+        if (font.isBold()) {
+            xml.writeAscii("<b/>");
+        }
+        if (font.isItalic()) {
+            xml.writeAscii("<i/>");
+        }
+        xml.writeAscii("<sz val=\"").writeLong(font.getFontHeight()).writeAscii("\"/>");
+        if (font.getFontColor() != Font.COLOR_NORMAL) {
+            xml.writeAscii("<color indexed=\"").writeLong(font.getFontColor()).writeAscii("\"/>");
+        }
+        xml.writeAscii("<name val=\"").writeEscaped(font.getFontName()).writeAscii("\"/></font>");
+    }
+
+    private void writeXf(StyleSpec style) {
+        int fill = style.getFillColor() == StyleSpec.NO_FILL ? 0 : fills.get(style.getFillColor());
+        int numFmtId = getNumFmt(style.getFormat());
+        xml.writeAscii("<xf numFmtId=\"").writeLong(numFmtId).writeAscii("\" fontId=\"").writeLong(fonts.get(style.font()))
+                .writeAscii("\" fillId=\"").writeLong(fill).writeAscii("\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"");
+        if (numFmtId != 0) {
+            xml.writeAscii(" applyNumberFormat=\"1\"");
+        }
+        if (fill != 0) {
+            xml.writeAscii(" applyFill=\"1\"");
+        }
+        if (style.getAlign() == HorizontalAlignment.GENERAL && !style.isWrapText()) {
+            xml.writeAscii("/>");
+            return;
+        }
+        xml.writeAscii(" applyAlignment=\"1\"><alignment");
+        if (style.getAlign() != HorizontalAlignment.GENERAL) {
+            xml.writeAscii(" horizontal=\"").writeAscii(alignment(style.getAlign())).write('"');
+        }
+        if (style.isWrapText()) {
+            xml.writeAscii(" wrapText=\"1\"");
+        }
+        xml.writeAscii("/></xf>");
+    }
+
+    private static String alignment(HorizontalAlignment align) {
+        switch (align) {
+            case CENTER_SELECTION:
+                return "centerContinuous";
+            default:
+                return align.name().toLowerCase();
+        }
+    }
+
+    private boolean hasSharedStrings() {
+        return strings != null && strings.getUniqueCount() > 0;
+    }
+
+    private void writeSharedStrings() {
+        putEntry("xl/sharedStrings.xml");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<sst xmlns=\"" + MAIN_NS + "\" count=\"").writeLong(strings.getCount())
+                .writeAscii("\" uniqueCount=\"").writeLong(strings.getUniqueCount()).writeAscii("\">");
+        xml.flush();
+        strings.copyTo(zip);
+        xml.writeAscii("</sst>");
+        closeEntry();
+    }
+
+    private void writeRelationships() {
+        putEntry("_rels/.rels");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">")
+                .writeAscii("<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>")
+                .writeAscii("</Relationships>");
+        closeEntry();
+
+        putEntry("xl/_rels/workbook.xml.rels");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.writeAscii("<Relationship Id=\"rId").writeLong(i).writeAscii("\" Type=\"" + REL_NS + "/worksheet\" Target=\"worksheets/sheet")
+                    .writeLong(i).writeAscii(".xml\"/>");
+        }
+        xml.writeAscii("<Relationship Id=\"rId").writeLong(sheetNames.size() + 1)
+                .writeAscii("\" Type=\"" + REL_NS + "/styles\" Target=\"styles.xml\"/>");
+        if (hasSharedStrings()) {
+            xml.writeAscii("<Relationship Id=\"rId").writeLong(sheetNames.size() + 2)
+                    .writeAscii("\" Type=\"" + REL_NS + "/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        }
+        xml.writeAscii("</Relationships>");
+        closeEntry();
+    }
+
+    private void writeContentTypes() {
+        String type = "application/vnd.openxmlformats-";
+        putEntry("[Content_Types].xml");
+        xml.writeAscii(XML_DECLARATION).writeAscii("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .writeAscii("<Default Extension=\"rels\" ContentType=\"" + type + "package.relationships+xml\"/>")
+                .writeAscii("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .writeAscii("<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + type + "officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .writeAscii("<Override PartName=\"/xl/styles.xml\" ContentType=\"" + type + "officedocument.spreadsheetml.styles+xml\"/>");
+        if (hasSharedStrings()) {
+            xml.writeAscii("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"" + type + "officedocument.spreadsheetml.sharedStrings+xml\"/>");
+        }
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.writeAscii("<Override PartName=\"/xl/worksheets/sheet").writeLong(i)
+                    .writeAscii(".xml\" ContentType=\"" + type + "officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        xml.writeAscii("</Types>");
+        closeEntry();
+    }
+
+    private void putEntry(String name) {
+        try {
+            zip.putNextEntry(new ZipEntry(name));
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    private void closeEntry() {
+        xml.flush();
+        try {
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the encoded prefix of cell reference like {@code <c r="AB}.
+     */
+    private byte[] cellRef(int col) {
+        if (col >= cellRefs.length) {
+            byte[][] refs = new byte[Math.max(col + 1, cellRefs.length * 2)][];
+            System.arraycopy(cellRefs, 0, refs, 0, cellRefs.length);
+            for (int i = cellRefs.length; i < refs.length; i++) {
+                refs[i] = ascii("<c r=\"" + CellReference.convertNumToColString(i));
+            }
+            cellRefs = refs;
+        }
+        return cellRefs[col];
+    }
+
+    /**
+     * Encode header cells of schema after the row number of cell reference.
+     */
+    private static byte[][] headerCells(ColumnSchema schema) {
+        byte[][] cells = new byte[schema.size()][];
+        XmlBuffer buffer = new XmlBuffer(256);
+        for (ColumnSchema.Column column : schema.getColumns()) {
+            buffer.reset();
+            buffer.writeAscii("\" s=\"").writeLong(column.isMark() ? MARK_HEADER_STYLE : HEADER_STYLE);
+            SheetXml.writeText(buffer, column.getTitle());
+            cells[column.getIndex()] = buffer.toByteArray();
+        }
+        return cells;
+    }
+
+    /**
+     * Gets the cell style of spec, one style is created for each distinct spec
+     * of the workbook.
+     */
+    private int getStyle(StyleSpec spec) {
+        Integer style = styles.get(spec);
+        if (style == null) {
+            fonts.putIfAbsent(spec.font(), fonts.size() + 1);
+            if (spec.getFillColor() != StyleSpec.NO_FILL) {
+                // fills 0 and 1 are reserved
+                fills.putIfAbsent(spec.getFillColor(), fills.size() + 2);
+            }
+            getNumFmt(spec.getFormat());
+            style = styleAttrs.size();
+            styleAttrs.add(ascii("\" s=\"" + style));
+            styles.put(spec, style);
+        }
+        return style;
+    }
+
+    /**
+     * Gets id of excel number format, custom formats are numbered from 164.
+     */
+    private int getNumFmt(String format) {
+        if (format == null) {
+            return 0;
+        }
+        int builtin = BuiltinFormats.getBuiltinFormat(format);
+        if (builtin >= 0) {
+            return builtin;
+        }
+        return numFmts.computeIfAbsent(format, key -> FIRST_CUSTOM_FORMAT + numFmts.size());
+    }
+
+    /**
+     * Writes typed values as cells of current row, it keeps the summaries
+     * and column widths.
+     */
+    private final class DirectCellSink implements CellSink {
+        private final List<ColumnSchema.Column> columns;
+        private final String dateFmt;
+
+        /**
+         * Content, date and decimal styles of each column, resolved on first value.
+         */
+        private final int[] contentStyles;
+        private final int[] columnDateStyles;
+        private final int[] decimalStyles;
+        private final int[] dateWidths;
+
+        private int col;
+        private ColumnSchema.Column column;
+
+        private DirectCellSink(List<ColumnSchema.Column> columns, String dateFmt) {
+            this.columns = columns;
+            this.dateFmt = dateFmt;
+            this.contentStyles = new int[columns.size()];
+            this.columnDateStyles = new int[columns.size()];
+            this.decimalStyles = new int[columns.size()];
+            this.dateWidths = new int[columns.size()];
+        }
+
+        private void moveTo(int col) {
+            this.col = col;
+            this.column = columns.get(col);
+        }
+
+        private void start(int style) {
+            xml.write(cellRefs[col]).writeLong(rowNum + 1).write(styleAttrs.get(style));
+        }
+
+        private int style() {
+            if (contentStyles[col] == 0) {
+                contentStyles[col] = getStyle(column.getStyle());
+            }
+            return contentStyles[col];
+        }
+
+        @Override
+        public void writeBlank() {
+            start(style());
+            SheetXml.writeBlank(xml);
+        }
+
+        @Override
+        public void writeText(String value) {
+            start(style());
+            int shared = strings == null ? -1 : strings.indexOf(value);
+            if (shared >= 0) {
+                SheetXml.writeSharedText(xml, shared);
+                widths.measure(col, value);
+                return;
+            }
+            SheetXml.writeText(xml, value);
+            widths.measure(col, value);
+        }
+
+        @Override
+        public void writeNumber(double value) {
+            start(style());
+            if (!SheetXml.writeNumber(xml, value)) {
+                return;
+            }
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            if (widths.isSampling()) {
+                widths.measure(col, Double.toString(value));
+            }
+        }
+
+        @Override
+        public void writeLong(long value) {
+            start(style());
+            SheetXml.writeLong(xml, value);
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            widths.measure(col, ColumnWidthEstimator.digits(value));
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            if (decimalStyles[col] == 0) {
+                StyleSpec style = column.getStyle();
+                decimalStyles[col] = getStyle(style.getFormat() != null ? style : style.withFormat(DECIMAL_FORMAT));
+            }
+            start(decimalStyles[col]);
+            SheetXml.writeDecimal(xml, value);
+            if (summaries[col] != null) {
+                summaries[col].add(value);
+            }
+            // integer digits, sign and two decimal places
+            widths.measure(col, Math.max(value.precision() - value.scale(), 1) + (value.signum() < 0 ? 4 : 3));
+        }
+
+        @Override
+        public void writeBoolean(boolean value) {
+            start(style());
+            SheetXml.writeBoolean(xml, value);
+            widths.measure(col, value ? 4 : 5);
+        }
+
+        @Override
+        public void writeDate(double serial) {
+            if (columnDateStyles[col] == 0) {
+                String pattern = getDatePattern();
+                columnDateStyles[col] = getStyle(column.getStyle().withFormat(DateFormats.toExcelFormat(pattern)));
+                dateWidths[col] = ColumnWidthEstimator.displayWidth(pattern);
+            }
+            start(columnDateStyles[col]);
+            SheetXml.writeNumber(xml, serial);
+            widths.measure(col, dateWidths[col]);
+        }
+
+        @Override
+        public String getDatePattern() {
+            return dateFmt != null ? dateFmt : column.getFormat();
+        }
+    }
+}
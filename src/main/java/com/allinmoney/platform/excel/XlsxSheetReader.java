@@ -0,0 +1,240 @@
+package com.allinmoney.platform.excel;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads sheet xml of xlsx file with SAX.
+ *
+ * @author Chris
+ */
+final class XlsxSheetReader extends SheetReader {
+
+    private static final String DISALLOW_DOCTYPE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    XlsxSheetReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public void read(String sheetName, RowHandler handler) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int index = 0; sheets.hasNext(); index++) {
+                try (InputStream is = sheets.next()) {
+                    if (!isTarget(sheetName, sheets.getSheetName(), index)) {
+                        continue;
+                    }
+                    parse(is, new SheetHandler(strings, styles, handler));
+                    return;
+                }
+            }
+            throw new ExcelException("Sheet " + sheetName + " is not existing");
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new ExcelException(e.getMessage(), e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    private static void parse(InputStream is, SheetHandler handler)
+            throws ParserConfigurationException, SAXException, IOException {
+        // secure processing and no external entities, sheets of untrusted files are parsed
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        try {
+            xmlReader.setFeature(DISALLOW_DOCTYPE, true);
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            // entities are still ignored by the resolver of SAXHelper
+        }
+        xmlReader.setContentHandler(handler);
+        try {
+            xmlReader.parse(new InputSource(is));
+        } catch (StopException e) {
+            // handler has got what it wants
+        }
+    }
+
+    /**
+     * Thrown by handler to stop parsing the rest of sheet.
+     */
+    private static final class StopException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        private StopException() {
+            super("stop");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final class SheetHandler extends DefaultHandler {
+        private static final byte UNKNOWN = 0;
+        private static final byte DATE = 1;
+        private static final byte NOT_DATE = 2;
+
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final RowHandler handler;
+        private final RawRow row = new RawRow();
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * Date flags of styles, resolved on first use.
+         */
+        private byte[] dateStyles = new byte[64];
+
+        private int rowNum = -1;
+        private int col = -1;
+        private String type;
+        private int style;
+        private boolean inValue;
+
+        private SheetHandler(ReadOnlySharedStringsTable strings, StylesTable styles, RowHandler handler) {
+            this.strings = strings;
+            this.styles = styles;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+                    row.reset(rowNum);
+                    col = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    col = ref == null ? col + 1 : column(ref);
+                    type = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    style = s == null ? 0 : Integer.parseInt(s);
+                    text.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    cell();
+                    break;
+                case "row":
+                    if (!row.isEmpty() && !handler.handle(row)) {
+                        throw new StopException();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void cell() {
+            if (text.length() == 0 && !"inlineStr".equals(type)) {
+                return;
+            }
+            if (type == null || "n".equals(type)) {
+                row.setNumber(col, Double.parseDouble(text.toString()), isDate(style));
+                return;
+            }
+            switch (type) {
+                case "s":
+                    row.setString(col, strings.getEntryAt(Integer.parseInt(text.toString())));
+                    break;
+                case "inlineStr":
+                case "str":
+                    row.setString(col, text.toString());
+                    break;
+                case "b":
+                    row.setBoolean(col, text.length() > 0 && text.charAt(0) == '1');
+                    break;
+                case "e":
+                    row.setError(col);
+                    break;
+                default:
+                    row.setString(col, text.toString());
+                    break;
+            }
+        }
+
+        private boolean isDate(int idx) {
+            if (idx >= dateStyles.length) {
+                dateStyles = Arrays.copyOf(dateStyles, Math.max(idx + 1, dateStyles.length * 2));
+            }
+            if (dateStyles[idx] == UNKNOWN) {
+                boolean date = false;
+                if (styles != null && idx < styles.getNumCellStyles()) {
+                    XSSFCellStyle cellStyle = styles.getStyleAt(idx);
+                    date = DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+                }
+                dateStyles[idx] = date ? DATE : NOT_DATE;
+            }
+            return dateStyles[idx] == DATE;
+        }
+
+        /**
+         * Column index of cell reference like "AB12".
+         */
+        private static int column(String ref) {
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.allinmoney.platform.excel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable byte buffer of UTF-8 xml. Text is escaped and encoded into the
+ * buffer char by char, numbers are written digit by digit, so writing a cell
+ * allocates nothing but the text of non integral doubles. The buffer is
+ * flushed to its output when it is full unless it is held.
+ *
+ * @author Chris
+ */
+final class XmlBuffer {
+
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final byte[] AMP = ascii("&amp;");
+    private static final byte[] LT = ascii("&lt;");
+    private static final byte[] GT = ascii("&gt;");
+    private static final byte[] QUOT = ascii("&quot;");
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+    private byte[] buf;
+    private int size;
+    private OutputStream out;
+    private boolean held;
+    private long written;
+
+    /**
+     * Instantiates a new buffer which is flushed when it is full.
+     */
+    XmlBuffer() {
+        this(FLUSH_SIZE + 1024);
+    }
+
+    /**
+     * Instantiates a new buffer.
+     *
+     * @param capacity the initial capacity
+     */
+    XmlBuffer(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * Gets bytes of ascii text.
+     *
+     * @param text the text
+     * @return the bytes
+     */
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Sets output that buffer is flushed to.
+     *
+     * @param out the output
+     */
+    void setOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Hold contents in buffer until {@link #release()}, the buffer grows as
+     * needed.
+     */
+    void hold() {
+        held = true;
+    }
+
+    /**
+     * Release held contents, they are flushed with next contents.
+     */
+    void release() {
+        held = false;
+    }
+
+    XmlBuffer write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    XmlBuffer write(char c) {
+        ensure(1);
+        buf[size++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Write text which is known to be ascii and need not escaping.
+     *
+     * @param text the text
+     * @return the xml buffer
+     */
+    XmlBuffer writeAscii(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buf[size++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    XmlBuffer writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return write(MIN_LONG);
+        }
+        ensure(20);
+        if (value < 0) {
+            buf[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    XmlBuffer writeDouble(double value) {
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            return writeLong((long) value);
+        }
+        return writeAscii(Double.toString(value));
+    }
+
+    /**
+     * Write text escaped for both element and attribute. Chars not allowed by
+     * xml 1.0 are dropped.
+     *
+     * @param text the text
+     * @return the xml buffer
+     */
+    XmlBuffer writeEscaped(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            ensure(8);
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&':
+                        write(AMP);
+                        break;
+                    case '<':
+                        write(LT);
+                        break;
+                    case '>':
+                        write(GT);
+                        break;
+                    case '"':
+                        write(QUOT);
+                        break;
+                    default:
+                        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                            buf[size++] = (byte) c;
+                        }
+                        break;
+                }
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xC0 | c >> 6);
+                buf[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buf[size++] = (byte) (0xF0 | cp >> 18);
+                buf[size++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[size++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[size++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c) || c >= 0xFFFE) {
+                // unpaired surrogate or non character
+                buf[size++] = '?';
+            } else {
+                buf[size++] = (byte) (0xE0 | c >> 12);
+                buf[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Flush if buffer is full and not held.
+     */
+    void flushIfFull() {
+        if (!held && size >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush contents to output.
+     */
+    void flush() {
+        if (size == 0) {
+            return;
+        }
+        try {
+            out.write(buf, 0, size);
+        } catch (IOException e) {
+            throw new ExcelException(e.getMessage(), e);
+        }
+        written += size;
+        size = 0;
+    }
+
+    /**
+     * Discard contents of buffer.
+     */
+    void reset() {
+        size = 0;
+    }
+
+    /**
+     * Gets copy of contents of buffer.
+     *
+     * @return the bytes
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    /**
+     * Gets bytes flushed to output.
+     *
+     * @return the written bytes
+     */
+    long getWritten() {
+        return written;
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(size + bytes, buf.length * 2));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 import com.allinmoney.platform.ScaUtil;
 import com.allinmoney.platform.excel.ExcelUtil;
+import com.allinmoney.platform.excel.SheetSchema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
@@ -30,6 +31,10 @@ public class CodeReviewReportController {
     /* Default splitter is windows pattern
      */
     private String splitter = "\\";
+    /* Daily reports share one template, header is detected once
+     */
+    private final ExcelUtil<Defect> importer = new ExcelUtil<>(Defect.class);
+    private SheetSchema defectSchema;
 
     private interface Conf{
         String V_DIR = "V:\\Operations & Technology\\MVP\\MVP Software Launch\\08 Code Review\\Daily Update";
@@ -56,8 +61,10 @@ public class CodeReviewReportController {
     }
 
     public List<Defect> importDefectFromExcel(String path) {
-        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
-        List<Defect> defects = util.importData(path, sheetName, "MM/dd/yyyy");
+        if (defectSchema == null) {
+            defectSchema = importer.getSheetSchema(path, sheetName);
+        }
+        List<Defect> defects = importer.importData(path, sheetName, "MM/dd/yyyy", defectSchema);
         defects.forEach(defect -> logger.info(defect.toString()));
         return defects.stream().filter(defect -> defect.getNo() != null).collect(Collectors.toList());
     }
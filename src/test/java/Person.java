@@ -1,6 +1,10 @@
 import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.ExcelStyle;
 import com.allinmoney.platform.annotation.Translate;
 
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
 import java.math.BigDecimal;
 import java.util.Date;
 
@@ -23,6 +27,7 @@ public class Person {
     private Integer gender;
 
     @ExcelAttribute(title= "备注", prompt = "辅助信息")
+    @ExcelStyle(fillColor = IndexedColors.LIGHT_YELLOW, align = HorizontalAlignment.LEFT, wrapText = true)
     private String remark;
 
     @ExcelAttribute(title= "生日", format = "yyyy-MM-dd HH:mm:ss")
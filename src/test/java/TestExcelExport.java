@@ -1,13 +1,76 @@
+import com.allinmoney.platform.excel.CellCodecs;
+import com.allinmoney.platform.excel.ColumnSchema;
+import com.allinmoney.platform.excel.ColumnWidthEstimator;
+import com.allinmoney.platform.excel.AsyncExporter;
+import com.allinmoney.platform.excel.DateFormats;
+import com.allinmoney.platform.excel.ExcelException;
+import com.allinmoney.platform.excel.ExcelMetrics;
+import com.allinmoney.platform.excel.ExcelSheet;
+import com.allinmoney.platform.excel.ExcelTemplate;
+import com.allinmoney.platform.excel.ExcelType;
+import com.allinmoney.platform.annotation.Summary;
+import com.allinmoney.platform.excel.FieldAccessor;
 import com.allinmoney.platform.excel.ExcelUtil;
+import com.allinmoney.platform.excel.ExportPart;
+import com.allinmoney.platform.excel.ExportResult;
+import com.allinmoney.platform.excel.HistogramMetrics;
+import com.allinmoney.platform.excel.ResultSetExporter;
+import com.allinmoney.platform.excel.SharedStringPolicy;
+import com.allinmoney.platform.excel.SummaryAccumulator;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Created by chris on 16/4/28.
@@ -69,4 +132,923 @@ public class TestExcelExport {
             System.out.println(e.getMessage());
         }
     }
+
+    public void testExportXlsx() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.setWindowSize(10);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test.xlsx"), false);
+
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test.xlsx"))) {
+            Sheet sheet = workbook.getSheet("person0");
+            Assert.assertNotNull(sheet);
+            // header, contents and summary
+            Assert.assertEquals(sheet.getLastRowNum(), persons.size() + 1);
+            Assert.assertEquals(sheet.getRow(0).getCell(0).getStringCellValue(), "ID");
+            Assert.assertEquals(sheet.getRow(persons.size()).getCell(0).getNumericCellValue(),
+                    (double) persons.get(persons.size() - 1).getId());
+        }
+    }
+
+    public void testColumnSchema() {
+        ColumnSchema schema = ColumnSchema.of(Person.class, null, false);
+        Assert.assertSame(schema, new ExcelUtil<>(Person.class).getColumnSchema(false));
+        Assert.assertNotSame(schema, ColumnSchema.of(Person.class, null, true));
+        Assert.assertEquals(schema.getColumns().stream().map(ColumnSchema.Column::getTitle).collect(Collectors.toList()),
+                Arrays.asList("ID", "性别", "姓名", "备注", "生日", "年龄"));
+        Assert.assertEquals(schema.getColumn("性别").getTranslate().get("1"), "男");
+    }
+
+    public void testGeneratedSchema() throws Exception {
+        ColumnSchema schema = ColumnSchema.of(Employee.class, null, true);
+        Assert.assertTrue(schema.isGenerated());
+        Assert.assertEquals(schema.getColumns().stream().map(ColumnSchema.Column::getTitle).collect(Collectors.toList()),
+                Arrays.asList("ID", "性别", "姓名", "备注", "生日", "级别", "年龄"));
+        Assert.assertEquals(ColumnSchema.of(Employee.class, null, false).getColumns().get(0).getTitle(), "级别");
+        Assert.assertEquals(schema.getColumn("年龄").getSummary(), Summary.SUM);
+        Assert.assertEquals(schema.getColumn("姓名").getField().getName(), "name");
+
+        Employee employee = (Employee) schema.newInstance();
+        schema.getColumn("级别").getAccessor().set(employee, 3);
+        Assert.assertEquals(schema.getColumn("级别").getAccessor().get(employee), 3);
+        // private getters of lombok are not seen by the processor, fields are scanned
+        Assert.assertFalse(ColumnSchema.of(Defect.class, null, true).isGenerated());
+    }
+
+    public void testGeneratedMatchesFields() throws Exception {
+        for (Class<?> cls : Arrays.asList(Person.class, Employee.class)) {
+            for (boolean withSuperFields : new boolean[]{true, false}) {
+                ColumnSchema generated = ColumnSchema.of(cls, null, withSuperFields);
+                ColumnSchema fields = ColumnSchema.ofFields(cls, null, withSuperFields);
+                Assert.assertTrue(generated.isGenerated());
+                Assert.assertFalse(fields.isGenerated());
+                Assert.assertEquals(generated.size(), fields.size());
+                for (int i = 0; i < fields.size(); i++) {
+                    ColumnSchema.Column expected = fields.getColumns().get(i);
+                    ColumnSchema.Column actual = generated.getColumns().get(i);
+                    String name = expected.getName();
+                    Assert.assertEquals(actual.getName(), name);
+                    Assert.assertEquals(actual.getIndex(), expected.getIndex(), name);
+                    Assert.assertEquals(actual.getTitle(), expected.getTitle(), name);
+                    Assert.assertEquals(actual.getFormat(), expected.getFormat(), name);
+                    Assert.assertEquals(actual.getPrompt(), expected.getPrompt(), name);
+                    Assert.assertEquals(actual.getCombo(), expected.getCombo(), name);
+                    Assert.assertEquals(actual.getTranslate(), expected.getTranslate(), name);
+                    Assert.assertEquals(actual.isExport(), expected.isExport(), name);
+                    Assert.assertEquals(actual.isMark(), expected.isMark(), name);
+                    Assert.assertEquals(actual.getSummary(), expected.getSummary(), name);
+                    Assert.assertEquals(actual.getWidth(), expected.getWidth(), name);
+                    Assert.assertEquals(actual.getAccessor().getType(), expected.getAccessor().getType(), name);
+                }
+
+                // getters and setters of generated accessors see the same values as fields
+                Object source = cls == Person.class ? persons.get(3) : employees.get(3);
+                Object copy = generated.newInstance();
+                for (int i = 0; i < fields.size(); i++) {
+                    FieldAccessor getter = fields.getColumns().get(i).getAccessor();
+                    Assert.assertEquals(generated.getColumns().get(i).getAccessor().get(source), getter.get(source));
+                    generated.getColumns().get(i).getAccessor().set(copy, getter.get(source));
+                    Assert.assertEquals(getter.get(copy), getter.get(source));
+                }
+
+                // headers, styles, formats, translated and summary cells
+                List<?> data = cls == Person.class ? persons : employees;
+                Assert.assertEquals(zipEntries(renderSheet(generated, data)), zipEntries(renderSheet(fields, data)));
+            }
+        }
+    }
+
+    private static byte[] renderSheet(ColumnSchema schema, List<?> data) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            new ExcelSheet(workbook.createSheet("data")).setWorkbook(workbook).initStylesAndFonts()
+                    .addHeaders(schema).prepareStyles(schema, null)
+                    .addContent(schema, data.iterator(), data.size(), null)
+                    .addSummary(schema).autoSizeColumns();
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            workbook.write(os);
+            return os.toByteArray();
+        }
+    }
+
+    public void testFieldAccessor() throws Exception {
+        FieldAccessor effort = FieldAccessor.of(Defect.class.getDeclaredField("effort"));
+        Defect defect = new Defect();
+        effort.setInt(defect, 8);
+        Assert.assertTrue(effort.isPrimitive());
+        Assert.assertEquals(effort.getInt(defect), 8);
+        Assert.assertEquals(effort.get(defect), 8);
+
+        FieldAccessor name = FieldAccessor.of(Person.class.getDeclaredField("name"));
+        Person person = new Person();
+        name.set(person, "陆小凤");
+        Assert.assertEquals(name.get(person), "陆小凤");
+    }
+
+    public void testColumnWidthEstimator() {
+        Assert.assertEquals(ColumnWidthEstimator.displayWidth("ID"), 2);
+        Assert.assertEquals(ColumnWidthEstimator.displayWidth("秦皇汉武"), 8);
+        Assert.assertEquals(ColumnWidthEstimator.displayWidth("问题位置\nPosition"), 8);
+
+        ColumnWidthEstimator estimator = new ColumnWidthEstimator(1);
+        estimator.fix(1, 30);
+        estimator.measure(0, "abc");
+        estimator.nextRow();
+        estimator.measure(0, "abcdefgh");
+        Assert.assertEquals(estimator.getWidth(0), 5);
+        Assert.assertEquals(estimator.getWidth(1), 30);
+    }
+
+    public void testSheetRollOver() throws Exception {
+        int size = ExcelType.XLS.getMaxRows();
+        List<Person> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(persons.get(i % persons.size()));
+        }
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setWidthSampleRows(100);
+        util.exportDataList(list, "person", new FileOutputStream("/tmp/test-rollover.xls"), false);
+
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-rollover.xls"))) {
+            Assert.assertEquals(workbook.getNumberOfSheets(), 2);
+            Assert.assertEquals(workbook.getSheet("person0").getLastRowNum(), size - 1);
+            // two rows of first sheet are taken by header and summary
+            Assert.assertEquals(workbook.getSheet("person1").getLastRowNum(), 2 + 1);
+        }
+    }
+
+    public void testExportStream() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.exportDataList(IntStream.range(0, 1000).mapToObj(i -> persons.get(i % persons.size())),
+                "person", new FileOutputStream("/tmp/test-stream.xlsx"), FMT, false);
+
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-stream.xlsx"))) {
+            Assert.assertEquals(workbook.getNumberOfSheets(), 1);
+            Assert.assertEquals(workbook.getSheet("person0").getLastRowNum(), 1000 + 1);
+        }
+    }
+
+    public void testSummaryAccumulator() {
+        SummaryAccumulator accumulator = new SummaryAccumulator();
+        accumulator.add(Long.MAX_VALUE);
+        accumulator.add(1L);
+        accumulator.add(new BigDecimal("-0.5"));
+        Assert.assertEquals(accumulator.getCount(), 3);
+        Assert.assertEquals(accumulator.getSum(), new BigDecimal(Long.MAX_VALUE).add(new BigDecimal("0.5")));
+        Assert.assertEquals(accumulator.getMin(), new BigDecimal("-0.5"));
+        Assert.assertEquals(accumulator.getMax(), BigDecimal.valueOf(Long.MAX_VALUE));
+        Assert.assertNull(new SummaryAccumulator().getAverage());
+        Assert.assertEquals(new SummaryAccumulator().get(Summary.SUM), BigDecimal.ZERO);
+    }
+
+    public void testSummaryFormula() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.setSummaryFormula(true);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-formula.xlsx"), false);
+
+        BigDecimal expected = persons.stream().map(Person::getAge).reduce(BigDecimal.ZERO, BigDecimal::add);
+        int col = util.getColumnSchema(false).getColumn("年龄").getIndex();
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-formula.xlsx"))) {
+            Cell cell = workbook.getSheet("person0").getRow(persons.size() + 1).getCell(col);
+            Assert.assertEquals(cell.getCellFormula(), "SUM(F2:F101)");
+            double sum = workbook.getCreationHelper().createFormulaEvaluator().evaluate(cell).getNumberValue();
+            Assert.assertEquals(sum, expected.doubleValue(), 1e-6);
+        }
+    }
+
+    public void testDateCells() throws Exception {
+        Assert.assertEquals(DateFormats.toExcelFormat("yyyy-MM-dd HH:mm:ss"), "yyyy-mm-dd hh:mm:ss");
+        Assert.assertEquals(DateFormats.toExcelFormat("yyyy年MM月dd日"), "yyyy\"年\"mm\"月\"dd\"日\"");
+        Assert.assertEquals(DateFormats.toExcelDate(LocalDate.of(1900, 1, 1)), 1.0);
+        Assert.assertEquals(DateFormats.toExcelDate(LocalDate.of(1900, 3, 1)), 61.0);
+        Assert.assertEquals(DateFormats.toExcelDate(LocalDateTime.of(2017, 1, 17, 12, 0)), 42752.5);
+        Assert.assertEquals(DateFormats.toLocalDateTime(42752.5), LocalDateTime.of(2017, 1, 17, 12, 0));
+
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-date.xls"), FMT, false);
+        int col = util.getColumnSchema(false).getColumn("生日").getIndex();
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-date.xls"))) {
+            Sheet sheet = workbook.getSheet("person0");
+            Cell first = sheet.getRow(1).getCell(col);
+            Assert.assertTrue(DateUtil.isCellDateFormatted(first));
+            Assert.assertEquals(first.getCellStyle().getDataFormatString(), "yyyy-mm-dd");
+            Assert.assertEquals(first.getDateCellValue(), persons.get(0).getBirthDay());
+            Assert.assertEquals(sheet.getRow(2).getCell(col).getCellStyle().getIndex(), first.getCellStyle().getIndex());
+        }
+    }
+
+    public void testSerializable() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.CSV);
+        util.setCharset(StandardCharsets.UTF_16LE);
+        util.setMetrics(new HistogramMetrics());
+        util.registerCodec(String.class, (value, sink) -> sink.writeText("[" + value + "]"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(util);
+        }
+        ExcelUtil<Person> copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            ExcelUtil<Person> read = (ExcelUtil<Person>) ois.readObject();
+            copy = read;
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        copy.exportDataList(persons.subList(0, 2).iterator(), "person", os, FMT, true);
+        String text = new String(os.toByteArray(), StandardCharsets.UTF_16LE);
+        Assert.assertTrue(text.contains(persons.get(0).getName()));
+        Assert.assertFalse(text.contains("[" + persons.get(0).getName() + "]"));
+    }
+
+    public void testCellCodecs() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.registerCodec(String.class, (value, sink) -> sink.writeText("[" + value + "]"));
+        util.exportDataList(persons.subList(0, 2), "person", new FileOutputStream("/tmp/test-codec.xls"), false);
+
+        ColumnSchema schema = util.getColumnSchema(false);
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-codec.xls"))) {
+            Row row = workbook.getSheet("person0").getRow(2);
+            Assert.assertEquals(row.getCell(schema.getColumn("ID").getIndex()).getCellTypeEnum(), CellType.NUMERIC);
+            Assert.assertEquals(row.getCell(schema.getColumn("性别").getIndex()).getStringCellValue(), "男");
+            Assert.assertEquals(row.getCell(schema.getColumn("姓名").getIndex()).getStringCellValue(),
+                    "[" + persons.get(1).getName() + "]");
+            Cell age = row.getCell(schema.getColumn("年龄").getIndex());
+            Assert.assertEquals(age.getNumericCellValue(), persons.get(1).getAge().doubleValue());
+            Assert.assertEquals(age.getCellStyle().getDataFormatString(), "0.00");
+        }
+
+        // codec of wrapper applies to primitive fields
+        ExcelUtil<Defect> defects = new ExcelUtil<>(Defect.class);
+        defects.setExcelType(ExcelType.CSV);
+        defects.registerCodec(Integer.class, (value, sink) -> sink.writeText(value + "h"));
+        Defect defect = new Defect();
+        defect.setEffort(3);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        defects.exportDataList(Arrays.asList(defect).iterator(), "defect", csv, null, true);
+        Assert.assertTrue(new String(csv.toByteArray(), StandardCharsets.UTF_8).contains(",3h,"));
+
+        CellCodecs codecs = new CellCodecs();
+        Assert.assertNotSame(codecs.get(Integer.class), codecs.get(String.class));
+        Assert.assertSame(codecs.get(java.sql.Timestamp.class), codecs.get(Date.class));
+        Assert.assertSame(codecs.get(StringBuilder.class), codecs.get(Object.class));
+    }
+
+    public void testParallelSheets() throws Exception {
+        List<Person> list = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            list.add(persons.get(i % persons.size()));
+        }
+
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        util.exportMultipleDataList("multiple", true, sequential, list, employees, persons, list);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            util.setExecutor(pool);
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+                util.exportMultipleDataList("multiple", true, parallel, list, employees, persons, list);
+                Assert.assertEquals(zipEntries(parallel.toByteArray()), zipEntries(sequential.toByteArray()));
+            }
+
+            // dates and decimals of registered codecs use the styles created before filling
+            util.registerCodec(Integer.class, (value, sink) -> sink.writeDate(40000 + value % 1000));
+            util.registerCodec(String.class, (value, sink) -> sink.writeDecimal(new BigDecimal(value.length())));
+            util.setExecutor(null);
+            sequential = new ByteArrayOutputStream();
+            util.exportMultipleDataList("multiple", true, sequential, list, employees, persons, list);
+            util.setExecutor(pool);
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+                util.exportMultipleDataList("multiple", true, parallel, list, employees, persons, list);
+                Assert.assertEquals(zipEntries(parallel.toByteArray()), zipEntries(sequential.toByteArray()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testStylePool() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.exportMultipleDataList("single", true, new FileOutputStream("/tmp/test-styles-1.xls"), persons, employees);
+        List<List<?>> lists = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            lists.add(i % 2 == 0 ? persons : employees);
+        }
+        util.exportMultipleDataList("multiple", true, new FileOutputStream("/tmp/test-styles-50.xls"), lists.toArray(new List<?>[0]));
+
+        try (Workbook single = WorkbookFactory.create(new File("/tmp/test-styles-1.xls"));
+             Workbook multiple = WorkbookFactory.create(new File("/tmp/test-styles-50.xls"))) {
+            Assert.assertEquals(multiple.getNumberOfSheets(), 50);
+            // styles and fonts are shared by sheets
+            Assert.assertEquals(multiple.getNumCellStyles(), single.getNumCellStyles());
+            Assert.assertEquals(multiple.getNumberOfFonts(), single.getNumberOfFonts());
+
+            int col = util.getColumnSchema(true).getColumn("备注").getIndex();
+            CellStyle style = multiple.getSheetAt(49).getRow(1).getCell(col).getCellStyle();
+            Assert.assertEquals(style.getFillForegroundColor(), IndexedColors.LIGHT_YELLOW.getIndex());
+            Assert.assertEquals(style.getAlignmentEnum(), HorizontalAlignment.LEFT);
+            Assert.assertTrue(style.getWrapText());
+        }
+    }
+
+    public void testExportDirect() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-poi.xlsx"), FMT, false);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-direct.xlsx"), FMT, false);
+
+        try (Workbook poi = WorkbookFactory.create(new File("/tmp/test-poi.xlsx"));
+             Workbook direct = WorkbookFactory.create(new File("/tmp/test-direct.xlsx"))) {
+            Sheet expected = poi.getSheet("person0");
+            Sheet sheet = direct.getSheet("person0");
+            Assert.assertEquals(sheet.getLastRowNum(), expected.getLastRowNum());
+            for (Row row : expected) {
+                for (Cell cell : row) {
+                    Cell actual = sheet.getRow(row.getRowNum()).getCell(cell.getColumnIndex());
+                    Assert.assertEquals(actual.getCellTypeEnum(), cell.getCellTypeEnum());
+                    Assert.assertEquals(actual.toString(), cell.toString());
+                    Assert.assertEquals(actual.getCellStyle().getDataFormatString(), cell.getCellStyle().getDataFormatString());
+                    Assert.assertEquals(direct.getFontAt(actual.getCellStyle().getFontIndex()).getColor(),
+                            poi.getFontAt(cell.getCellStyle().getFontIndex()).getColor());
+                    Assert.assertEquals(actual.getCellStyle().getFillForegroundColor(), cell.getCellStyle().getFillForegroundColor());
+                    Assert.assertEquals(actual.getCellStyle().getAlignmentEnum(), cell.getCellStyle().getAlignmentEnum());
+                    Assert.assertEquals(actual.getCellStyle().getWrapText(), cell.getCellStyle().getWrapText());
+                }
+            }
+            Assert.assertEquals(sheet.getColumnWidth(0), expected.getColumnWidth(0));
+            Assert.assertEquals(sheet.getDataValidations().size(), 1);
+        }
+
+        util.exportDataList("multiple", new FileOutputStream("/tmp/test-direct-stacked.xlsx"), persons, employees);
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-direct-stacked.xlsx"))) {
+            Sheet sheet = workbook.getSheet("multiple");
+            // two blocks of header, contents and summary with delimiter rows between
+            Assert.assertEquals(sheet.getLastRowNum(), persons.size() + 2 + 5 + employees.size() + 1);
+            Assert.assertEquals(sheet.getRow(persons.size() + 7).getCell(0).getStringCellValue(),
+                    ColumnSchema.of(Employee.class, null, true).getColumns().get(0).getTitle());
+        }
+
+        util.setSummaryFormula(true);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-direct-formula.xlsx"), FMT, false);
+        int col = util.getColumnSchema(false).getColumn("年龄").getIndex();
+        try (Workbook workbook = WorkbookFactory.create(new File("/tmp/test-direct-formula.xlsx"))) {
+            Cell cell = workbook.getSheet("person0").getRow(persons.size() + 1).getCell(col);
+            Assert.assertEquals(cell.getCellFormula(), "SUM(F2:F101)");
+        }
+    }
+
+    public void testSharedStrings() throws Exception {
+        List<Person> list = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) {
+            Person person = persons.get(i % persons.size());
+            Person copy = new Person();
+            copy.setId(i);
+            copy.setName(person.getName());
+            copy.setGender(person.getGender());
+            // distinct texts grow the hash index
+            copy.setRemark(i % 2 == 0 ? person.getRemark() : " 备注 " + i);
+            list.add(copy);
+        }
+
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        ByteArrayOutputStream inline = new ByteArrayOutputStream();
+        util.exportDataList(list, "person", inline, FMT, false);
+        Assert.assertFalse(zipEntries(inline.toByteArray()).containsKey("xl/sharedStrings.xml"));
+
+        for (SharedStringPolicy policy : new SharedStringPolicy[]{SharedStringPolicy.ALWAYS, SharedStringPolicy.IF_REPEATED}) {
+            util.setSharedStrings(policy);
+            ByteArrayOutputStream shared = new ByteArrayOutputStream();
+            util.exportDataList(list, "person", shared, FMT, false);
+            Map<String, String> entries = zipEntries(shared.toByteArray());
+            String sst = entries.get("xl/sharedStrings.xml");
+            Assert.assertTrue(entries.get("xl/worksheets/sheet1.xml").length() + sst.length()
+                    < zipEntries(inline.toByteArray()).get("xl/worksheets/sheet1.xml").length());
+            // name, remark, two genders and the distinct remarks
+            int unique = policy == SharedStringPolicy.ALWAYS ? 4 + list.size() / 2 : 4;
+            Assert.assertTrue(sst.contains("uniqueCount=\"" + unique + "\""), policy.name());
+
+            try (FileOutputStream os = new FileOutputStream("/tmp/test-shared-strings.xlsx")) {
+                shared.writeTo(os);
+            }
+            List<Person> imported = util.importData("/tmp/test-shared-strings.xlsx", null, null);
+            for (int i = 0; i < list.size(); i++) {
+                Assert.assertEquals(imported.get(i).getName(), list.get(i).getName());
+                Assert.assertEquals(imported.get(i).getRemark(), list.get(i).getRemark());
+                Assert.assertEquals(imported.get(i).getGender(), list.get(i).getGender());
+            }
+        }
+    }
+
+    public void testAsyncExport() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        AsyncExporter<Person> exporter = new AsyncExporter<>(util, 2, 4);
+        try {
+            boolean[] closed = new boolean[1];
+            ByteArrayOutputStream os = new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    closed[0] = true;
+                }
+            };
+            ExportResult result = exporter.exportDataList(persons, "person", os, FMT).get();
+            Assert.assertEquals(result.getRows(), persons.size());
+            Assert.assertEquals(result.getBytes(), os.size());
+            Assert.assertFalse(closed[0]);
+            try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(os.toByteArray()))) {
+                Assert.assertEquals(workbook.getSheet("person0").getLastRowNum(), persons.size() + 1);
+            }
+
+            util.setExcelType(ExcelType.CSV);
+            os.reset();
+            result = exporter.exportDataList(persons.stream().filter(p -> p.getGender() == 0), "person", os, FMT).get();
+            Assert.assertEquals(result.getRows(), persons.size() / 2);
+            Assert.assertEquals(result.getBytes(), os.size());
+            Assert.assertFalse(closed[0]);
+        } finally {
+            exporter.shutdown();
+        }
+
+        // one running, one queued, the next is rejected
+        ThreadPoolExecutor executor = AsyncExporter.newBoundedExecutor(1, 1, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AsyncExporter<Person> bounded = new AsyncExporter<>(util, executor);
+            CompletableFuture<ExportResult> queued = bounded.exportDataList(persons, "person", new ByteArrayOutputStream(), FMT);
+            CompletableFuture<ExportResult> rejected = bounded.exportDataList(persons, "person", new ByteArrayOutputStream(), FMT);
+            try {
+                rejected.get();
+                Assert.fail("exportation should be rejected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            latch.countDown();
+            Assert.assertEquals(queued.get().getRows(), persons.size());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    public void testMetrics() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        HistogramMetrics metrics = new HistogramMetrics();
+        util.setMetrics(metrics);
+        util.setExcelType(ExcelType.XLSX);
+        util.setWindowSize(10);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        util.exportDataList(persons, "person", os, FMT);
+
+        Assert.assertEquals(metrics.getExports(), 1);
+        Assert.assertEquals(metrics.getRows(), persons.size());
+        Assert.assertEquals(metrics.getBytes(), os.size());
+        Assert.assertEquals(metrics.getSheets(), 1);
+        for (ExcelMetrics.Phase phase : new ExcelMetrics.Phase[]{ExcelMetrics.Phase.SCHEMA, ExcelMetrics.Phase.HEADER,
+                ExcelMetrics.Phase.CONTENT, ExcelMetrics.Phase.SIZING, ExcelMetrics.Phase.SUMMARY, ExcelMetrics.Phase.SERIALIZE}) {
+            Assert.assertEquals(metrics.getCount(phase), 1, phase.name());
+            Assert.assertTrue(metrics.getPercentileNanos(phase, 0.99) >= metrics.getTotalNanos(phase) / 2, phase.name());
+        }
+        // rows beyond the window are flushed
+        Assert.assertTrue(metrics.getPeakRowsInMemory() > 0 && metrics.getPeakRowsInMemory() <= 10);
+        Assert.assertTrue(metrics.getRowsPerSecond() > 0);
+
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        util.exportMultipleDataList("person", true, direct, persons, persons);
+        Assert.assertEquals(metrics.getExports(), 2);
+        Assert.assertEquals(metrics.getRows(), persons.size() * 3);
+        Assert.assertEquals(metrics.getBytes(), os.size() + direct.size());
+        Assert.assertEquals(metrics.getSheets(), 3);
+        Assert.assertEquals(metrics.getCount(ExcelMetrics.Phase.SERIALIZE), 2);
+
+        try (FileOutputStream out = new FileOutputStream("/tmp/test-metrics.xlsx")) {
+            os.writeTo(out);
+        }
+        util.setExecutor(ForkJoinPool.commonPool());
+        List<Person> imported = new ArrayList<>();
+        util.importData("/tmp/test-metrics.xlsx", null, null, 30, imported::addAll);
+        // summary row is bound too
+        Assert.assertEquals(imported.size(), persons.size() + 1);
+        Assert.assertEquals(metrics.getImportRows(), imported.size());
+        Assert.assertEquals(metrics.getCount(ExcelMetrics.Phase.PARSE), 1);
+        Assert.assertEquals(metrics.getCount(ExcelMetrics.Phase.BIND), 4);
+        Assert.assertEquals(metrics.snapshot().get("import.rows"), (long) imported.size());
+    }
+
+    public void testExportTemplate() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("report");
+            sheet.createRow(0).createCell(0).setCellValue("Corporate Report");
+            sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 3));
+            Row header = sheet.createRow(1);
+            String[] titles = {"姓名", "ID", "生日", "年龄"};
+            for (int i = 0; i < titles.length; i++) {
+                header.createCell(i).setCellValue(titles[i]);
+            }
+            Row sample = sheet.createRow(2);
+            CellStyle fill = workbook.createCellStyle();
+            fill.setFillForegroundColor(IndexedColors.LIGHT_GREEN.getIndex());
+            fill.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            sample.createCell(0).setCellStyle(fill);
+            CellStyle date = workbook.createCellStyle();
+            date.setDataFormat(workbook.createDataFormat().getFormat("yyyy/mm/dd"));
+            sample.createCell(2).setCellStyle(date);
+            sheet.createRow(3).createCell(0).setCellValue("dropped");
+            workbook.createSheet("notes").createRow(0).createCell(0).setCellValue("kept");
+            workbook.write(bytes);
+        }
+
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        ExcelTemplate template = util.loadTemplate(new ByteArrayInputStream(bytes.toByteArray()), null);
+        Assert.assertEquals(template.getHeaderRow(), 1);
+        Assert.assertEquals(template.getTemplateColumn(template.getColumnSchema().getColumn("ID")), 1);
+        Assert.assertEquals(template.getTemplateColumn(template.getColumnSchema().getColumn("备注")), -1);
+
+        for (int n = 0; n < 2; n++) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            util.exportTemplate(template, persons, os);
+            try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(os.toByteArray()))) {
+                Sheet sheet = workbook.getSheet("report");
+                Assert.assertEquals(sheet.getRow(0).getCell(0).getStringCellValue(), "Corporate Report");
+                Assert.assertEquals(sheet.getNumMergedRegions(), 1);
+                Assert.assertEquals(sheet.getRow(1).getCell(1).getStringCellValue(), "ID");
+                Assert.assertEquals(sheet.getLastRowNum(), persons.size() + 1);
+                Assert.assertEquals(workbook.getSheet("notes").getRow(0).getCell(0).getStringCellValue(), "kept");
+
+                Row row = sheet.getRow(3);
+                Person person = persons.get(1);
+                Assert.assertEquals(row.getCell(0).getStringCellValue(), person.getName());
+                Assert.assertEquals(row.getCell(0).getCellStyle().getFillForegroundColor(), IndexedColors.LIGHT_GREEN.getIndex());
+                Assert.assertEquals((int) row.getCell(1).getNumericCellValue(), (int) person.getId());
+                Assert.assertEquals(row.getCell(2).getCellStyle().getDataFormatString(), "yyyy/mm/dd");
+                Assert.assertTrue(DateUtil.isCellDateFormatted(row.getCell(2)));
+                Assert.assertEquals(row.getCell(3).getCellStyle().getDataFormatString(), "0.00");
+                Assert.assertEquals(row.getCell(3).getNumericCellValue(), person.getAge().doubleValue());
+                Assert.assertNull(row.getCell(4));
+            }
+        }
+    }
+
+    public void testExportRolling() throws Exception {
+        List<Person> list = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            list.addAll(persons);
+        }
+
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        List<ExportPart> parts;
+        try (ZipOutputStream zip = new ZipOutputStream(os)) {
+            parts = util.exportRolling(list.iterator(), "person", 1000, 0, zip, FMT);
+        }
+        Assert.assertEquals(parts.stream().map(ExportPart::getRows).collect(Collectors.toList()), Arrays.asList(1000L, 1000L, 500L));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+            for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+                entries.put(entry.getName(), IOUtils.toByteArray(zis));
+            }
+        }
+        Assert.assertEquals(new ArrayList<>(entries.keySet()),
+                Arrays.asList("person-0.xlsx", "person-1.xlsx", "person-2.xlsx", "manifest.csv"));
+        Assert.assertEquals(entries.get("person-1.xlsx").length, parts.get(1).getBytes());
+        Assert.assertEquals(new String(entries.get("manifest.csv"), StandardCharsets.UTF_8).split("\r\n")[3],
+                "person-2.xlsx,500," + parts.get(2).getBytes());
+        try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(entries.get("person-2.xlsx")))) {
+            // header, rows and summary
+            Assert.assertEquals(workbook.getSheet("person0").getLastRowNum(), 501);
+        }
+
+        util.setExcelType(ExcelType.CSV);
+        File directory = new File("/tmp/test-rolling");
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+        parts = util.exportRolling(list.iterator(), "person", 0, 50_000, directory.toPath(), FMT);
+        Assert.assertTrue(parts.size() > 1);
+        Assert.assertEquals(parts.stream().mapToLong(ExportPart::getRows).sum(), list.size());
+        for (int i = 0; i < parts.size(); i++) {
+            ExportPart part = parts.get(i);
+            Assert.assertEquals(new File(directory, part.getName()).length(), part.getBytes());
+            Assert.assertTrue(i == parts.size() - 1 || part.getBytes() >= 50_000);
+        }
+        Assert.assertEquals(directory.list().length, parts.size() + 1);
+        Assert.assertTrue(new File(directory, "manifest.csv").exists());
+    }
+
+    public void testExportResultSet() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:persons")) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("create table person (id int, full_name varchar(64), age decimal(10, 5), gender int,"
+                        + " remark varchar(128), birth_day timestamp)");
+            }
+            try (PreparedStatement ps = conn.prepareStatement("insert into person values (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < 1000; i++) {
+                    ps.setInt(1, i);
+                    ps.setString(2, "name" + i);
+                    ps.setBigDecimal(3, new BigDecimal("100.12" + i % 10));
+                    ps.setInt(4, i % 2);
+                    ps.setString(5, i % 3 == 0 ? null : "remark" + i);
+                    ps.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            long rows;
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("select * from person order by id")) {
+                rows = new ResultSetExporter<>(util).setFetchSize(100).setPrefetchRows(300)
+                        .mapColumn("姓名", "full_name").export(rs, "person", os, FMT);
+            }
+            Assert.assertEquals(rows, 1000);
+
+            File file = new File("/tmp/test-result-set.xlsx");
+            try (OutputStream fos = new FileOutputStream(file)) {
+                os.writeTo(fos);
+            }
+            List<Person> list = util.importData(file.getPath(), "person0", FMT);
+            Assert.assertEquals(list.size(), 1001);
+            Assert.assertEquals(list.get(7).getId(), Integer.valueOf(7));
+            Assert.assertEquals(list.get(7).getName(), "name7");
+            Assert.assertEquals(list.get(7).getGender(), Integer.valueOf(1));
+            Assert.assertEquals(list.get(7).getRemark(), "remark7");
+            Assert.assertNull(list.get(9).getRemark());
+
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("select * from person")) {
+                new ResultSetExporter<>(util).mapColumn("姓名", "name").export(rs, "person", new ByteArrayOutputStream(), FMT);
+                Assert.fail("unknown column should be rejected");
+            } catch (ExcelException e) {
+                Assert.assertTrue(e.getMessage().contains("name"));
+            }
+
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("select * from person order by id")) {
+                ResultSet broken = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                            if (method.getName().equals("next") && rs.getRow() == 500) {
+                                throw new AssertionError("broken row");
+                            }
+                            try {
+                                return method.invoke(rs, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+                new ResultSetExporter<>(util).mapColumn("姓名", "full_name").export(broken, "person", new ByteArrayOutputStream(), FMT);
+                Assert.fail("error of prefetch thread should be thrown");
+            } catch (ExcelException e) {
+                Assert.assertEquals(e.getCause().getMessage(), "broken row");
+            }
+        }
+    }
+
+    public void testExportResultSetEnum() throws Exception {
+        ExcelUtil<Ticket> util = new ExcelUtil<>(Ticket.class);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:tickets")) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("create table ticket (id int, status varchar(16))");
+                // bound by name, translated text and name with spaces as the importation does
+                st.execute("insert into ticket values (1, 'Working'), (2, '打开'), (3, ' Closed '), (4, null)");
+            }
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("select * from ticket order by id")) {
+                new ResultSetExporter<>(util).mapColumn("编号", "id").mapColumn("状态", "status").export(rs, "ticket", os, FMT);
+            }
+            File file = new File("/tmp/test-result-set-enum.xlsx");
+            try (OutputStream fos = new FileOutputStream(file)) {
+                os.writeTo(fos);
+            }
+            List<Ticket> list = util.importData(file.getPath(), "ticket0", FMT);
+            Assert.assertEquals(list.stream().map(Ticket::getStatus).collect(Collectors.toList()),
+                    Arrays.asList(Defect.Status.Working, Defect.Status.Open, Defect.Status.Closed, null));
+
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("select 1 id, 'Unknown' status")) {
+                new ResultSetExporter<>(util).export(rs, "ticket", new ByteArrayOutputStream(), FMT);
+                Assert.fail("unknown constant should be rejected");
+            } catch (ExcelException e) {
+                Assert.assertTrue(e.getCause().getMessage().contains("Unknown"));
+            }
+        }
+    }
+
+    public void testExportPipeline() throws Exception {
+        List<Person> list = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Person person = new Person();
+            person.setId(i);
+            person.setName("name" + i);
+            person.setGender(i % 2);
+            person.setAge(new BigDecimal(i).movePointLeft(2));
+            person.setRemark(i % 7 == 0 ? null : "remark" + i);
+            person.setBirthDay(new Date(1500000000000L + i * 86400000L));
+            list.add(person);
+        }
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.CSV);
+        // an expensive conversion
+        util.registerCodec(BigDecimal.class, (value, sink) -> sink.writeText(value.setScale(4).toPlainString()));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        util.exportDataList(list.iterator(), "person", expected, FMT, true);
+
+        util.setPipelineWorkers(4);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        util.exportDataList(list.iterator(), "person", os, FMT, true);
+        Assert.assertEquals(os.toByteArray(), expected.toByteArray());
+
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        util.setPipelineWorkers(0);
+        expected = new ByteArrayOutputStream();
+        util.exportDataList(list.iterator(), "person", expected, FMT, true);
+        util.setPipelineWorkers(3);
+        util.setExecutor(ForkJoinPool.commonPool());
+        os = new ByteArrayOutputStream();
+        util.exportDataList(list.iterator(), "person", os, FMT, true);
+        Assert.assertEquals(zipEntries(os.toByteArray()), zipEntries(expected.toByteArray()));
+
+        // workers which never start, run on the writer or wait behind a saturated pool
+        ThreadPoolExecutor saturated = AsyncExporter.newBoundedExecutor(1, 1, new ThreadPoolExecutor.CallerRunsPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+        saturated.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            for (Executor executor : Arrays.<Executor>asList(
+                    task -> { }, Runnable::run, saturated)) {
+                util.setExecutor(executor);
+                os = new ByteArrayOutputStream();
+                util.exportDataList(list.iterator(), "person", os, FMT, true);
+                Assert.assertEquals(zipEntries(os.toByteArray()), zipEntries(expected.toByteArray()));
+            }
+        } finally {
+            release.countDown();
+            saturated.shutdown();
+        }
+
+        util.registerCodec(BigDecimal.class, (value, sink) -> {
+            if (value.signum() > 0 && value.unscaledValue().intValue() == 2500) {
+                throw new IllegalStateException("broken " + value);
+            }
+            sink.writeDecimal(value);
+        });
+        try {
+            util.exportDataList(list.iterator(), "person", new ByteArrayOutputStream(), FMT, true);
+            Assert.fail("failure of worker should be thrown");
+        } catch (ExcelException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "broken 25.00");
+        }
+    }
+
+    public void testFailedExportCleanUp() throws Exception {
+        File poiFiles = new File(System.getProperty("java.io.tmpdir"), "poifiles");
+        int before = countTempFiles(poiFiles, "poi-sxssf-sheet");
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        try {
+            util.exportDataList(brokenSource(300), "person", new ByteArrayOutputStream(), FMT, true);
+            Assert.fail("failure of source should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "broken source");
+        }
+        Assert.assertEquals(countTempFiles(poiFiles, "poi-sxssf-sheet"), before);
+
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        before = countTempFiles(tmp, "excel-sst");
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        util.setSharedStrings(SharedStringPolicy.IF_REPEATED);
+        try {
+            util.exportDataList(brokenSource(300), "person", new ByteArrayOutputStream(), FMT, true);
+            Assert.fail("failure of source should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "broken source");
+        }
+        Assert.assertEquals(countTempFiles(tmp, "excel-sst"), before);
+
+        // the temporary file of the failed part is deleted
+        File directory = new File("/tmp/test-rolling-failed");
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+        util.setExcelType(ExcelType.CSV);
+        try {
+            util.exportRolling(brokenSource(300), "person", 100, 0, directory.toPath(), FMT);
+            Assert.fail("failure of source should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "broken source");
+        }
+        Assert.assertEquals(countTempFiles(directory, "person-"), 3);
+        Assert.assertEquals(directory.list((d, name) -> name.endsWith(".part")).length, 0);
+    }
+
+    private Iterator<Person> brokenSource(int rows) {
+        return new Iterator<Person>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Person next() {
+                if (count == rows) {
+                    throw new IllegalStateException("broken source");
+                }
+                return persons.get(count++ % persons.size());
+            }
+        };
+    }
+
+    private static int countTempFiles(File dir, String prefix) {
+        String[] names = dir.list((d, name) -> name.startsWith(prefix));
+        return names == null ? 0 : names.length;
+    }
+
+    public void testExportCsv() throws Exception {
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.CSV);
+        util.setBom(true);
+        util.setGzip(true);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        util.exportDataList(persons.stream(), "person", os, FMT, false);
+
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(os.toByteArray())), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        Person person = persons.get(1);
+        Assert.assertEquals(lines.size(), persons.size() + 1);
+        Assert.assertEquals(lines.get(0), "\uFEFFID,性别,姓名,备注,生日,年龄");
+        Assert.assertEquals(lines.get(2), person.getId() + ",男," + person.getName() + ",\""
+                + person.getRemark() + "\"," + new SimpleDateFormat(FMT).format(person.getBirthDay()) + "," + person.getAge());
+
+        util.setExcelType(ExcelType.TSV);
+        util.setBom(false);
+        util.setGzip(false);
+        os = new ByteArrayOutputStream();
+        util.exportDataList(persons, "person", os, FMT, false);
+        Assert.assertTrue(new String(os.toByteArray(), StandardCharsets.UTF_8).startsWith("ID\t性别\t姓名\t备注\t生日\t年龄\r\n"));
+
+        // there is no byte order mark in other charsets
+        Charset gbk = Charset.forName("GBK");
+        util.setCharset(gbk);
+        util.setBom(true);
+        os = new ByteArrayOutputStream();
+        util.exportDataList(persons, "person", os, FMT, false);
+        Assert.assertTrue(new String(os.toByteArray(), gbk).startsWith("ID\t性别"));
+    }
+
+    /**
+     * Entries of zip file except the created time of document.
+     */
+    private static Map<String, String> zipEntries(byte[] zip) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+                if (entry.getName().equals("docProps/core.xml")) {
+                    continue;
+                }
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                for (int n; (n = zis.read(buf)) > 0; ) {
+                    bos.write(buf, 0, n);
+                }
+                entries.put(entry.getName(), new String(bos.toByteArray(), "UTF-8"));
+            }
+        }
+        return entries;
+    }
 }
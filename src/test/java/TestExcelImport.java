@@ -0,0 +1,246 @@
+import com.allinmoney.platform.excel.ExcelException;
+import com.allinmoney.platform.excel.ExcelType;
+import com.allinmoney.platform.excel.ExcelUtil;
+import com.allinmoney.platform.excel.SheetSchema;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.util.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Created by chris on 2026/10/18.
+ */
+
+@Test
+public class TestExcelImport {
+    private List<Defect> defects;
+
+    @BeforeClass
+    public void setUp() {
+        defects = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Defect defect = new Defect();
+            defect.setNo("BPS-" + i);
+            defect.setPosition("ExcelUtil.java:" + i);
+            defect.setDesc("问题描述 " + i);
+            defect.setSeverity(Defect.Severity.values()[i % 3].name());
+            defect.setStatus(Defect.Status.values()[i % 4].name());
+            defect.setEffort(i);
+            defects.add(defect);
+        }
+    }
+
+    private void roundTrip(ExcelType type, String path) throws IOException {
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(type);
+        util.exportDataList(defects, "defect", new FileOutputStream(path), false);
+
+        List<Defect> imported = util.importData(path, "defect0", null);
+        Assert.assertEquals(imported.size(), defects.size());
+        for (int i = 0; i < defects.size(); i++) {
+            Assert.assertEquals(imported.get(i).getNo(), defects.get(i).getNo());
+            Assert.assertEquals(imported.get(i).getDesc(), defects.get(i).getDesc());
+            Assert.assertEquals(imported.get(i).getStatus(), defects.get(i).getStatus());
+            Assert.assertEquals(imported.get(i).getEffort(), defects.get(i).getEffort());
+        }
+    }
+
+    public void testImportXls() throws IOException {
+        roundTrip(ExcelType.XLS, "/tmp/test-import.xls");
+    }
+
+    public void testImportXlsx() throws IOException {
+        roundTrip(ExcelType.XLSX, "/tmp/test-import.xlsx");
+    }
+
+    public void testImportWithConsumer() throws IOException {
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.exportDataList(defects, "defect", new FileOutputStream("/tmp/test-import-2.xls"), false);
+
+        int[] count = new int[1];
+        util.importData("/tmp/test-import-2.xls", null, null, defect -> count[0]++);
+        Assert.assertEquals(count[0], defects.size());
+    }
+
+    public void testImportWithSheetSchema() throws IOException {
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.exportDataList(defects, "defect", new FileOutputStream("/tmp/test-import-schema.xlsx"), false);
+
+        SheetSchema schema = util.getSheetSchema("/tmp/test-import-schema.xlsx", null);
+        Assert.assertNotNull(schema);
+        Assert.assertEquals(schema.getHeaderRow(), 0);
+        Map<String, Cell> cells = util.getAnnotatedCellsMap("/tmp/test-import-schema.xlsx", null);
+        Assert.assertFalse(cells.isEmpty());
+        cells.forEach((title, cell) -> Assert.assertEquals(schema.getColumnIndex(title), cell.getColumnIndex()));
+
+        // the schema is reused for another file of the same template
+        util.exportDataList(defects.subList(0, 10), "defect", new FileOutputStream("/tmp/test-import-schema-2.xlsx"), false);
+        List<Defect> imported = util.importData("/tmp/test-import-schema-2.xlsx", null, null, schema);
+        Assert.assertEquals(imported.size(), 10);
+        for (int i = 0; i < imported.size(); i++) {
+            Assert.assertEquals(imported.get(i).getNo(), defects.get(i).getNo());
+            Assert.assertEquals(imported.get(i).getStatus(), defects.get(i).getStatus());
+        }
+
+        // an unreadable file is reported rather than taken as a file without header
+        try {
+            util.getSheetSchema("/tmp/test-import-schema-missing.xlsx", null);
+            Assert.fail("missing file should be reported");
+        } catch (ExcelException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    public void testImportBatches() throws IOException {
+        List<Defect> list = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            list.add(defects.get(i % defects.size()));
+        }
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.exportDataList(list, "defect", new FileOutputStream("/tmp/test-import-batch.xlsx"), false);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            util.setExecutor(pool);
+            List<List<Defect>> batches = new ArrayList<>();
+            util.importData("/tmp/test-import-batch.xlsx", null, null, 128, batches::add);
+            Assert.assertEquals(batches.size(), (list.size() + 127) / 128);
+            Assert.assertEquals(batches.get(batches.size() - 1).size(), list.size() % 128);
+            List<Defect> imported = batches.stream().flatMap(List::stream).collect(Collectors.toList());
+            for (int i = 0; i < list.size(); i++) {
+                Assert.assertEquals(imported.get(i).getNo(), list.get(i).getNo());
+            }
+
+            util.setPreserveOrder(false);
+            int[] count = new int[1];
+            util.importData("/tmp/test-import-batch.xlsx", null, null, 100, batch -> count[0] += batch.size());
+            Assert.assertEquals(count[0], list.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testImportTypes() throws IOException {
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Person person = new Person();
+            person.setId(i * 1000000);
+            person.setName("陆小凤");
+            person.setGender(i % 2);
+            person.setBirthDay(new Date(1500000000000L + i * 86_400_123L));
+            person.setAge(new BigDecimal("100.12" + i));
+            persons.add(person);
+        }
+        ExcelUtil<Person> util = new ExcelUtil<>(Person.class);
+        util.setExcelType(ExcelType.XLSX);
+        util.exportDataList(persons, "person", new FileOutputStream("/tmp/test-import-types.xlsx"), false);
+
+        List<Person> imported = util.importData("/tmp/test-import-types.xlsx", null, null);
+        // the summary row is bound too
+        Assert.assertEquals(imported.size(), persons.size() + 1);
+        for (int i = 0; i < persons.size(); i++) {
+            Assert.assertEquals(imported.get(i).getId(), persons.get(i).getId());
+            Assert.assertEquals(imported.get(i).getGender(), persons.get(i).getGender());
+            Assert.assertEquals(imported.get(i).getAge().compareTo(persons.get(i).getAge()), 0);
+            Assert.assertEquals(imported.get(i).getBirthDay(), persons.get(i).getBirthDay());
+        }
+    }
+    public void testImportBatchesFailure() throws IOException {
+        List<Defect> list = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            list.add(defects.get(i % defects.size()));
+        }
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(ExcelType.XLSX);
+        String path = "/tmp/test-import-broken.xlsx";
+        util.exportDataList(list, "defect", new FileOutputStream(path), false);
+
+        // damage the compressed rows in the middle of the sheet entry
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        int sheet = text.indexOf("xl/worksheets/sheet1.xml");
+        int end = text.indexOf("PK\u0001\u0002", sheet);
+        if (text.indexOf("PK\u0003\u0004", sheet) > 0) {
+            end = Math.min(end, text.indexOf("PK\u0003\u0004", sheet));
+        }
+        for (int i = (sheet + end) / 2; i < (sheet + end) / 2 + 64; i++) {
+            bytes[i] = (byte) ~bytes[i];
+        }
+        Files.write(Paths.get(path), bytes);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            util.setExecutor(pool);
+            int[] count = new int[1];
+            try {
+                util.importData(path, null, null, 128, batch -> count[0] += batch.size());
+                Assert.fail("failure of reading should be thrown");
+            } catch (ExcelException e) {
+                // the last partial batch is delivered as well
+                Assert.assertTrue(count[0] % 128 != 0 && count[0] < list.size(), String.valueOf(count[0]));
+            }
+            Assert.assertTrue(pool.awaitQuiescence(0, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testImportRejectsDoctype() throws IOException {
+        ExcelUtil<Defect> util = new ExcelUtil<>(Defect.class);
+        util.setExcelType(ExcelType.XLSX_DIRECT);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        util.exportDataList(defects.subList(0, 3), "defect", os, false);
+
+        File secret = File.createTempFile("test-xxe", ".txt");
+        Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+        String path = "/tmp/test-import-xxe.xlsx";
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+             ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(path))) {
+            for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+                byte[] bytes = IOUtils.toByteArray(zis);
+                if (entry.getName().equals("xl/worksheets/sheet1.xml")) {
+                    String xml = new String(bytes, StandardCharsets.UTF_8);
+                    int body = xml.indexOf("?>") + 2;
+                    xml = xml.substring(0, body) + "<!DOCTYPE worksheet [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>"
+                            + xml.substring(body).replace(defects.get(0).getNo(), "&xxe;");
+                    bytes = xml.getBytes(StandardCharsets.UTF_8);
+                }
+                zos.putNextEntry(new ZipEntry(entry.getName()));
+                zos.write(bytes);
+                zos.closeEntry();
+            }
+        } finally {
+            secret.delete();
+        }
+
+        try {
+            util.importData(path, "defect0", null);
+            Assert.fail("DOCTYPE should be rejected");
+        } catch (ExcelException e) {
+            Assert.assertTrue(e.getMessage().contains("DOCTYPE"), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import com.allinmoney.platform.annotation.ExcelAttribute;
+import com.allinmoney.platform.annotation.Translate;
+import lombok.Data;
+
+/**
+ * Ticket of defect with translated enum status.
+ */
+@Data
+public class Ticket {
+    @ExcelAttribute(title = "编号")
+    private Integer id;
+    @ExcelAttribute(title = "状态", translate = {@Translate(key = "Open", value = "打开"),
+            @Translate(key = "Closed", value = "关闭")})
+    private Defect.Status status;
+}